@@ -0,0 +1,190 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the EDF pipeline, built on the module jdk.jfr
+ * (JDK 11 or later). This class is compiled separately from the rest of the
+ * plugin:
+ *
+ * <pre>
+ * javac --release 11 -cp bin -d bin src-jfr/edf/FlightRecorderEvents.java
+ * </pre>
+ *
+ * and it is loaded by EdfEvents if the JVM provides Flight Recorder.
+ */
+public class FlightRecorderEvents extends EdfEvents.Recorder {
+
+	private static final EventType STAGE = EventType.getEventType(StageEvent.class);
+	private static final EventType SLICE = EventType.getEventType(SliceEvent.class);
+	private static final EventType LEVEL = EventType.getEventType(LevelEvent.class);
+	private static final EventType OPERATOR = EventType.getEventType(OperatorEvent.class);
+
+	public FlightRecorderEvents() {
+	}
+
+	boolean isAvailable() {
+		return FlightRecorder.isAvailable();
+	}
+
+	Object stage(String stage, String method, int nx, int ny, int nz) {
+		if (!STAGE.isEnabled()) return null;
+		StageEvent event = new StageEvent();
+		event.stage = stage;
+		event.method = method;
+		event.width = nx;
+		event.height = ny;
+		event.slices = nz;
+		event.begin();
+		return event;
+	}
+
+	Object slice(String method, int nx, int ny, int slice, int nz) {
+		if (!SLICE.isEnabled()) return null;
+		SliceEvent event = new SliceEvent();
+		event.method = method;
+		event.width = nx;
+		event.height = ny;
+		event.slice = slice;
+		event.slices = nz;
+		event.begin();
+		return event;
+	}
+
+	Object level(String transform, int nx, int ny, int level) {
+		if (!LEVEL.isEnabled()) return null;
+		LevelEvent event = new LevelEvent();
+		event.transform = transform;
+		event.width = nx;
+		event.height = ny;
+		event.level = level;
+		event.begin();
+		return event;
+	}
+
+	Object operator(String operator, int nx, int ny) {
+		if (!OPERATOR.isEnabled()) return null;
+		OperatorEvent event = new OperatorEvent();
+		event.operator = operator;
+		event.width = nx;
+		event.height = ny;
+		event.begin();
+		return event;
+	}
+
+	void commit(Object object) {
+		Event event = (Event) object;
+		event.end();
+		event.commit();
+	}
+
+	@Name("edf.Stage")
+	@Label("EDF Stage")
+	@Category("EDF")
+	@Description("Stage of the extended depth-of-field pipeline")
+	static class StageEvent extends Event {
+		@Label("Stage")
+		String stage;
+		@Label("Method")
+		String method;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Slices")
+		int slices;
+	}
+
+	@Name("edf.Slice")
+	@Label("EDF Slice")
+	@Category("EDF")
+	@Description("Sharpness estimation of one slice of the stack")
+	static class SliceEvent extends Event {
+		@Label("Method")
+		String method;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Slice")
+		int slice;
+		@Label("Slices")
+		int slices;
+	}
+
+	@Name("edf.WaveletLevel")
+	@Label("EDF Wavelet Level")
+	@Category("EDF")
+	@Description("One level of a wavelet analysis or synthesis")
+	static class LevelEvent extends Event {
+		@Label("Transform")
+		String transform;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Level")
+		int level;
+	}
+
+	@Name("edf.TopologyOperator")
+	@Label("EDF Topology Operator")
+	@Category("EDF")
+	@Description("Post-processing operator on the height-map")
+	static class OperatorEvent extends Event {
+		@Label("Operator")
+		String operator;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized kernels, built on the incubator module jdk.incubator.vector (JDK
+ * 16 or later). This class is compiled separately from the rest of the plugin:
+ *
+ * <pre>
+ * javac --release 17 --add-modules jdk.incubator.vector -cp bin -d bin src-vector/edf/VectorKernels.java
+ * </pre>
+ *
+ * and it is loaded by Kernels.getInstance() when the JVM runs with
+ * --add-modules jdk.incubator.vector. Each lane does the same operations in
+ * the same order as the scalar code, the results are identical.
+ */
+public class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Float> FLOAT = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> DOUBLE = DoubleVector.SPECIES_PREFERRED;
+
+	public VectorKernels() {
+	}
+
+	public String getName() {
+		return "Vector " + FLOAT.vectorBitSize() + " bits";
+	}
+
+	public void sobelDifference(float in[], float out[]) {
+		int n = in.length;
+		out[0] = 0;
+		int k = 1;
+		for (; k + FLOAT.length() < n; k += FLOAT.length()) {
+			FloatVector right = FloatVector.fromArray(FLOAT, in, k + 1);
+			FloatVector left = FloatVector.fromArray(FLOAT, in, k - 1);
+			right.sub(left).intoArray(out, k);
+		}
+		for (; k < n - 1; k++) {
+			out[k] = in[k + 1] - in[k - 1];
+		}
+		out[n - 1] = 0;
+	}
+
+	public void variance(float[] padded, int nx, int ny, int windowSize, float[] out) {
+		int nxp = nx + windowSize - 1;
+		int wlen = windowSize * windowSize;
+		int bound = FLOAT.loopBound(nx);
+		for (int y = 0; y < ny; y++) {
+			int x = 0;
+			for (; x < bound; x += FLOAT.length()) {
+				FloatVector ave = FloatVector.zero(FLOAT);
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++)
+						ave = ave.add(FloatVector.fromArray(FLOAT, padded, (y + j) * nxp + x + i));
+				ave = ave.div((float) wlen);
+				FloatVector var = FloatVector.zero(FLOAT);
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++) {
+						FloatVector temp = FloatVector.fromArray(FLOAT, padded, (y + j) * nxp + x + i).sub(ave);
+						var = var.add(temp.mul(temp));
+					}
+				var.intoArray(out, y * nx + x);
+			}
+			for (; x < nx; x++) {
+				float ave = 0;
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++)
+						ave += padded[(y + j) * nxp + x + i];
+				ave /= wlen;
+				float var = 0;
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++) {
+						float temp = padded[(y + j) * nxp + x + i] - ave;
+						var += temp * temp;
+					}
+				out[y * nx + x] = var;
+			}
+		}
+	}
+
+	public void argmax(float[] measure, float[] pixels, float label, float[] best, float[] height, float[] fused) {
+		int n = measure.length;
+		int bound = FLOAT.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += FLOAT.length()) {
+			FloatVector m = FloatVector.fromArray(FLOAT, measure, i);
+			FloatVector b = FloatVector.fromArray(FLOAT, best, i);
+			VectorMask<Float> greater = b.compare(VectorOperators.LT, m);
+			if (!greater.anyTrue()) continue;
+			b.blend(m, greater).intoArray(best, i);
+			FloatVector.fromArray(FLOAT, height, i).blend(label, greater).intoArray(height, i);
+			FloatVector.fromArray(FLOAT, fused, i).blend(FloatVector.fromArray(FLOAT, pixels, i), greater)
+					.intoArray(fused, i);
+		}
+		for (; i < n; i++) {
+			if (best[i] < measure[i]) {
+				best[i] = measure[i];
+				height[i] = label;
+				fused[i] = pixels[i];
+			}
+		}
+	}
+
+	/**
+	 * The input is extended by mirror and split into its even and odd samples,
+	 * so that the taps of the filters are contiguous loads.
+	 */
+	public void splitSymmetric(double vin[], double vout[], double h[], double g[]) {
+		int n = vin.length;
+		int n2 = n / 2;
+		int nh = h.length;
+		int ng = g.length;
+		if (n2 < 2 * DOUBLE.length()) {
+			super.splitSymmetric(vin, vout, h, g);
+			return;
+		}
+		int period = 2 * n - 2;
+		int pad = Math.max(nh, ng) + 1;
+		pad += pad % 2;
+		int half = pad / 2;
+		int ne = n2 + pad + 1;
+		double[] even = new double[ne];
+		double[] odd = new double[ne];
+		for (int m = 0; m < ne; m++) {
+			even[m] = vin[extend(2 * m - pad, n, period)];
+			odd[m] = vin[extend(2 * m + 1 - pad, n, period)];
+		}
+
+		int bound = DOUBLE.loopBound(n2);
+		int i = 0;
+		for (; i < bound; i += DOUBLE.length()) {
+			// Low pass part, centered on the even sample 2i
+			DoubleVector pix = DoubleVector.fromArray(DOUBLE, even, i + half).mul(h[0]);
+			for (int k = 1; k < nh; k++) {
+				DoubleVector left, right;
+				if (k % 2 == 0) {
+					left = DoubleVector.fromArray(DOUBLE, even, i + half - k / 2);
+					right = DoubleVector.fromArray(DOUBLE, even, i + half + k / 2);
+				}
+				else {
+					left = DoubleVector.fromArray(DOUBLE, odd, i + half - (k + 1) / 2);
+					right = DoubleVector.fromArray(DOUBLE, odd, i + half + (k - 1) / 2);
+				}
+				pix = pix.add(left.add(right).mul(h[k]));
+			}
+			pix.intoArray(vout, i);
+
+			// High pass part, centered on the odd sample 2i+1
+			pix = DoubleVector.fromArray(DOUBLE, odd, i + half).mul(g[0]);
+			for (int k = 1; k < ng; k++) {
+				DoubleVector left, right;
+				if (k % 2 == 0) {
+					left = DoubleVector.fromArray(DOUBLE, odd, i + half - k / 2);
+					right = DoubleVector.fromArray(DOUBLE, odd, i + half + k / 2);
+				}
+				else {
+					left = DoubleVector.fromArray(DOUBLE, even, i + half - (k - 1) / 2);
+					right = DoubleVector.fromArray(DOUBLE, even, i + half + (k + 1) / 2);
+				}
+				pix = pix.add(left.add(right).mul(g[k]));
+			}
+			pix.intoArray(vout, i + n2);
+		}
+
+		for (; i < n2; i++) {
+			int j = i * 2;
+			double p = vin[j] * h[0];
+			for (int k = 1; k < nh; k++)
+				p = p + h[k] * (vin[mirrorLow(j - k, n, period)] + vin[mirrorHigh(j + k, n, period)]);
+			vout[i] = p;
+			j = j + 1;
+			p = vin[j] * g[0];
+			for (int k = 1; k < ng; k++)
+				p = p + g[k] * (vin[mirrorLow(j - k, n, period)] + vin[mirrorHigh(j + k, n, period)]);
+			vout[i + n2] = p;
+		}
+	}
+
+	/**
+	 * Index of the sample p of the mirror extension, as computed by the scalar
+	 * splitting.
+	 */
+	private static int extend(int p, int n, int period) {
+		return (p < 0 ? mirrorLow(p, n, period) : mirrorHigh(p, n, period));
+	}
+}
@@ -43,8 +43,226 @@
 
 package edf;
 
+import imageware.Builder;
 import imageware.ImageWare;
+import imageware.OffHeapScope;
+import imageware.OffHeapStack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public abstract class AbstractEdfAlgorithm {
+
+	private LinkedHashMap<String, Long> buffers = new LinkedHashMap<String, Long>();
+	private LinkedHashMap<String, Long> peakBuffers = new LinkedHashMap<String, Long>();
+	private long retained = 0;
+	private long peakRetained = 0;
+
+	protected CancellationToken token = null;
+
+	private boolean offHeap = false;
+	private OffHeapScope scope = null;
+
+	private float[] zmin = null;
+	private float[] zmax = null;
+	private float zlow = 0;
+	private float zhigh = Float.MAX_VALUE;
+
 	abstract public ImageWare[] process(ImageWare imageStack);
+
+	/**
+	 * Process the stack, the token is checked at each slice. If the job is
+	 * cancelled, a CancellationException is thrown. In both cases the stacks
+	 * kept outside of the heap are released; the peak of the retained memory
+	 * is kept for the report of the job.
+	 */
+	public ImageWare[] process(ImageWare imageStack, CancellationToken token) {
+		this.token = token;
+		try {
+			return process(imageStack);
+		}
+		finally {
+			this.token = null;
+			releaseOffHeap();
+		}
+	}
+
+	/**
+	 * Keep the stacks of the algorithm which grow with the number of slices,
+	 * the coefficients of the wavelet algorithms, outside of the Java heap.
+	 * They are released at the end of process().
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Create a stack outside of the Java heap, in the scope of the current
+	 * call to process().
+	 */
+	protected OffHeapStack createOffHeap(int nx, int ny, int nz, int type) {
+		if (scope == null) scope = new OffHeapScope();
+		return Builder.createOffHeap(nx, ny, nz, type, scope);
+	}
+
+	/**
+	 * Release the stacks created by createOffHeap().
+	 */
+	protected void releaseOffHeap() {
+		if (scope != null) scope.close();
+		scope = null;
+	}
+
+	/**
+	 * Report the progress and check the cancellation token, if any.
+	 */
+	protected void checkpoint(String task, int done, int total) {
+		if (token != null) token.checkpoint(task, done, total);
+	}
+
+	/**
+	 * Limit the search of the sharpest slice of each pixel to the slices
+	 * zmin[i]..zmax[i], numbered from 1, or to the whole stack if the arrays
+	 * are null. The range is used by the algorithms which select the slices
+	 * pixel by pixel (Sobel, Variance and the focus measures), the wavelet
+	 * algorithms ignore it.
+	 */
+	public void setSearchRange(float[] zmin, float[] zmax) {
+		this.zmin = zmin;
+		this.zmax = zmax;
+		zlow = 0;
+		zhigh = Float.MAX_VALUE;
+		if (zmin == null || zmax == null) return;
+		zlow = Float.MAX_VALUE;
+		zhigh = 0;
+		for (int i = 0; i < zmin.length; i++) {
+			zlow = Math.min(zlow, zmin[i]);
+			zhigh = Math.max(zhigh, zmax[i]);
+		}
+	}
+
+	/**
+	 * Return true if the slice (numbered from 1) is in the search range of at
+	 * least one pixel.
+	 */
+	protected boolean isSearched(int slice) {
+		return slice >= zlow && slice <= zhigh;
+	}
+
+	/**
+	 * Exclude from the selection the pixels for which the slice (numbered from
+	 * 1) is out of the search range.
+	 */
+	protected void restrictToSearchRange(float[] measure, int slice) {
+		if (zmin == null || zmax == null) return;
+		for (int i = 0; i < measure.length; i++)
+			if (slice < zmin[i] || slice > zmax[i]) measure[i] = -Float.MAX_VALUE;
+	}
+
+	/**
+	 * Same as restrictToSearchRange(float[], int) for the integer measures,
+	 * which are positive.
+	 */
+	protected void restrictToSearchRange(int[] measure, int slice) {
+		if (zmin == null || zmax == null) return;
+		for (int i = 0; i < measure.length; i++)
+			if (slice < zmin[i] || slice > zmax[i]) measure[i] = -1;
+	}
+
+	protected void restrictToSearchRange(long[] measure, int slice) {
+		if (zmin == null || zmax == null) return;
+		for (int i = 0; i < measure.length; i++)
+			if (slice < zmin[i] || slice > zmax[i]) measure[i] = -1;
+	}
+
+	/**
+	 * Copy the unsigned pixels of a slice of a BYTE or SHORT stack, read
+	 * directly from its buffer.
+	 */
+	protected static void getSliceInt(ImageWare stack, int z, int[] out) {
+		if (stack.getType() == ImageWare.BYTE) {
+			byte[] pixels = stack.getSliceByte(z);
+			for (int i = 0; i < out.length; i++)
+				out[i] = pixels[i] & 0xFF;
+		}
+		else {
+			short[] pixels = stack.getSliceShort(z);
+			for (int i = 0; i < out.length; i++)
+				out[i] = pixels[i] & 0xFFFF;
+		}
+	}
+
+	/**
+	 * Account a buffer held by the algorithm, a buffer with the same name is
+	 * replaced. Empty buffers are ignored.
+	 */
+	protected void retain(String name, long bytes) {
+		release(name);
+		if (bytes <= 0) return;
+		buffers.put(name, bytes);
+		retained += bytes;
+		if (retained > peakRetained) {
+			peakRetained = retained;
+			peakBuffers = new LinkedHashMap<String, Long>(buffers);
+		}
+	}
+
+	protected void retain(String name, ImageWare buffer) {
+		retain(name, sizeOf(buffer));
+	}
+
+	/**
+	 * Account a buffer released by the algorithm.
+	 */
+	protected void release(String name) {
+		Long bytes = buffers.remove(name);
+		if (bytes != null) retained -= bytes;
+	}
+
+	/**
+	 * Maximum size in bytes of the buffers held simultaneously by the last
+	 * call to process().
+	 */
+	public long getPeakRetainedBytes() {
+		return peakRetained;
+	}
+
+	/**
+	 * Buffers held at the peak, by name, in bytes.
+	 */
+	public Map<String, Long> getPeakRetainedBuffers() {
+		return new LinkedHashMap<String, Long>(peakBuffers);
+	}
+
+	/**
+	 * Reset the accounting of the buffers, called at the start of process().
+	 */
+	protected void resetRetained() {
+		buffers.clear();
+		peakBuffers.clear();
+		retained = 0;
+		peakRetained = 0;
+	}
+
+	/**
+	 * Size in bytes of the pixels of an image.
+	 */
+	public static long sizeOf(ImageWare image) {
+		if (image == null) return 0;
+		long n = (long) image.getSizeX() * image.getSizeY() * image.getSizeZ();
+		switch (image.getType()) {
+		case ImageWare.BYTE:
+			return n;
+		case ImageWare.SHORT:
+			return n * 2;
+		case ImageWare.FLOAT:
+			return n * 4;
+		default:
+			return n * 8;
+		}
+	}
 }
@@ -0,0 +1,133 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation of an EDF job, with an optional deadline.
+ *
+ * The token is shared between the thread which controls the job and the thread
+ * which runs it. The algorithms, the wavelet transforms and the topology
+ * operators check it at the boundaries of the slices and of the levels; a
+ * cancelled job stops by throwing a CancellationException whose message gives
+ * the progress reached.
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled = false;
+	private volatile long deadline = Long.MAX_VALUE;
+	private volatile String progress = "";
+
+	public CancellationToken() {
+	}
+
+	/**
+	 * Token with a deadline at timeout ms from now.
+	 */
+	public CancellationToken(long timeout) {
+		setTimeout(timeout);
+	}
+
+	/**
+	 * Request the cancellation, the job stops at its next check.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Set the deadline at timeout ms from now.
+	 */
+	public void setTimeout(long timeout) {
+		deadline = System.currentTimeMillis() + timeout;
+	}
+
+	/**
+	 * Set the deadline in ms since the epoch, Long.MAX_VALUE for no deadline.
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public boolean isCancelled() {
+		return cancelled || isDeadlineExceeded();
+	}
+
+	public boolean isDeadlineExceeded() {
+		return System.currentTimeMillis() > deadline;
+	}
+
+	/**
+	 * Last progress reported by checkpoint(), for example
+	 * "Sharpness estimation 12/500".
+	 */
+	public String getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Report the progress of a task and check the token.
+	 */
+	public void checkpoint(String task, int done, int total) {
+		progress = task + " " + done + "/" + total;
+		check();
+	}
+
+	/**
+	 * Throw a CancellationException if the job is cancelled or if the deadline
+	 * is exceeded.
+	 */
+	public void check() {
+		if (cancelled) {
+			throw new CancellationException("Cancelled" + (progress.length() > 0 ? " at " + progress : ""));
+		}
+		if (isDeadlineExceeded()) {
+			throw new CancellationException("Deadline exceeded" + (progress.length() > 0 ? " at " + progress : ""));
+		}
+	}
+}
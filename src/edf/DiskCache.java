@@ -0,0 +1,328 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+import ij.io.Opener;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Optional cache of the EDF results on disk, shared between the sessions and
+ * the batch jobs. An entry holds the composite image and the height-map of a
+ * run, as TIFF files; its key is the SHA-256 of the pixels of the input stack
+ * and of the canonical string of the parameters. The cache is bounded in
+ * size, the least recently used entries are deleted first.
+ *
+ * The cache is disabled until a directory is set, by setDirectory() or by the
+ * system properties:
+ *
+ * <pre>
+ * -Dedf.cache.dir=/path/to/cache -Dedf.cache.size=2048 (MB, default 1024)
+ * </pre>
+ *
+ * The statistics are published by the EdfMonitor MXBean.
+ */
+public class DiskCache {
+
+	private static final String COMPOSITE = "-composite.tif";
+	private static final String HEIGHTMAP = "-heightmap.tif";
+
+	private static DiskCache instance;
+
+	private File directory = null;
+	private long maxBytes = 1024L * 1024L * 1024L;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Cache configured by the system properties. An invalid setting does not
+	 * stop the processing: a directory which can not be created leaves the
+	 * cache disabled, an invalid size keeps the default size, with a warning.
+	 */
+	private DiskCache() {
+		String dir = System.getProperty("edf.cache.dir");
+		if (dir != null && dir.length() > 0) {
+			try {
+				setDirectory(new File(dir));
+			}
+			catch (RuntimeException ex) {
+				System.err.println("EDF: " + ex.getMessage() + ", the disk cache is disabled");
+			}
+		}
+		String size = System.getProperty("edf.cache.size");
+		if (size != null) {
+			long mb = -1;
+			try {
+				mb = Long.parseLong(size.trim());
+			}
+			catch (NumberFormatException ex) {
+			}
+			if (mb > 0 && mb <= Long.MAX_VALUE / (1024L * 1024L)) setMaximumSize(mb * 1024L * 1024L);
+			else
+				System.err.println("EDF: invalid edf.cache.size " + size + " (MB), the default size of the disk cache is used");
+		}
+	}
+
+	public static synchronized DiskCache getInstance() {
+		if (instance == null) {
+			instance = new DiskCache();
+		}
+		return instance;
+	}
+
+	public Object clone() throws CloneNotSupportedException {
+		throw new CloneNotSupportedException();
+	}
+
+	/**
+	 * Set the directory of the cache, it is created if needed; null disables
+	 * the cache.
+	 */
+	public synchronized void setDirectory(File directory) {
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+			throw new RuntimeException("Unable to create the cache directory " + directory);
+		this.directory = directory;
+	}
+
+	public synchronized File getDirectory() {
+		return directory;
+	}
+
+	public synchronized boolean isEnabled() {
+		return directory != null;
+	}
+
+	/**
+	 * Set the maximum size of the cache in bytes.
+	 */
+	public synchronized void setMaximumSize(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long getMaximumSize() {
+		return maxBytes;
+	}
+
+	/**
+	 * Key of a stack and of the canonical string of the parameters.
+	 */
+	public static String key(ImagePlus imp, String parameters) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException("SHA-256 not available: " + ex);
+		}
+		ImageStack stack = imp.getStack();
+		int nx = stack.getWidth();
+		int ny = stack.getHeight();
+		int nz = stack.getSize();
+		digest.update((nx + "x" + ny + "x" + nz + "/" + imp.getType() + "/" + parameters).getBytes());
+		ByteBuffer buffer = ByteBuffer.allocate(4 * nx);
+		for (int z = 1; z <= nz; z++) {
+			Object pixels = stack.getPixels(z);
+			if (pixels instanceof byte[]) {
+				digest.update((byte[]) pixels);
+				continue;
+			}
+			for (int y = 0; y < ny; y++) {
+				buffer.clear();
+				int offset = y * nx;
+				if (pixels instanceof short[]) {
+					short[] p = (short[]) pixels;
+					for (int x = 0; x < nx; x++)
+						buffer.putShort(p[offset + x]);
+				}
+				else if (pixels instanceof float[]) {
+					float[] p = (float[]) pixels;
+					for (int x = 0; x < nx; x++)
+						buffer.putFloat(p[offset + x]);
+				}
+				else if (pixels instanceof int[]) {
+					int[] p = (int[]) pixels;
+					for (int x = 0; x < nx; x++)
+						buffer.putInt(p[offset + x]);
+				}
+				else {
+					throw new RuntimeException("Unknown pixel type.");
+				}
+				digest.update(buffer.array(), 0, buffer.position());
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b & 0xFF));
+		return hex.toString();
+	}
+
+	/**
+	 * Return the composite image and the height-map (null if it was not
+	 * stored) of an entry, or null if the entry is not in the cache.
+	 */
+	public synchronized ImagePlus[] get(String key) {
+		if (directory == null) return null;
+		File composite = new File(directory, key + COMPOSITE);
+		File heightMap = new File(directory, key + HEIGHTMAP);
+		if (!composite.isFile()) {
+			misses++;
+			return null;
+		}
+		Opener opener = new Opener();
+		ImagePlus impComposite = opener.openImage(composite.getPath());
+		ImagePlus impHeightMap = (heightMap.isFile() ? opener.openImage(heightMap.getPath()) : null);
+		if (impComposite == null || (heightMap.isFile() && impHeightMap == null)) {
+			misses++;
+			remove(key);
+			return null;
+		}
+		hits++;
+		long now = System.currentTimeMillis();
+		composite.setLastModified(now);
+		if (impHeightMap != null) heightMap.setLastModified(now);
+		impComposite.setTitle("Output");
+		if (impHeightMap != null) impHeightMap.setTitle("Height-Map");
+		return new ImagePlus[] { impComposite, impHeightMap };
+	}
+
+	/**
+	 * Store the composite image and the height-map (may be null) of an entry,
+	 * then delete the least recently used entries above the maximum size.
+	 */
+	public synchronized void put(String key, ImagePlus[] images) {
+		if (directory == null) return;
+		if (images[1] != null) write(images[1], new File(directory, key + HEIGHTMAP));
+		write(images[0], new File(directory, key + COMPOSITE));
+		evict();
+	}
+
+	/**
+	 * Delete all the entries.
+	 */
+	public synchronized void clear() {
+		for (File file : listEntries())
+			file.delete();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Size in bytes of the files of the cache.
+	 */
+	public synchronized long getSize() {
+		long size = 0;
+		for (File file : listEntries())
+			size += file.length();
+		return size;
+	}
+
+	/**
+	 * The file is written under a temporary name then renamed, so that a
+	 * concurrent job never reads a partial file.
+	 */
+	private void write(ImagePlus imp, File file) {
+		File temp = new File(file.getPath() + ".tmp");
+		if (!new FileSaver(imp).saveAsTiff(temp.getPath()))
+			throw new RuntimeException("Unable to write the cache file " + temp);
+		file.delete();
+		if (!temp.renameTo(file)) throw new RuntimeException("Unable to write the cache file " + file);
+	}
+
+	private void remove(String key) {
+		new File(directory, key + COMPOSITE).delete();
+		new File(directory, key + HEIGHTMAP).delete();
+	}
+
+	private void evict() {
+		if (directory == null) return;
+		File[] files = listEntries();
+		long size = 0;
+		for (File file : files)
+			size += file.length();
+		if (size <= maxBytes) return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (int i = 0; i < files.length && size > maxBytes; i++) {
+			String name = files[i].getName();
+			if (!name.endsWith(COMPOSITE)) continue;
+			String key = name.substring(0, name.length() - COMPOSITE.length());
+			File heightMap = new File(directory, key + HEIGHTMAP);
+			size -= files[i].length() + (heightMap.isFile() ? heightMap.length() : 0);
+			remove(key);
+			evictions++;
+		}
+	}
+
+	private File[] listEntries() {
+		if (directory == null) return new File[0];
+		File[] files = directory.listFiles();
+		if (files == null) return new File[0];
+		int n = 0;
+		for (File file : files)
+			if (file.getName().endsWith(COMPOSITE) || file.getName().endsWith(HEIGHTMAP)) files[n++] = file;
+		return Arrays.copyOf(files, n);
+	}
+}
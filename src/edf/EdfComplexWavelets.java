@@ -45,8 +45,10 @@ package edf;
 
 import imageware.Builder;
 import imageware.ImageWare;
+import imageware.OffHeapStack;
 import wavelets.ComplexWavelet;
 import wavelets.ImageAccess;
+import wavelets.MaximumModulus;
 
 public class EdfComplexWavelets extends EdfWaveletMaximumModulus {
 
@@ -68,13 +70,10 @@ public class EdfComplexWavelets extends EdfWaveletMaximumModulus {
 		int nx = imageStack.getSizeX();
 		int ny = imageStack.getSizeY();
 		int nz = imageStack.getSizeZ();
-		double newval, oldval;
-		int i, j, k;
-		double[][] buf = new double[nx][ny];
-		ImageAccess slice;
-		ImageAccess coefftempRe = null;
-		ImageAccess coefftempIm = null;
-		ImageAccess[] coefftemp = { null, null };
+		double newval;
+		int i, k;
+		ImageAccess coefftempRe = new ImageAccess(nx, ny);
+		ImageAccess coefftempIm = new ImageAccess(nx, ny);
 		ImageWare res = Builder.create(nx, ny, 1, ImageWare.FLOAT);
 		ImageWare resRe = Builder.create(nx, ny, 1, ImageWare.FLOAT);
 		ImageWare resIm = Builder.create(nx, ny, 1, ImageWare.FLOAT);
@@ -82,63 +81,97 @@ public class EdfComplexWavelets extends EdfWaveletMaximumModulus {
 		ImageWare heightMap = Builder.create(nx, ny, 1, ImageWare.SHORT);
 		ImageWare coeffStackRe = null;
 		ImageWare coeffStackIm = null;
+		OffHeapStack[] coeffOffHeap = null;
 		double tempvalRe, tempvalIm;
 		if (this.sbConsistencyCheck || this.majConsistencyCheck) {
-			coeffStackRe = Builder.create(nx, ny, nz, ImageWare.FLOAT);
-			coeffStackIm = Builder.create(nx, ny, nz, ImageWare.FLOAT);
+			if (isOffHeap()) {
+				coeffOffHeap = new OffHeapStack[] { createOffHeap(nx, ny, nz, ImageWare.FLOAT),
+						createOffHeap(nx, ny, nz, ImageWare.FLOAT) };
+			}
+			else {
+				coeffStackRe = Builder.create(nx, ny, nz, ImageWare.FLOAT);
+				coeffStackIm = Builder.create(nx, ny, nz, ImageWare.FLOAT);
+			}
+		}
+		resetRetained();
+		retain("Slice transform", 2 * 8L * nx * ny);
+		retain("Wavelet workspace", 4 * 8L * nx * ny);
+		retain("Maximum modulus", temp);
+		retain("Height-map", heightMap);
+		retain("Fused coefficients", sizeOf(res) + sizeOf(resRe) + sizeOf(resIm));
+		retain("Coefficient stacks", sizeOf(coeffStackRe) + sizeOf(coeffStackIm));
+		if (coeffOffHeap != null) {
+			retain("Coefficient stacks (off-heap)", coeffOffHeap[0].getSizeInBytes() + coeffOffHeap[1].getSizeInBytes());
+		}
+		float[] maximum = temp.getSliceFloat(0);
+		short[] height = heightMap.getSliceShort(0);
+		float[] fusedRe = resRe.getSliceFloat(0);
+		float[] fusedIm = resIm.getSliceFloat(0);
+		MaximumModulus selection = null;
+		if (coeffStackRe == null && coeffOffHeap == null && nScales > 0) {
+			selection = new MaximumModulus(maximum, height, fusedRe, fusedIm);
 		}
 
 		for (k = 0; k < nz; k++) {
 			log.setProgessLength(15 + k * (65 / nz));
-			imageStack.getXY(0, 0, k, buf);
-			slice = new ImageAccess(buf);
-			coefftemp = ComplexWavelet.analysis(slice, nScales, length);
-			coefftempRe = coefftemp[0];
-			coefftempIm = coefftemp[1];
-			for (i = 0; i < nx; i++) {
-				for (j = 0; j < ny; j++) {
-					tempvalRe = coefftempRe.getPixel(i, j);
-					tempvalIm = coefftempIm.getPixel(i, j);
-					newval = tempvalRe * tempvalRe + tempvalIm * tempvalIm;
-					oldval = temp.getPixel(i, j, 0);
-					if (oldval < newval) {
-						temp.putPixel(i, j, 0, newval);
-						heightMap.putPixel(i, j, 0, k);
-						resRe.putPixel(i, j, 0, tempvalRe);
-						resIm.putPixel(i, j, 0, tempvalIm);
-					}
+			checkpoint("Sharpness estimation", k, nz);
+			EdfEvents event = EdfEvents.slice("Complex wavelets", nx, ny, k + 1, nz);
+			ImageViews.get(imageStack, k, coefftempRe.getPixels());
+			if (selection != null) {
+				// The coefficients are selected by the last pass of each level
+				selection.setLabel(k);
+				ComplexWavelet.analysis(coefftempRe, coefftempRe, coefftempIm, nScales, length, selection, token);
+				EdfEvents.end(event);
+				continue;
+			}
+			ComplexWavelet.analysis(coefftempRe, coefftempRe, coefftempIm, nScales, length, token);
+			double[] re = coefftempRe.getPixels();
+			double[] im = coefftempIm.getPixels();
+			for (i = 0; i < nx * ny; i++) {
+				tempvalRe = re[i];
+				tempvalIm = im[i];
+				newval = tempvalRe * tempvalRe + tempvalIm * tempvalIm;
+				if (maximum[i] < newval) {
+					maximum[i] = (float) newval;
+					height[i] = (short) k;
+					fusedRe[i] = (float) tempvalRe;
+					fusedIm[i] = (float) tempvalIm;
 				}
 			}
-			if (this.sbConsistencyCheck || this.majConsistencyCheck) {
-				coeffStackRe.putXY(0, 0, k, coefftempRe.getArrayPixels());
-				coeffStackIm.putXY(0, 0, k, coefftempIm.getArrayPixels());
+			if (coeffStackRe != null) {
+				ImageViews.put(re, coeffStackRe, k);
+				ImageViews.put(im, coeffStackIm, k);
 			}
+			if (coeffOffHeap != null) {
+				coeffOffHeap[0].putXY(k, re);
+				coeffOffHeap[1].putXY(k, im);
+			}
+			EdfEvents.end(event);
 		}
 
 		if (this.sbConsistencyCheck) {
-			this.subBandConsistencyCheck(heightMap, resRe, resIm);
+			subBandConsistencyCheck(heightMap, resRe, resIm, nScales);
 		}
 
 		if (this.majConsistencyCheck) {
-			majorityConsistencyCheck(heightMap, majWindowSize, nz);
+			majorityConsistencyCheck(heightMap, majWindowSize, nz, nScales);
 		}
 
-		if (this.sbConsistencyCheck || this.majConsistencyCheck) {
+		if (coeffStackRe != null) {
 			updateMergedCoeff(new ImageWare[] { coeffStackRe, coeffStackIm }, heightMap,
 					new ImageWare[] { resRe, resIm });
 		}
+		if (coeffOffHeap != null) {
+			updateMergedCoeff(coeffOffHeap, heightMap, new ImageWare[] { resRe, resIm });
+			releaseOffHeap();
+			release("Coefficient stacks (off-heap)");
+		}
 
-		double[][] iabufRe = new double[nx][ny];
-		double[][] iabufIm = new double[nx][ny];
-		resRe.getXY(0, 0, 0, iabufRe);
-		resIm.getXY(0, 0, 0, iabufIm);
-		coefftempRe.putArrayPixels(iabufRe);
-		coefftempIm.putArrayPixels(iabufIm);
-
-		coefftemp = ComplexWavelet.synthesis(coefftempRe, coefftempIm, nScales, length);
-		coefftempRe = coefftemp[0];
-		coefftempIm = coefftemp[1];
-		res.putXY(0, 0, 0, coefftempRe.getArrayPixels());
+		ImageViews.get(resRe, 0, coefftempRe.getPixels());
+		ImageViews.get(resIm, 0, coefftempIm.getPixels());
+
+		ComplexWavelet.synthesis(coefftempRe, coefftempIm, coefftempRe, coefftempIm, nScales, length, token);
+		ImageViews.put(coefftempRe.getPixels(), res, 0);
 		return new ImageWare[] { res, heightMap };
 	}
 
@@ -154,72 +187,16 @@ public class EdfComplexWavelets extends EdfWaveletMaximumModulus {
 		}
 	}
 
-	private void subBandConsistencyCheck(ImageWare map, ImageWare coeffRe, ImageWare coeffIm) {
-		int i, j, k, mx, my, x, y;
-		int a, b, c;
-		double va, vb, vc;
-		int nx = coeffRe.getHeight();
-		int ny = coeffRe.getWidth();
-		for (i = 0; i < 3; i++) {
-			j = 1;
-			for (k = 0; k < i; k++)
-				j *= 2;
-			mx = nx / j;
-			my = ny / j;
-			for (x = mx / 2; x < mx; x++) {
-				for (y = 0; y < my / 2; y++) {
-					a = (int) map.getPixel(x, y, 0);
-					b = (int) map.getPixel(x, y + my / 2, 0);
-					c = (int) map.getPixel(x - mx / 2, y + my / 2, 0);
-
-					if (a == b) {
-						if (a == c) {
-							continue;
-						}
-						else {
-							map.putPixel(x - mx / 2, y + my / 2, 0, a);
-						}
-					}
-					else {
-						if (a == c) {
-							map.putPixel(x, y + my / 2, 0, a);
-						}
-						else {
-							if (b == c) {
-								map.putPixel(x, y, 0, b);
-							}
-							else {
-								va = modulus2(coeffRe.getPixel(x, y, 0), coeffIm.getPixel(x, y, 0));
-								vb = modulus2(coeffRe.getPixel(x, y + my / 2, 0), coeffIm.getPixel(x, y + my / 2, 0));
-								vc = modulus2(coeffRe.getPixel(x - mx / 2, y + my / 2, 0),
-										coeffIm.getPixel(x - mx / 2, y + my / 2, 0));
-
-								if (va > vb && va > vc) {
-									map.putPixel(x - mx / 2, y + my / 2, 0, a);
-									map.putPixel(x, y + my / 2, 0, a);
-								}
-								else {
-									if (vb > va && vb > vc) {
-										map.putPixel(x - mx / 2, y + my / 2, 0, b);
-										map.putPixel(x, y, 0, b);
-									}
-									else {
-										if (vc > va && vc > vb) {
-											map.putPixel(x, y + my / 2, 0, c);
-											map.putPixel(x, y, 0, c);
-										}
-									}
-								}
-							}
-						}
-					}
-				}
+	private void updateMergedCoeff(OffHeapStack[] coeffStack, ImageWare map, ImageWare[] coeff) {
+		int nx = coeffStack[0].getSizeX();
+		int ny = coeffStack[0].getSizeY();
+		int i, j;
+		for (i = 0; i < nx; i++) {
+			for (j = 0; j < ny; j++) {
+				coeff[0].putPixel(i, j, 0, coeffStack[0].getPixel(i, j, (int) map.getPixel(i, j, 0)));
+				coeff[1].putPixel(i, j, 0, coeffStack[1].getPixel(i, j, (int) map.getPixel(i, j, 0)));
 			}
 		}
 	}
 
-	private double modulus2(double x, double y) {
-		return x * x + y * y;
-	}
-
 }
@@ -0,0 +1,147 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+/**
+ * Java Flight Recorder events of the EDF pipeline: the stages of
+ * ExtendedDepthOfField, the slices of the algorithms, the levels of the
+ * wavelet transforms and the topology operators. They are shown under the
+ * category "EDF" in JDK Mission Control.
+ *
+ * The events are recorded by the class FlightRecorderEvents of the optional
+ * folder src-jfr, which is compiled separately, so that the plugin is built
+ * against the Java 8 API. They are only built if this class is present, if
+ * the JVM provides Flight Recorder and if the event type is enabled in a
+ * running recording, otherwise the factory methods return null and end() does
+ * nothing.
+ *
+ * <pre>
+ * EdfEvents event = EdfEvents.slice("Sobel", nx, ny, k, nz);
+ * ...
+ * EdfEvents.end(event);
+ * </pre>
+ */
+public final class EdfEvents {
+
+	private static final Recorder RECORDER = loadRecorder();
+
+	private final Object event;
+
+	private EdfEvents(Object event) {
+		this.event = event;
+	}
+
+	/**
+	 * Stage of the pipeline (color conversion, sharpness estimation, ...).
+	 */
+	public static EdfEvents stage(String stage, String method, int nx, int ny, int nz) {
+		if (RECORDER == null) return null;
+		return wrap(RECORDER.stage(stage, method, nx, ny, nz));
+	}
+
+	/**
+	 * Processing of one slice of the stack by an EDF algorithm.
+	 */
+	public static EdfEvents slice(String method, int nx, int ny, int slice, int nz) {
+		if (RECORDER == null) return null;
+		return wrap(RECORDER.slice(method, nx, ny, slice, nz));
+	}
+
+	/**
+	 * One level of a wavelet transform, nx and ny are the size of the level.
+	 */
+	public static EdfEvents level(String transform, int nx, int ny, int level) {
+		if (RECORDER == null) return null;
+		return wrap(RECORDER.level(transform, nx, ny, level));
+	}
+
+	/**
+	 * Post-processing operator on the topology (height-map).
+	 */
+	public static EdfEvents operator(String operator, int nx, int ny) {
+		if (RECORDER == null) return null;
+		return wrap(RECORDER.operator(operator, nx, ny));
+	}
+
+	/**
+	 * End and commit the event, null is accepted.
+	 */
+	public static void end(EdfEvents event) {
+		if (event == null) return;
+		RECORDER.commit(event.event);
+	}
+
+	private static EdfEvents wrap(Object event) {
+		return (event == null ? null : new EdfEvents(event));
+	}
+
+	private static Recorder loadRecorder() {
+		try {
+			Recorder recorder = (Recorder) Class.forName("edf.FlightRecorderEvents").getDeclaredConstructor().newInstance();
+			if (recorder.isAvailable()) return recorder;
+		}
+		catch (Throwable ex) {
+			// src-jfr not compiled or Flight Recorder not available
+		}
+		return null;
+	}
+
+	/**
+	 * Recorder of the events, implemented by FlightRecorderEvents. The events
+	 * are returned as objects, null if their type is not enabled.
+	 */
+	abstract static class Recorder {
+
+		abstract boolean isAvailable();
+
+		abstract Object stage(String stage, String method, int nx, int ny, int nz);
+
+		abstract Object slice(String method, int nx, int ny, int slice, int nz);
+
+		abstract Object level(String transform, int nx, int ny, int level);
+
+		abstract Object operator(String operator, int nx, int ny);
+
+		abstract void commit(Object event);
+	}
+}
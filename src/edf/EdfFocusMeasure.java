@@ -0,0 +1,106 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import imageware.Builder;
+import imageware.ImageWare;
+
+/**
+ * EDF with a pluggable focus measure: for each pixel, the slice of maximum
+ * measure is selected. The merge is done on the flat arrays of the slices.
+ */
+public class EdfFocusMeasure extends AbstractEdfAlgorithm {
+
+	private FocusMeasure measure;
+	private int windowSize = 3;
+
+	public EdfFocusMeasure(FocusMeasure measure, int windowSize) {
+		this.measure = measure;
+		this.windowSize = windowSize;
+	}
+
+	public FocusMeasure getMeasure() {
+		return measure;
+	}
+
+	public ImageWare[] process(ImageWare imageStack) {
+		LogSingleton log = LogSingleton.getInstance();
+		int nx = imageStack.getSizeX();
+		int ny = imageStack.getSizeY();
+		int nz = imageStack.getSizeZ();
+		int n = nx * ny;
+		Kernels kernels = Kernels.getInstance();
+		ImageWare slice = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		ImageWare res = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		ImageWare topology = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		float[] pixels = slice.getSliceFloat(0);
+		float[] fused = res.getSliceFloat(0);
+		float[] height = topology.getSliceFloat(0);
+		float[] sharpness = new float[n];
+		float[] best = new float[n];
+
+		resetRetained();
+		retain("Slice", slice);
+		retain("Sharpness", 4L * n);
+		retain("Maximum sharpness", 4L * n);
+		retain("Height-map", topology);
+		retain("Fused image", res);
+
+		imageStack.getXY(0, 0, 0, slice);
+		System.arraycopy(pixels, 0, fused, 0, n);
+		topology.fillConstant(1);
+
+		for (int k = 0; k < nz; k++) {
+			log.setProgessLength(15 + k * (65 / nz));
+			checkpoint("Sharpness estimation", k, nz);
+			if (!isSearched(k + 1)) continue;
+			EdfEvents event = EdfEvents.slice(measure.getName(), nx, ny, k + 1, nz);
+			imageStack.getXY(0, 0, k, slice);
+			measure.compute(pixels, nx, ny, windowSize, sharpness);
+			restrictToSearchRange(sharpness, k + 1);
+			kernels.argmax(sharpness, pixels, k + 1, best, height, fused);
+			EdfEvents.end(event);
+		}
+		return new ImageWare[] { res, topology };
+	}
+}
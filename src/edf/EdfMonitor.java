@@ -0,0 +1,203 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the EDF jobs, queued, running and recently finished, exposed as
+ * a MXBean for the monitoring tools (JConsole, JMX exporters).
+ */
+public class EdfMonitor implements EdfMonitorMXBean {
+
+	public static final String OBJECT_NAME = "edf:type=Monitor";
+
+	private static final int HISTORY = 100;
+
+	private static EdfMonitor instance;
+
+	private long nextId = 1;
+	private LinkedList<JobMetrics> queued = new LinkedList<JobMetrics>();
+	private LinkedList<JobMetrics> running = new LinkedList<JobMetrics>();
+	private LinkedList<JobMetrics> completed = new LinkedList<JobMetrics>();
+	private long countCompleted = 0;
+	private long countFailed = 0;
+	private long countCancelled = 0;
+	private long totalSlices = 0;
+	private double totalSharpnessTime = 0.0;
+
+	private EdfMonitor() {
+	}
+
+	public static synchronized EdfMonitor getInstance() {
+		if (instance == null) {
+			instance = new EdfMonitor();
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if (!server.isRegistered(name)) server.registerMBean(instance, name);
+			}
+			catch (Exception ex) {
+				System.err.println("EDF: unable to register the monitor " + OBJECT_NAME + ": " + ex);
+			}
+		}
+		return instance;
+	}
+
+	public Object clone() throws CloneNotSupportedException {
+		throw new CloneNotSupportedException();
+	}
+
+	/**
+	 * Register a new job in the queue.
+	 */
+	public synchronized JobMetrics submit(String name) {
+		JobMetrics job = new JobMetrics(nextId++, name);
+		queued.add(job);
+		return job;
+	}
+
+	/**
+	 * New job which is not queued: it is registered when it starts, a job
+	 * which never starts is not kept by the monitor.
+	 */
+	public synchronized JobMetrics create(String name) {
+		return new JobMetrics(nextId++, name);
+	}
+
+	synchronized void started(JobMetrics job) {
+		queued.remove(job);
+		running.add(job);
+	}
+
+	synchronized void finished(JobMetrics job) {
+		queued.remove(job);
+		running.remove(job);
+		completed.addFirst(job);
+		while (completed.size() > HISTORY)
+			completed.removeLast();
+		if (JobMetrics.COMPLETED.equals(job.getState())) {
+			countCompleted++;
+			Double duration = job.getStageDurations().get(JobMetrics.SHARPNESS);
+			if (duration != null) {
+				totalSlices += job.getSlices();
+				totalSharpnessTime += duration;
+			}
+		}
+		else if (JobMetrics.CANCELLED.equals(job.getState())) {
+			countCancelled++;
+		}
+		else {
+			countFailed++;
+		}
+	}
+
+	public synchronized int getQueueDepth() {
+		return queued.size();
+	}
+
+	public synchronized int getRunningJobCount() {
+		return running.size();
+	}
+
+	public synchronized long getCompletedJobCount() {
+		return countCompleted;
+	}
+
+	public synchronized long getFailedJobCount() {
+		return countFailed;
+	}
+
+	public synchronized long getCancelledJobCount() {
+		return countCancelled;
+	}
+
+	public synchronized long getTotalSlices() {
+		return totalSlices;
+	}
+
+	public synchronized double getAverageSlicesPerSecond() {
+		return (totalSharpnessTime > 0.0 ? totalSlices * 1000.0 / totalSharpnessTime : 0.0);
+	}
+
+	/**
+	 * Hits of the DiskCache, the cache statistics are 0 if it is disabled.
+	 */
+	public long getCacheHitCount() {
+		return DiskCache.getInstance().getHitCount();
+	}
+
+	public long getCacheMissCount() {
+		return DiskCache.getInstance().getMissCount();
+	}
+
+	public long getCacheEvictionCount() {
+		return DiskCache.getInstance().getEvictionCount();
+	}
+
+	public long getCacheSizeBytes() {
+		return DiskCache.getInstance().getSize();
+	}
+
+	public synchronized List<JobMetrics> getQueuedJobs() {
+		return new ArrayList<JobMetrics>(queued);
+	}
+
+	public synchronized List<JobMetrics> getRunningJobs() {
+		return new ArrayList<JobMetrics>(running);
+	}
+
+	public synchronized List<JobMetrics> getCompletedJobs() {
+		return new ArrayList<JobMetrics>(completed);
+	}
+
+	public synchronized void clearHistory() {
+		completed.clear();
+	}
+}
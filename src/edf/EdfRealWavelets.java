@@ -45,7 +45,9 @@ package edf;
 
 import imageware.Builder;
 import imageware.ImageWare;
+import imageware.OffHeapStack;
 import wavelets.ImageAccess;
+import wavelets.MaximumModulus;
 import wavelets.WaveSpline;
 
 public class EdfRealWavelets extends EdfWaveletMaximumModulus {
@@ -81,66 +83,92 @@ public class EdfRealWavelets extends EdfWaveletMaximumModulus {
 		int nx = imageStack.getSizeX();
 		int ny = imageStack.getSizeY();
 		int nz = imageStack.getSizeZ();
-		double newval, oldval;
-		int i, j, k;
-		double[][] buf = new double[nx][ny];
-		ImageAccess slice;
-		ImageAccess coefftemp = null;
+		double newval;
+		int i, k;
+		ImageAccess coefftemp = new ImageAccess(nx, ny);
 		ImageWare res = Builder.create(nx, ny, 1, ImageWare.FLOAT);
 		ImageWare temp = Builder.create(nx, ny, 1, ImageWare.FLOAT);
 		ImageWare heightMap = Builder.create(nx, ny, 1, ImageWare.SHORT);
 		ImageWare coeffStack = null;
+		OffHeapStack coeffOffHeap = null;
 
 		double tempval;
 
 		if (this.sbConsistencyCheck || this.majConsistencyCheck) {
-			coeffStack = Builder.create(nx, ny, nz, ImageWare.FLOAT);
+			if (isOffHeap()) coeffOffHeap = createOffHeap(nx, ny, nz, ImageWare.FLOAT);
+			else coeffStack = Builder.create(nx, ny, nz, ImageWare.FLOAT);
+		}
+		resetRetained();
+		retain("Slice transform", 8L * nx * ny);
+		retain("Maximum modulus", temp);
+		retain("Height-map", heightMap);
+		retain("Fused coefficients", res);
+		retain("Coefficient stack", coeffStack);
+		if (coeffOffHeap != null) retain("Coefficient stack (off-heap)", coeffOffHeap.getSizeInBytes());
+		float[] maximum = temp.getSliceFloat(0);
+		short[] height = heightMap.getSliceShort(0);
+		float[] fused = res.getSliceFloat(0);
+		MaximumModulus selection = null;
+		if (coeffStack == null && coeffOffHeap == null && nScales > 0) {
+			selection = new MaximumModulus(maximum, height, fused);
 		}
 
 		for (k = 0; k < nz; k++) {
 			log.setProgessLength(15 + k * (65 / nz));
-			imageStack.getXY(0, 0, k, buf);
-			slice = new ImageAccess(buf);
-			coefftemp = WaveSpline.analysis(slice, order, nScales);
-			for (i = 0; i < nx; i++) {
-				for (j = 0; j < ny; j++) {
-					tempval = coefftemp.getPixel(i, j);
-					newval = abs(tempval);
-					oldval = temp.getPixel(i, j, 0);
-					if (oldval < newval) {
-						temp.putPixel(i, j, 0, newval);
-						heightMap.putPixel(i, j, 0, k);
-						res.putPixel(i, j, 0, tempval);
-					}
+			checkpoint("Sharpness estimation", k, nz);
+			EdfEvents event = EdfEvents.slice("Real wavelets", nx, ny, k + 1, nz);
+			ImageViews.get(imageStack, k, coefftemp.getPixels());
+			if (selection != null) {
+				// The coefficients are selected by the last pass of each level
+				selection.setLabel(k);
+				WaveSpline.analysis(coefftemp, coefftemp, order, nScales, selection, token);
+				EdfEvents.end(event);
+				continue;
+			}
+			WaveSpline.analysis(coefftemp, coefftemp, order, nScales, token);
+			double[] coeff = coefftemp.getPixels();
+			for (i = 0; i < nx * ny; i++) {
+				tempval = coeff[i];
+				newval = abs(tempval);
+				if (maximum[i] < newval) {
+					maximum[i] = (float) newval;
+					height[i] = (short) k;
+					fused[i] = (float) tempval;
 				}
 			}
 			if (coeffStack != null) {
-				coeffStack.putXY(0, 0, k, coefftemp.getArrayPixels());
+				ImageViews.put(coeff, coeffStack, k);
 			}
+			if (coeffOffHeap != null) {
+				coeffOffHeap.putXY(k, coeff);
+			}
+			EdfEvents.end(event);
 		}
 
 		if (this.sbConsistencyCheck) {
-			this.subBandConsistencyCheck(heightMap, res);
+			subBandConsistencyCheck(heightMap, res, null, nScales);
 		}
 
 		if (this.majConsistencyCheck) {
-			majorityConsistencyCheck(heightMap, majWindowSize, nz);
+			majorityConsistencyCheck(heightMap, majWindowSize, nz, nScales);
 		}
 
-		if (this.sbConsistencyCheck || this.majConsistencyCheck) {
+		if (coeffStack != null) {
 			updateMergedCoeff(coeffStack, heightMap, res);
 		}
+		if (coeffOffHeap != null) {
+			updateMergedCoeff(coeffOffHeap, heightMap, res);
+			releaseOffHeap();
+			release("Coefficient stack (off-heap)");
+		}
 
 		if (doDenoising) {
 			Tools.waveletDenoising(res, denoisingRate);
 		}
 
-		double[][] iabuf = new double[nx][ny];
-		res.getXY(0, 0, 0, iabuf);
-		coefftemp.putArrayPixels(iabuf);
-
-		coefftemp = WaveSpline.synthesis(coefftemp, order, nScales);
-		res.putXY(0, 0, 0, coefftemp.getArrayPixels());
+		ImageViews.get(res, 0, coefftemp.getPixels());
+		WaveSpline.synthesis(coefftemp, coefftemp, order, nScales, token);
+		ImageViews.put(coefftemp.getPixels(), res, 0);
 
 		return new ImageWare[] { res, heightMap };
 
@@ -157,72 +185,13 @@ public class EdfRealWavelets extends EdfWaveletMaximumModulus {
 		}
 	}
 
-	private void subBandConsistencyCheck(ImageWare map, ImageWare coeff) {
-
-		int i, j, k, mx, my, x, y;
-		int a, b, c;
-		double va, vb, vc;
-
-		int nx = coeff.getHeight();
-		int ny = coeff.getWidth();
-
-		for (i = 0; i < 3; i++) {
-
-			j = 1;
-			for (k = 0; k < i; k++)
-				j *= 2;
-
-			mx = nx / j;
-			my = ny / j;
-
-			for (x = mx / 2; x < mx; x++) {
-				for (y = 0; y < my / 2; y++) {
-
-					a = (int) map.getPixel(x, y, 0);
-					b = (int) map.getPixel(x, y + my / 2, 0);
-					c = (int) map.getPixel(x - mx / 2, y + my / 2, 0);
-
-					if (a == b) {
-						if (a == c) {
-							continue;
-						}
-						else {
-							map.putPixel(x - mx / 2, y + my / 2, 0, a);
-						}
-					}
-					else {
-						if (a == c) {
-							map.putPixel(x, y + my / 2, 0, a);
-						}
-						else {
-							if (b == c) {
-								map.putPixel(x, y, 0, b);
-							}
-							else {
-								va = abs(coeff.getPixel(x, y, 0));
-								vb = abs(coeff.getPixel(x, y + my / 2, 0));
-								vc = abs(coeff.getPixel(x - mx / 2, y + my / 2, 0));
-
-								if (va > vb && va > vc) {
-									map.putPixel(x - mx / 2, y + my / 2, 0, a);
-									map.putPixel(x, y + my / 2, 0, a);
-								}
-								else {
-									if (vb > va && vb > vc) {
-										map.putPixel(x - mx / 2, y + my / 2, 0, b);
-										map.putPixel(x, y, 0, b);
-									}
-									else {
-										if (vc > va && vc > vb) {
-											map.putPixel(x, y + my / 2, 0, c);
-											map.putPixel(x, y, 0, c);
-										}
-									}
-								}
-							}
-						}
-					}
-				}
+	private void updateMergedCoeff(OffHeapStack coeffStack, ImageWare map, ImageWare coeff) {
+		int nx = coeffStack.getSizeX();
+		int ny = coeffStack.getSizeY();
+		int i, j;
+		for (i = 0; i < nx; i++) {
+			for (j = 0; j < ny; j++) {
+				coeff.putPixel(i, j, 0, coeffStack.getPixel(i, j, (int) map.getPixel(i, j, 0)));
 			}
 		}
 	}
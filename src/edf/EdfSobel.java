@@ -52,12 +52,13 @@ public class EdfSobel extends AbstractEdfAlgorithm {
 	}
 
 	public ImageWare[] process(ImageWare imageStack) {
+		if (isInteger(imageStack)) return processInteger(imageStack);
 		LogSingleton log = LogSingleton.getInstance();
 		int nx = imageStack.getSizeX();
 		int ny = imageStack.getSizeY();
 		int nz = imageStack.getSizeZ();
-		int i, j, k;
-		float newval, oldval;
+		int k;
+		Kernels kernels = Kernels.getInstance();
 		ImageWare topology, res;
 		ImageWare slice, temp, sharpness;
 		slice = Builder.create(nx, ny, 1, ImageWare.FLOAT);
@@ -67,27 +68,89 @@ public class EdfSobel extends AbstractEdfAlgorithm {
 		topology.add(1);
 		imageStack.getXY(0, 0, 0, slice);
 		res = slice.duplicate();
+		resetRetained();
+		retain("Slice", slice);
+		retain("Sharpness", 3 * sizeOf(slice));
+		retain("Maximum sharpness", temp);
+		retain("Height-map", topology);
+		retain("Fused image", res);
 
 		for (k = 0; k < nz; k++) {
 			log.setProgessLength(15 + k * (65 / nz));
+			checkpoint("Sharpness estimation", k, nz);
+			if (!isSearched(k + 1)) continue;
+			EdfEvents event = EdfEvents.slice("Sobel", nx, ny, k + 1, nz);
 
 			imageStack.getXY(0, 0, k, slice);
 			sharpness = Sobel.compute(slice);
-			for (i = 0; i < nx; i++) {
-				for (j = 0; j < ny; j++) {
-					newval = (float) sharpness.getPixel(i, j, 0);
-					oldval = (float) temp.getPixel(i, j, 0);
-					if (oldval < newval) {
-						temp.putPixel(i, j, 0, newval);
-						topology.putPixel(i, j, 0, k + 1);
-						res.putPixel(i, j, 0, slice.getPixel(i, j, 0));
-					}
-				}
-			}
-			System.gc();
+			restrictToSearchRange(sharpness.getSliceFloat(0), k + 1);
+			kernels.argmax(sharpness.getSliceFloat(0), slice.getSliceFloat(0), k + 1, temp.getSliceFloat(0),
+					topology.getSliceFloat(0), res.getSliceFloat(0));
+			EdfEvents.end(event);
 		}
 
 		return new ImageWare[] { res, topology };
 
 	}
+
+	/**
+	 * Return true for the 8-bit stacks and for the 16-bit stacks whose
+	 * searched slices have pixels of at most Sobel.INT_MAX_VALUE.
+	 */
+	private boolean isInteger(ImageWare imageStack) {
+		if (imageStack.getType() == ImageWare.BYTE) return true;
+		if (imageStack.getType() != ImageWare.SHORT) return false;
+		for (int k = 0; k < imageStack.getSizeZ(); k++) {
+			if (!isSearched(k + 1)) continue;
+			short[] pixels = imageStack.getSliceShort(k);
+			for (int i = 0; i < pixels.length; i++)
+				if ((pixels[i] & 0xFFFF) > Sobel.INT_MAX_VALUE) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sobel on the integer pixels read from the buffers of the stack, the
+	 * measure is the squared magnitude of the gradient. The measure is exact:
+	 * where the float path rounds the magnitudes of two slices to the same
+	 * value and keeps the first one, it selects the sharper one, so that the
+	 * height-map can differ from the float path at these ties.
+	 */
+	private ImageWare[] processInteger(ImageWare imageStack) {
+		LogSingleton log = LogSingleton.getInstance();
+		int nx = imageStack.getSizeX();
+		int ny = imageStack.getSizeY();
+		int nz = imageStack.getSizeZ();
+		int n = nx * ny;
+		Kernels kernels = Kernels.getInstance();
+		ImageWare res = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		ImageWare topology = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		topology.add(1);
+		int[] pixels = new int[n];
+		int[] sharpness = new int[n];
+		int[] best = new int[n];
+		float[] fused = res.getSliceFloat(0);
+		getSliceInt(imageStack, 0, pixels);
+		for (int i = 0; i < n; i++)
+			fused[i] = pixels[i];
+		resetRetained();
+		retain("Slice", 4L * n);
+		retain("Sharpness", 2 * 4L * n);
+		retain("Maximum sharpness", 4L * n);
+		retain("Height-map", topology);
+		retain("Fused image", res);
+
+		for (int k = 0; k < nz; k++) {
+			log.setProgessLength(15 + k * (65 / nz));
+			checkpoint("Sharpness estimation", k, nz);
+			if (!isSearched(k + 1)) continue;
+			EdfEvents event = EdfEvents.slice("Sobel", nx, ny, k + 1, nz);
+			getSliceInt(imageStack, k, pixels);
+			Sobel.computeSquared(pixels, nx, ny, sharpness);
+			restrictToSearchRange(sharpness, k + 1);
+			kernels.argmax(sharpness, pixels, k + 1, best, topology.getSliceFloat(0), fused);
+			EdfEvents.end(event);
+		}
+		return new ImageWare[] { res, topology };
+	}
 }
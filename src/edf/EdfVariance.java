@@ -55,6 +55,8 @@ public class EdfVariance extends AbstractEdfAlgorithm {
 	}
 
 	public ImageWare[] process(ImageWare imageStack) {
+		if (imageStack.getType() == ImageWare.BYTE || imageStack.getType() == ImageWare.SHORT)
+			return processInteger(imageStack);
 		LogSingleton log = LogSingleton.getInstance();
 		int nx = imageStack.getSizeX();
 		int ny = imageStack.getSizeY();
@@ -66,22 +68,65 @@ public class EdfVariance extends AbstractEdfAlgorithm {
 		topology.add(1);
 		imageStack.getXY(0, 0, 0, slice);
 		ImageWare res = slice.duplicate();
-		float newval, oldval;
+		resetRetained();
+		retain("Slice", slice);
+		retain("Sharpness", sharpness);
+		retain("Maximum sharpness", temp);
+		retain("Height-map", topology);
+		retain("Fused image", res);
+		Kernels kernels = Kernels.getInstance();
 		for (int k = 0; k < nz; k++) {
 			log.setProgessLength(15 + k * (65 / nz));
+			checkpoint("Sharpness estimation", k, nz);
+			if (!isSearched(k + 1)) continue;
+			EdfEvents event = EdfEvents.slice("Variance", nx, ny, k + 1, nz);
 			imageStack.getXY(0, 0, k, slice);
 			sharpness = Variance.compute(slice, windowSize);
-			for (int i = 0; i < nx; i++)
-				for (int j = 0; j < ny; j++) {
-					newval = (float) sharpness.getPixel(i, j, 0);
-					oldval = (float) temp.getPixel(i, j, 0);
-					if (oldval < newval) {
-						temp.putPixel(i, j, 0, newval);
-						topology.putPixel(i, j, 0, k + 1);
-						res.putPixel(i, j, 0, slice.getPixel(i, j, 0));
-					}
-				}
-			System.gc();
+			restrictToSearchRange(sharpness.getSliceFloat(0), k + 1);
+			kernels.argmax(sharpness.getSliceFloat(0), slice.getSliceFloat(0), k + 1, temp.getSliceFloat(0),
+					topology.getSliceFloat(0), res.getSliceFloat(0));
+			EdfEvents.end(event);
+		}
+		return new ImageWare[] { res, topology };
+	}
+
+	/**
+	 * Variance on the integer pixels read from the buffers of a BYTE or SHORT
+	 * stack, the measure is the scaled variance of Variance.computeScaled().
+	 */
+	private ImageWare[] processInteger(ImageWare imageStack) {
+		LogSingleton log = LogSingleton.getInstance();
+		int nx = imageStack.getSizeX();
+		int ny = imageStack.getSizeY();
+		int nz = imageStack.getSizeZ();
+		int n = nx * ny;
+		Kernels kernels = Kernels.getInstance();
+		ImageWare res = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		ImageWare topology = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		topology.add(1);
+		int[] pixels = new int[n];
+		long[] sharpness = new long[n];
+		long[] best = new long[n];
+		float[] fused = res.getSliceFloat(0);
+		getSliceInt(imageStack, 0, pixels);
+		for (int i = 0; i < n; i++)
+			fused[i] = pixels[i];
+		resetRetained();
+		retain("Slice", 4L * n);
+		retain("Sharpness", 8L * n);
+		retain("Maximum sharpness", 8L * n);
+		retain("Height-map", topology);
+		retain("Fused image", res);
+		for (int k = 0; k < nz; k++) {
+			log.setProgessLength(15 + k * (65 / nz));
+			checkpoint("Sharpness estimation", k, nz);
+			if (!isSearched(k + 1)) continue;
+			EdfEvents event = EdfEvents.slice("Variance", nx, ny, k + 1, nz);
+			getSliceInt(imageStack, k, pixels);
+			Variance.computeScaled(pixels, nx, ny, windowSize, sharpness);
+			restrictToSearchRange(sharpness, k + 1);
+			kernels.argmax(sharpness, pixels, k + 1, best, topology.getSliceFloat(0), fused);
+			EdfEvents.end(event);
 		}
 		return new ImageWare[] { res, topology };
 	}
@@ -43,85 +43,206 @@
 
 package edf;
 
-import imageware.Builder;
 import imageware.ImageWare;
+import imageware.NeighborhoodIterator;
+import imageware.PaddedView;
+import wavelets.WaveletWorkspace;
 
 public abstract class EdfWaveletMaximumModulus extends AbstractEdfAlgorithm {
 
 	abstract public ImageWare[] process(ImageWare imageStack);
 
-	protected void majorityConsistencyCheck(ImageWare map, int windowSize, int nz) {
-		this.majCCSubBand(map, windowSize, nz, 0);
-		this.majCCSubBand(map, windowSize, nz, 1);
-		this.majCCSubBand(map, windowSize, nz, 2);
+	/**
+	 * Process the stack and release the wavelet workspace of the thread, its
+	 * temporary images are not kept between the jobs, unless the thread keeps
+	 * it (WaveletWorkspace.keep()).
+	 */
+	public ImageWare[] process(ImageWare imageStack, CancellationToken token) {
+		try {
+			return super.process(imageStack, token);
+		}
+		finally {
+			WaveletWorkspace.release();
+		}
 	}
 
-	protected void majCCSubBand(ImageWare map, int windowSize, int nz, int subBand) {
-		ImageWare scale = null;
-		int i, j, k, mx, my, x, y, startx, starty;
-		int nx = map.getHeight();
-		int ny = map.getWidth();
-		short[][] arr = new short[windowSize][windowSize];
-		int p, l;
-		int size = windowSize * windowSize;
-		short[] buf = new short[size];
-		int count[] = new int[nz];
-		int out = 0;
-
-		for (i = 0; i < 3; i++) {
-			j = 1;
-			for (k = 0; k < i; k++)
-				j *= 2;
-
-			mx = nx / j / 2;
-			my = ny / j / 2;
-
-			switch (subBand) {
-			case 0:
-				startx = 0;
-				starty = my;
-				break;
-			case 1:
-				startx = mx;
-				starty = 0;
-				break;
-			case 2:
-				startx = mx;
-				starty = my;
-				break;
-			default:
-				throw new RuntimeException("Invalid SubBand");
+	/**
+	 * Sub-band consistency check of the nScales levels of the height-map: the
+	 * three coefficients at the same position of the detail subbands of a
+	 * level take the label of at least two of them, or the label of the
+	 * largest modulus if the three labels differ. The triples are disjoint, the
+	 * rows of all the levels are checked in parallel.
+	 *
+	 * @param map     height-map, SHORT
+	 * @param coeffRe fused coefficients, FLOAT, real part
+	 * @param coeffIm imaginary part, null for the real wavelets
+	 */
+	protected void subBandConsistencyCheck(ImageWare map, ImageWare coeffRe, ImageWare coeffIm, int nScales) {
+		final int nx = map.getWidth();
+		final int ny = map.getHeight();
+		final short[] labels = map.getSliceShort(0);
+		final float[] re = coeffRe.getSliceFloat(0);
+		final float[] im = (coeffIm == null ? null : coeffIm.getSliceFloat(0));
+
+		// Rows of the upper-right subband of each level, from the finest
+		final int[] first = new int[nScales + 1];
+		for (int i = 0; i < nScales; i++)
+			first[i + 1] = first[i] + (ny >> i) / 2;
+
+		checkpoint("Sub-band consistency", 0, nScales);
+		Parallel.forRange(first[nScales], 16, new Parallel.Range() {
+			public void run(int begin, int end) {
+				int level = 0;
+				for (int row = begin; row < end; row++) {
+					while (row >= first[level + 1])
+						level++;
+					int mx = nx >> level;
+					int my = ny >> level;
+					int y = row - first[level];
+					for (int x = mx / 2; x < mx; x++)
+						checkTriple(labels, re, im, x + y * nx, x + (y + my / 2) * nx, x - mx / 2 + (y + my / 2) * nx);
+				}
 			}
+		});
+		checkpoint("Sub-band consistency", nScales, nScales);
+	}
 
-			short[][] arrtemp = new short[mx][my];
+	/**
+	 * Consistency of the labels at the positions pa, pb and pc of the three
+	 * detail subbands.
+	 */
+	private static void checkTriple(short[] labels, float[] re, float[] im, int pa, int pb, int pc) {
+		short a = labels[pa];
+		short b = labels[pb];
+		short c = labels[pc];
+		if (a == b) {
+			if (a != c) labels[pc] = a;
+		}
+		else if (a == c) {
+			labels[pb] = a;
+		}
+		else if (b == c) {
+			labels[pa] = b;
+		}
+		else {
+			double va = modulus(re, im, pa);
+			double vb = modulus(re, im, pb);
+			double vc = modulus(re, im, pc);
+			if (va > vb && va > vc) {
+				labels[pc] = a;
+				labels[pb] = a;
+			}
+			else if (vb > va && vb > vc) {
+				labels[pc] = b;
+				labels[pa] = b;
+			}
+			else if (vc > va && vc > vb) {
+				labels[pb] = c;
+				labels[pa] = c;
+			}
+		}
+	}
 
-			map.getBoundedXY(startx, starty, 0, arrtemp);
-			scale = Builder.create(arrtemp);
+	/**
+	 * Modulus of a coefficient, squared for the complex coefficients.
+	 */
+	private static double modulus(float[] re, float[] im, int index) {
+		double r = re[index];
+		if (im == null) return (r < 0 ? -r : r);
+		double i = im[index];
+		return r * r + i * i;
+	}
 
-			for (x = 0; x < mx; x++) {
-				for (y = 0; y < my; y++) {
-					scale.getNeighborhoodXY(x, y, 0, arr, ImageWare.MIRROR);
-					for (p = 0; p < windowSize; p++) {
-						System.arraycopy(arr[p], 0, buf, p * windowSize, windowSize);
-					}
-					out = (int) buf[size / 2];
-					for (l = 0; l < nz; l++) {
-						count[l] = 0;
-					}
-					for (p = 0; p < size; p++) {
-						for (l = 0; l < nz; l++) {
-							if (buf[p] == l) count[l]++;
-						}
-					}
-					for (l = 0; l < nz; l++) {
-						if (count[l] > size / 2) {
-							out = l;
-						}
+	/**
+	 * Majority filter of the labels on a window of windowSize x windowSize,
+	 * with mirror boundaries, in each detail subband of the nScales levels of
+	 * the height-map. A label replaces the label of the center if it is the
+	 * label of more than half of the window. The subbands are copied in padded
+	 * views, then filtered in parallel by blocks of rows.
+	 */
+	protected void majorityConsistencyCheck(final ImageWare map, final int windowSize, final int nz, int nScales) {
+		final int nx = map.getWidth();
+		final int ny = map.getHeight();
+		final short[] labels = map.getSliceShort(0);
+		final int subBands = 3 * nScales;
+
+		// Rows of the three subbands of each level, from the finest
+		final int[] first = new int[subBands + 1];
+		for (int i = 0; i < subBands; i++)
+			first[i + 1] = first[i] + (ny >> (i / 3)) / 2;
+
+		checkpoint("Majority consistency", 0, nScales);
+		final PaddedView[] views = new PaddedView[subBands];
+		Parallel.forRange(subBands, 1, new Parallel.Range() {
+			public void run(int begin, int end) {
+				for (int i = begin; i < end; i++) {
+					int mx = (nx >> (i / 3)) / 2;
+					int my = (ny >> (i / 3)) / 2;
+					if (mx > 0 && my > 0)
+						views[i] = new PaddedView(map, (i % 3 == 0 ? 0 : mx), (i % 3 == 1 ? 0 : my), 0, mx, my,
+								windowSize, windowSize, ImageWare.MIRROR);
+				}
+			}
+		});
+		Parallel.forRange(first[subBands], 16, new Parallel.Range() {
+			public void run(int begin, int end) {
+				int[] count = new int[nz];
+				int subBand = -1;
+				NeighborhoodIterator window = null;
+				for (int row = begin; row < end; row++) {
+					while (row >= first[subBand + 1]) {
+						subBand++;
+						window = null;
 					}
-					arrtemp[x][y] = (short) out;
+					if (views[subBand] == null) continue;
+					if (window == null) window = views[subBand].iterator();
+					int mx = (nx >> (subBand / 3)) / 2;
+					int my = (ny >> (subBand / 3)) / 2;
+					int y = row - first[subBand];
+					int start = (subBand % 3 == 0 ? 0 : mx) + (y + (subBand % 3 == 1 ? 0 : my)) * nx;
+					window.setRow(y);
+					majorityRow(window, windowSize, mx, count, labels, start);
 				}
 			}
-			map.putBoundedXY(startx, starty, 0, arrtemp);
+		});
+		checkpoint("Majority consistency", nScales, nScales);
+	}
+
+	/**
+	 * Majority filter along a row of mx pixels, with a histogram of the labels
+	 * of the window updated by the columns which leave and enter the window.
+	 * The labels of the row are written from labels[start]; the histogram is
+	 * left empty.
+	 */
+	private static void majorityRow(NeighborhoodIterator window, int windowSize, int mx, int[] count, short[] labels,
+			int start) {
+		int half = windowSize * windowSize / 2;
+		int nz = count.length;
+		int majority = -1;
+		for (int i = 0; i < windowSize; i++)
+			for (int j = 0; j < windowSize; j++) {
+				int l = (int) window.get(i, j);
+				if (l >= 0 && l < nz && ++count[l] > half) majority = l;
+			}
+		for (; window.hasNext(); window.next()) {
+			int x = window.getX();
+			labels[start + x] = (short) (majority >= 0 ? majority : (int) window.getCenter());
+			if (x == mx - 1) {
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++) {
+						int l = (int) window.get(i, j);
+						if (l >= 0 && l < nz) count[l] = 0;
+					}
+				continue;
+			}
+			for (int j = 0; j < windowSize; j++) {
+				int l = (int) window.getLeaving(j);
+				if (l >= 0 && l < nz && --count[l] <= half && majority == l) majority = -1;
+			}
+			for (int j = 0; j < windowSize; j++) {
+				int l = (int) window.getEntering(j);
+				if (l >= 0 && l < nz && ++count[l] > half) majority = l;
+			}
 		}
 	}
 
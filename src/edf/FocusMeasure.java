@@ -0,0 +1,72 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+/**
+ * Focus measure of a slice, plugged into the EdfFocusMeasure engine which
+ * keeps, for each pixel, the slice of maximum measure.
+ *
+ * The implementations are loaded by ServiceLoader: they need a public
+ * constructor without argument and they are listed in the file
+ * META-INF/services/edf.FocusMeasure of their jar.
+ */
+public interface FocusMeasure {
+
+	/**
+	 * Name of the measure, shown in the dialog and stored in the parameters.
+	 */
+	public String getName();
+
+	/**
+	 * Compute the focus measure of one slice, a higher value means a sharper
+	 * pixel.
+	 * 
+	 * @param slice      pixels of the slice, row by row, size nx*ny
+	 * @param nx         width of the slice
+	 * @param ny         height of the slice
+	 * @param windowSize size of the neighborhood on which the measure is
+	 *                   accumulated
+	 * @param measure    output, row by row, size nx*ny
+	 */
+	public void compute(float[] slice, int nx, int ny, int windowSize, float[] measure);
+}
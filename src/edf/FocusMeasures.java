@@ -0,0 +1,138 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the focus measures available through ServiceLoader, and tools
+ * shared by the measures.
+ */
+public class FocusMeasures {
+
+	private static List<FocusMeasure> measures = null;
+
+	/**
+	 * Focus measures found on the class path, in the order of the service
+	 * files.
+	 */
+	public static synchronized List<FocusMeasure> getMeasures() {
+		if (measures == null) {
+			measures = new ArrayList<FocusMeasure>();
+			ServiceLoader<FocusMeasure> loader = ServiceLoader.load(FocusMeasure.class,
+					FocusMeasures.class.getClassLoader());
+			for (FocusMeasure measure : loader)
+				measures.add(measure);
+		}
+		return new ArrayList<FocusMeasure>(measures);
+	}
+
+	public static String[] getNames() {
+		List<FocusMeasure> list = getMeasures();
+		String[] names = new String[list.size()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = list.get(i).getName();
+		return names;
+	}
+
+	/**
+	 * Return the measure of this name, null if it is not available.
+	 */
+	public static FocusMeasure get(String name) {
+		for (FocusMeasure measure : getMeasures())
+			if (measure.getName().equalsIgnoreCase(name)) return measure;
+		return null;
+	}
+
+	/**
+	 * Sum of the values on a square window centered on each pixel, computed
+	 * with running sums in the two directions. The pixels outside the image are
+	 * replaced by the nearest border pixel. The input and the output can be the
+	 * same array.
+	 */
+	public static void boxSum(float[] in, int nx, int ny, int windowSize, float[] out) {
+		int h = windowSize / 2;
+		if (h <= 0) {
+			if (in != out) System.arraycopy(in, 0, out, 0, nx * ny);
+			return;
+		}
+		float[] rows = new float[nx * ny];
+		for (int y = 0; y < ny; y++) {
+			int offset = y * nx;
+			double sum = 0.0;
+			for (int d = -h; d <= h; d++)
+				sum += in[offset + clamp(d, nx)];
+			for (int x = 0; x < nx; x++) {
+				rows[offset + x] = (float) sum;
+				sum += in[offset + clamp(x + h + 1, nx)] - in[offset + clamp(x - h, nx)];
+			}
+		}
+
+		// Running sums of the columns, updated row by row on all the columns
+		// at once.
+		double[] sum = new double[nx];
+		for (int d = -h; d <= h; d++) {
+			int offset = clamp(d, ny) * nx;
+			for (int x = 0; x < nx; x++)
+				sum[x] += rows[offset + x];
+		}
+		for (int y = 0; y < ny; y++) {
+			int offset = y * nx;
+			int add = clamp(y + h + 1, ny) * nx;
+			int sub = clamp(y - h, ny) * nx;
+			for (int x = 0; x < nx; x++) {
+				out[offset + x] = (float) sum[x];
+				sum[x] += rows[add + x] - rows[sub + x];
+			}
+		}
+	}
+
+	/**
+	 * Clamp the index in [0, n-1].
+	 */
+	public static int clamp(int i, int n) {
+		return (i < 0 ? 0 : (i >= n ? n - 1 : i));
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import imageware.ImageWare;
+
+/**
+ * Views shared between the image models: the slices of an ImageWare are read
+ * and written through their arrays (getSliceByte(), getSliceFloat(), ...),
+ * both models store the pixels row by row. The wavelet transforms work on an
+ * ImageAccess wrapping a double array and the results are given to ImageJ as
+ * processors on the arrays of the ImageWare, without copy.
+ */
+public class ImageViews {
+
+	/**
+	 * Copy the slice z of a stack into a double array, unsigned for the BYTE
+	 * and SHORT types.
+	 */
+	public static void get(ImageWare stack, int z, double[] out) {
+		int n = stack.getSizeX() * stack.getSizeY();
+		switch (stack.getType()) {
+		case ImageWare.BYTE:
+			byte[] b = stack.getSliceByte(z);
+			for (int i = 0; i < n; i++)
+				out[i] = b[i] & 0xFF;
+			break;
+		case ImageWare.SHORT:
+			short[] s = stack.getSliceShort(z);
+			for (int i = 0; i < n; i++)
+				out[i] = s[i] & 0xFFFF;
+			break;
+		case ImageWare.FLOAT:
+			float[] f = stack.getSliceFloat(z);
+			for (int i = 0; i < n; i++)
+				out[i] = f[i];
+			break;
+		default:
+			System.arraycopy(stack.getSliceDouble(z), 0, out, 0, n);
+		}
+	}
+
+	/**
+	 * Copy a double array into the slice z of a FLOAT or DOUBLE image.
+	 */
+	public static void put(double[] in, ImageWare image, int z) {
+		int n = image.getSizeX() * image.getSizeY();
+		switch (image.getType()) {
+		case ImageWare.FLOAT:
+			float[] f = image.getSliceFloat(z);
+			for (int i = 0; i < n; i++)
+				f[i] = (float) in[i];
+			break;
+		case ImageWare.DOUBLE:
+			System.arraycopy(in, 0, image.getSliceDouble(z), 0, n);
+			break;
+		default:
+			throw new RuntimeException("Only FLOAT and DOUBLE images are written from a double array.");
+		}
+	}
+
+	/**
+	 * Processor on the slice z of an image, the pixels are shared. A DOUBLE
+	 * image is converted to float.
+	 */
+	public static ImageProcessor getProcessor(ImageWare image, int z) {
+		int nx = image.getSizeX();
+		int ny = image.getSizeY();
+		switch (image.getType()) {
+		case ImageWare.BYTE:
+			return new ByteProcessor(nx, ny, image.getSliceByte(z), null);
+		case ImageWare.SHORT:
+			return new ShortProcessor(nx, ny, image.getSliceShort(z), null);
+		case ImageWare.FLOAT:
+			return new FloatProcessor(nx, ny, image.getSliceFloat(z), null);
+		default:
+			double[] d = image.getSliceDouble(z);
+			float[] f = new float[nx * ny];
+			for (int i = 0; i < f.length; i++)
+				f[i] = (float) d[i];
+			return new FloatProcessor(nx, ny, f, null);
+		}
+	}
+
+	/**
+	 * Stack of processors on the slices of an image, as buildImageStack()
+	 * without copy of the pixels.
+	 */
+	public static ImageStack getStack(ImageWare image) {
+		ImageStack stack = new ImageStack(image.getSizeX(), image.getSizeY());
+		for (int z = 0; z < image.getSizeZ(); z++)
+			stack.addSlice("" + z, getProcessor(image, z));
+		return stack;
+	}
+}
@@ -0,0 +1,363 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import imageware.Parallelism;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one EDF job: state, duration of the stages, throughput and
+ * memory. The jobs are registered in the EdfMonitor which exposes them through
+ * JMX. The allocated bytes are those of the job thread and of the threads of
+ * Parallelism which run its parallel loops.
+ */
+public class JobMetrics {
+
+	public static final String QUEUED = "queued";
+	public static final String RUNNING = "running";
+	public static final String COMPLETED = "completed";
+	public static final String FAILED = "failed";
+	public static final String CANCELLED = "cancelled";
+
+	public static final String COLOR_CONVERSION = "Color conversion";
+	public static final String EXTEND = "Extend";
+	public static final String SHARPNESS = "Sharpness estimation";
+	public static final String CROP = "Crop";
+	public static final String REASSIGNMENT = "Reassignment";
+	public static final String DENOISING = "Denoising";
+	public static final String TOPOLOGY = "Topology post-processing";
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+	private long id;
+	private String name;
+	private String state = QUEUED;
+	private String error = "";
+	private long submitTime;
+	private long startTime;
+	private long endTime;
+
+	private long threadId = -1;
+	private AtomicLong helperAllocations = null;
+	private long allocatedStart = -1;
+	private long bytesAllocated = -1;
+	private long peakHeap = 0;
+	private int slices = 0;
+
+	private String method = "";
+	private int nx;
+	private int ny;
+	private int nz;
+
+	private String currentStage = "";
+	private long stageStart;
+	private long stageAllocatedStart = -1;
+	private EdfEvents stageEvent;
+	private LinkedHashMap<String, Double> stageDurations = new LinkedHashMap<String, Double>();
+	private LinkedHashMap<String, Long> stageAllocations = new LinkedHashMap<String, Long>();
+
+	private long peakRetained = 0;
+	private LinkedHashMap<String, Long> retainedBuffers = new LinkedHashMap<String, Long>();
+
+	JobMetrics(long id, String name) {
+		this.id = id;
+		this.name = name;
+		this.submitTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Start the job in the current thread, nothing is done if the job is already
+	 * started.
+	 */
+	public synchronized void start() {
+		if (!QUEUED.equals(state)) return;
+		state = RUNNING;
+		startTime = System.currentTimeMillis();
+		threadId = Thread.currentThread().getId();
+		helperAllocations = Parallelism.getHelperAllocations();
+		allocatedStart = getAllocatedBytes();
+		sampleHeap();
+		EdfMonitor.getInstance().started(this);
+	}
+
+	public synchronized void complete() {
+		finish(COMPLETED);
+	}
+
+	/**
+	 * End the job on an error, the job is cancelled if the error is a
+	 * CancellationException.
+	 */
+	public synchronized void fail(Throwable ex) {
+		error = ex.toString();
+		finish(ex instanceof CancellationException ? CANCELLED : FAILED);
+	}
+
+	private void finish(String finalState) {
+		if (!RUNNING.equals(state)) return;
+		if (currentStage.length() > 0) endStage();
+		state = finalState;
+		endTime = System.currentTimeMillis();
+		long allocated = getAllocatedBytes();
+		if (allocated >= 0 && allocatedStart >= 0) bytesAllocated = allocated - allocatedStart;
+		sampleHeap();
+		EdfMonitor.getInstance().finished(this);
+	}
+
+	/**
+	 * Describe the processed stack, reported in the Flight Recorder events of
+	 * the stages.
+	 */
+	public synchronized void setImage(String method, int nx, int ny, int nz) {
+		this.method = method;
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+	}
+
+	/**
+	 * Start a new stage, the current stage, if any, is ended.
+	 */
+	public synchronized void startStage(String stage) {
+		if (currentStage.length() > 0) endStage();
+		currentStage = stage;
+		stageStart = System.nanoTime();
+		stageAllocatedStart = getAllocatedBytes();
+		stageEvent = EdfEvents.stage(stage, method, nx, ny, nz);
+		sampleHeap();
+	}
+
+	public synchronized void endStage() {
+		if (currentStage.length() == 0) return;
+		EdfEvents.end(stageEvent);
+		stageEvent = null;
+		double duration = (System.nanoTime() - stageStart) * 1e-6;
+		Double previous = stageDurations.get(currentStage);
+		stageDurations.put(currentStage, (previous == null ? duration : previous + duration));
+		long allocated = getAllocatedBytes();
+		if (allocated >= 0 && stageAllocatedStart >= 0) {
+			Long bytes = stageAllocations.get(currentStage);
+			stageAllocations.put(currentStage, (bytes == null ? 0 : bytes) + allocated - stageAllocatedStart);
+		}
+		currentStage = "";
+		sampleHeap();
+	}
+
+	/**
+	 * Peak of the buffers held by the algorithm, see
+	 * AbstractEdfAlgorithm.getPeakRetainedBuffers().
+	 */
+	public synchronized void setRetainedBuffers(Map<String, Long> buffers, long peak) {
+		retainedBuffers = new LinkedHashMap<String, Long>(buffers);
+		peakRetained = peak;
+	}
+
+	public synchronized void setSlices(int slices) {
+		this.slices = slices;
+	}
+
+	/**
+	 * Keep track of the maximum heap usage observed during the job.
+	 */
+	public synchronized void sampleHeap() {
+		long used = memoryBean.getHeapMemoryUsage().getUsed();
+		if (used > peakHeap) peakHeap = used;
+	}
+
+	/**
+	 * Bytes allocated by the job thread and by the helper threads of its
+	 * parallel loops, -1 if the JVM does not measure them.
+	 */
+	private long getAllocatedBytes() {
+		long allocated = getThreadAllocatedBytes(threadId);
+		if (allocated < 0 || helperAllocations == null) return allocated;
+		return allocated + helperAllocations.get();
+	}
+
+	private static long getThreadAllocatedBytes(long threadId) {
+		if (threadId < 0) return -1;
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return -1;
+		try {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId);
+		}
+		catch (UnsupportedOperationException ex) {
+			return -1;
+		}
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized String getState() {
+		return state;
+	}
+
+	public synchronized String getError() {
+		return error;
+	}
+
+	public synchronized String getCurrentStage() {
+		return currentStage;
+	}
+
+	public long getSubmitTime() {
+		return submitTime;
+	}
+
+	public synchronized long getStartTime() {
+		return startTime;
+	}
+
+	public synchronized long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Elapsed time in ms since the start, or the total time if the job is
+	 * finished.
+	 */
+	public synchronized long getElapsedTime() {
+		if (QUEUED.equals(state)) return 0;
+		return (RUNNING.equals(state) ? System.currentTimeMillis() : endTime) - startTime;
+	}
+
+	/**
+	 * Duration in ms of the finished stages.
+	 */
+	public synchronized Map<String, Double> getStageDurations() {
+		return new LinkedHashMap<String, Double>(stageDurations);
+	}
+
+	public synchronized int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * Throughput of the sharpness estimation.
+	 */
+	public synchronized double getSlicesPerSecond() {
+		Double duration = stageDurations.get(SHARPNESS);
+		if (duration == null || duration <= 0.0) return 0.0;
+		return slices * 1000.0 / duration;
+	}
+
+	/**
+	 * Bytes allocated by the job thread and its parallel loops, -1 if the JVM
+	 * does not support it or if the job is not finished.
+	 */
+	public synchronized long getBytesAllocated() {
+		if (RUNNING.equals(state)) {
+			long allocated = getAllocatedBytes();
+			return (allocated >= 0 && allocatedStart >= 0 ? allocated - allocatedStart : -1);
+		}
+		return bytesAllocated;
+	}
+
+	public synchronized long getPeakHeap() {
+		return peakHeap;
+	}
+
+	/**
+	 * Bytes allocated by the job thread and its parallel loops during the
+	 * stages, empty if the JVM does not support the allocation counters.
+	 */
+	public synchronized Map<String, Long> getStageAllocations() {
+		return new LinkedHashMap<String, Long>(stageAllocations);
+	}
+
+	public synchronized long getPeakRetainedBytes() {
+		return peakRetained;
+	}
+
+	/**
+	 * Buffers held by the algorithm at its peak, by name, in bytes.
+	 */
+	public synchronized Map<String, Long> getRetainedBuffers() {
+		return new LinkedHashMap<String, Long>(retainedBuffers);
+	}
+
+	/**
+	 * Report of the memory: allocated bytes by stage and buffers retained by
+	 * the algorithm with their share of the peak.
+	 */
+	public synchronized String getMemoryReport() {
+		StringBuilder report = new StringBuilder();
+		report.append("Allocated by stage:");
+		if (stageAllocations.isEmpty()) report.append(" not available");
+		String separator = " ";
+		for (Map.Entry<String, Long> entry : stageAllocations.entrySet()) {
+			report.append(separator + entry.getKey() + " " + toMB(entry.getValue()));
+			separator = ", ";
+		}
+		report.append("\nPeak retained buffers: " + toMB(peakRetained));
+		separator = " (";
+		for (Map.Entry<String, Long> entry : retainedBuffers.entrySet()) {
+			int percent = (int) Math.round(100.0 * entry.getValue() / Math.max(1, peakRetained));
+			report.append(separator + entry.getKey() + " " + toMB(entry.getValue()) + " " + percent + "%");
+			separator = ", ";
+		}
+		if (!retainedBuffers.isEmpty()) report.append(")");
+		report.append("\nPeak heap: " + toMB(peakHeap));
+		return report.toString();
+	}
+
+	private static String toMB(long bytes) {
+		return new java.text.DecimalFormat("0.0 MB").format(bytes / (1024.0 * 1024.0));
+	}
+
+	public synchronized String toString() {
+		return "Job " + id + " " + name + " [" + state + "] " + stageDurations;
+	}
+}
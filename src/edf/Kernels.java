@@ -0,0 +1,358 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Inner loops of the EDF algorithms: Sobel difference filter, local variance,
+ * merge of the maximum and spline wavelet splitting.
+ *
+ * This class is the scalar implementation. At the first call of getInstance(),
+ * the vectorized implementation edf.VectorKernels (optional source folder
+ * src-vector, built on the incubator module jdk.incubator.vector) is loaded if
+ * it is present and if the JVM runs with --add-modules jdk.incubator.vector. It
+ * is used only if it gives exactly the results of the scalar implementation on
+ * a set of test arrays, otherwise the scalar code is kept. The property
+ * -Dedf.kernels=scalar disables the vectorized implementation.
+ *
+ * Only the float kernels are vectorized. The integer argmax() of the 8-bit and
+ * 16-bit stacks, like Sobel.computeSquared() and Variance.computeScaled(),
+ * always run the scalar code.
+ */
+public class Kernels {
+
+	private static Kernels instance;
+
+	protected Kernels() {
+	}
+
+	public static synchronized Kernels getInstance() {
+		if (instance == null) {
+			instance = new Kernels();
+			if (!"scalar".equalsIgnoreCase(System.getProperty("edf.kernels", ""))) {
+				try {
+					Kernels vector = (Kernels) Class.forName("edf.VectorKernels").getDeclaredConstructor().newInstance();
+					if (validate(vector, instance)) instance = vector;
+					else
+						System.err.println("EDF: " + vector.getName() + " kernels differ from the scalar kernels, not used");
+				}
+				catch (Throwable ex) {
+					// Vector API not available, keep the scalar kernels
+				}
+			}
+		}
+		return instance;
+	}
+
+	public String getName() {
+		return "Scalar";
+	}
+
+	/**
+	 * 1D Sobel difference filter, kernel [-1, 0, 1], the borders are set to 0.
+	 */
+	public void sobelDifference(float in[], float out[]) {
+		int n = in.length;
+		out[0] = 0;
+		for (int k = 1; k < n - 1; k++) {
+			out[k] = in[k + 1] - in[k - 1];
+		}
+		out[n - 1] = 0;
+	}
+
+	/**
+	 * Local variance on a square window of an image padded by mirror (see
+	 * pad()). The sums are done in the order of the columns of the window, then
+	 * of the rows.
+	 *
+	 * @param padded     padded image, row by row, width nx + windowSize - 1
+	 * @param nx         width of the image
+	 * @param ny         height of the image
+	 * @param windowSize size of the window
+	 * @param out        variance, row by row, size nx*ny
+	 */
+	public void variance(float[] padded, int nx, int ny, int windowSize, float[] out) {
+		int nxp = nx + windowSize - 1;
+		int wlen = windowSize * windowSize;
+		for (int y = 0; y < ny; y++) {
+			for (int x = 0; x < nx; x++) {
+				float ave = 0;
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++)
+						ave += padded[(y + j) * nxp + x + i];
+				ave /= wlen;
+				float var = 0;
+				for (int i = 0; i < windowSize; i++)
+					for (int j = 0; j < windowSize; j++) {
+						float temp = padded[(y + j) * nxp + x + i] - ave;
+						var += temp * temp;
+					}
+				out[y * nx + x] = var;
+			}
+		}
+	}
+
+	/**
+	 * Keep, for each pixel, the maximum of the measure, the label of the slice
+	 * and the pixel value of the slice. A pixel is updated only if the measure
+	 * is strictly greater than the current maximum.
+	 */
+	public void argmax(float[] measure, float[] pixels, float label, float[] best, float[] height, float[] fused) {
+		int n = measure.length;
+		for (int i = 0; i < n; i++) {
+			if (best[i] < measure[i]) {
+				best[i] = measure[i];
+				height[i] = label;
+				fused[i] = pixels[i];
+			}
+		}
+	}
+
+	/**
+	 * Same as argmax() for the integer measures of the 8-bit and 16-bit
+	 * stacks.
+	 */
+	public void argmax(int[] measure, int[] pixels, float label, int[] best, float[] height, float[] fused) {
+		int n = measure.length;
+		for (int i = 0; i < n; i++) {
+			if (best[i] < measure[i]) {
+				best[i] = measure[i];
+				height[i] = label;
+				fused[i] = pixels[i];
+			}
+		}
+	}
+
+	public void argmax(long[] measure, int[] pixels, float label, long[] best, float[] height, float[] fused) {
+		int n = measure.length;
+		for (int i = 0; i < n; i++) {
+			if (best[i] < measure[i]) {
+				best[i] = measure[i];
+				height[i] = label;
+				fused[i] = pixels[i];
+			}
+		}
+	}
+
+	/**
+	 * One level of the wavelet splitting with symmetric filters h and g (at
+	 * least 2 coefficients) and mirror boundary conditions. The output contains
+	 * the lowpass part then the highpass part.
+	 */
+	public void splitSymmetric(double vin[], double vout[], double h[], double g[]) {
+		int n = vin.length;
+		int n2 = n / 2;
+		int nh = h.length;
+		int ng = g.length;
+		double pix;
+		int j, k, j1, j2;
+		int period = 2 * n - 2; // period for mirror boundary conditions
+
+		for (int i = 0; i < n2; i++) {
+			j = i * 2;
+			pix = vin[j] * h[0];
+			for (k = 1; k < nh; k++) { // Low pass part
+				j1 = mirrorLow(j - k, n, period);
+				j2 = mirrorHigh(j + k, n, period);
+				pix = pix + h[k] * (vin[j1] + vin[j2]);
+			}
+			vout[i] = pix;
+
+			j = j + 1;
+			pix = vin[j] * g[0]; // High pass part
+			for (k = 1; k < ng; k++) {
+				j1 = mirrorLow(j - k, n, period);
+				j2 = mirrorHigh(j + k, n, period);
+				pix = pix + g[k] * (vin[j1] + vin[j2]);
+			}
+			vout[i + n2] = pix;
+		}
+	}
+
+	/**
+	 * Mirror condition of the left side of the splitting.
+	 */
+	protected static int mirrorLow(int j1, int n, int period) {
+		if (j1 < 0) {
+			while (j1 < 0)
+				j1 += period; // Periodize
+			if (j1 >= n) j1 = period - j1; // Symmetrize
+		}
+		return j1;
+	}
+
+	/**
+	 * Mirror condition of the right side of the splitting.
+	 */
+	protected static int mirrorHigh(int j2, int n, int period) {
+		if (j2 >= n) {
+			while (j2 >= n)
+				j2 -= period; // Periodize
+			if (j2 < 0) j2 = -j2; // Symmetrize
+		}
+		return j2;
+	}
+
+	/**
+	 * Pad an image by mirror for the windows of size windowSize, with the
+	 * boundary conditions ImageWare.MIRROR.
+	 *
+	 * @param image row by row, size nx*ny
+	 * @return the padded image, row by row, of size (nx + windowSize - 1) x (ny
+	 *         + windowSize - 1)
+	 */
+	public static float[] pad(float[] image, int nx, int ny, int windowSize) {
+		int h = windowSize / 2;
+		int nxp = nx + windowSize - 1;
+		int nyp = ny + windowSize - 1;
+		float[] padded = new float[nxp * nyp];
+		int xperiod = (nx <= 1 ? 1 : 2 * nx - 2);
+		int yperiod = (ny <= 1 ? 1 : 2 * ny - 2);
+		for (int j = 0; j < nyp; j++) {
+			int yp = mirror(j - h, ny, yperiod) * nx;
+			for (int i = 0; i < nxp; i++)
+				padded[j * nxp + i] = image[yp + mirror(i - h, nx, xperiod)];
+		}
+		return padded;
+	}
+
+	/**
+	 * Same as pad(float[], int, int, int) for an integer image.
+	 */
+	public static int[] pad(int[] image, int nx, int ny, int windowSize) {
+		int h = windowSize / 2;
+		int nxp = nx + windowSize - 1;
+		int nyp = ny + windowSize - 1;
+		int[] padded = new int[nxp * nyp];
+		int xperiod = (nx <= 1 ? 1 : 2 * nx - 2);
+		int yperiod = (ny <= 1 ? 1 : 2 * ny - 2);
+		for (int j = 0; j < nyp; j++) {
+			int yp = mirror(j - h, ny, yperiod) * nx;
+			for (int i = 0; i < nxp; i++)
+				padded[j * nxp + i] = image[yp + mirror(i - h, nx, xperiod)];
+		}
+		return padded;
+	}
+
+	private static int mirror(int p, int n, int period) {
+		while (p < 0)
+			p += period;
+		while (p >= n) {
+			p = period - p;
+			p = (p < 0 ? -p : p);
+		}
+		return p;
+	}
+
+	/**
+	 * Compare the results of a candidate implementation with the reference on
+	 * random arrays of several sizes, including sizes which are not multiple of
+	 * the vector length.
+	 */
+	static boolean validate(Kernels candidate, Kernels reference) {
+		Random random = new Random(1234);
+		int[] sizes = { 2, 3, 4, 7, 16, 33, 64, 130, 257 };
+		for (int n : sizes) {
+			float[] in = new float[n];
+			for (int i = 0; i < n; i++)
+				in[i] = random.nextFloat() * 255f;
+			float[] a = new float[n];
+			float[] b = new float[n];
+			if (n >= 2) {
+				candidate.sobelDifference(in, a);
+				reference.sobelDifference(in, b);
+				if (!Arrays.equals(a, b)) return false;
+			}
+
+			float[] pixels = new float[n];
+			float[] best1 = new float[n], height1 = new float[n], fused1 = new float[n];
+			float[] best2 = new float[n], height2 = new float[n], fused2 = new float[n];
+			for (int k = 1; k <= 3; k++) {
+				for (int i = 0; i < n; i++) {
+					in[i] = random.nextInt(4);
+					pixels[i] = random.nextFloat();
+				}
+				candidate.argmax(in, pixels, k, best1, height1, fused1);
+				reference.argmax(in, pixels, k, best2, height2, fused2);
+			}
+			if (!Arrays.equals(best1, best2) || !Arrays.equals(height1, height2)
+					|| !Arrays.equals(fused1, fused2))
+				return false;
+
+			for (int windowSize = 3; windowSize <= 5; windowSize++) {
+				int ny = 1 + n % 5;
+				float[] image = new float[n * ny];
+				for (int i = 0; i < image.length; i++)
+					image[i] = random.nextFloat() * 255f;
+				float[] padded = pad(image, n, ny, windowSize);
+				a = new float[n * ny];
+				b = new float[n * ny];
+				candidate.variance(padded, n, ny, windowSize, a);
+				reference.variance(padded, n, ny, windowSize, b);
+				if (!Arrays.equals(a, b)) return false;
+			}
+
+			if (n % 2 == 0) {
+				double[] vin = new double[n];
+				for (int i = 0; i < n; i++)
+					vin[i] = random.nextDouble();
+				for (int nh = 2; nh <= 12; nh += 5) {
+					double[] h = new double[nh];
+					double[] g = new double[nh + 1];
+					for (int k = 0; k < h.length; k++)
+						h[k] = random.nextDouble();
+					for (int k = 0; k < g.length; k++)
+						g[k] = random.nextDouble();
+					double[] c = new double[n];
+					double[] d = new double[n];
+					candidate.splitSymmetric(vin, c, h, g);
+					reference.splitSymmetric(vin, d, h, g);
+					if (!Arrays.equals(c, d)) return false;
+				}
+			}
+		}
+		return true;
+	}
+}
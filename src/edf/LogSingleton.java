@@ -63,7 +63,7 @@ public class LogSingleton {
 		log = new JTextArea();
 	}
 
-	public static LogSingleton getInstance() {
+	public static synchronized LogSingleton getInstance() {
 		if (instance == null) {
 			instance = new LogSingleton();
 		}
@@ -78,19 +78,19 @@ public class LogSingleton {
 		return log;
 	}
 
-	public void setStartTime(double startTime) {
+	public synchronized void setStartTime(double startTime) {
 		this.startTime = startTime;
 	}
 
-	public void setProgessLength(int current) {
+	public synchronized void setProgessLength(int current) {
 		this.progessLength = current;
 	}
 
-	public int getProgessLength() {
+	public synchronized int getProgessLength() {
 		return this.progessLength;
 	}
 
-	public String getElapsedTime() {
+	public synchronized String getElapsedTime() {
 		double t = System.currentTimeMillis() - startTime;
 		if (t > 3000) return new java.text.DecimalFormat(" 000.00 s ").format(t / 1000);
 		else
@@ -101,7 +101,7 @@ public class LogSingleton {
 		return this.mem;
 	}
 
-	public void start(String msg) {
+	public synchronized void start(String msg) {
 		long freeMem = (Runtime.getRuntime().freeMemory()) / 1024;
 		java.text.DecimalFormat dfm = new java.text.DecimalFormat(" 000000kB ");
 		mem = dfm.format(freeMem);
@@ -109,17 +109,17 @@ public class LogSingleton {
 		log.setCaretPosition(log.getDocument().getLength());
 	}
 
-	public void acknowledge() {
+	public synchronized void acknowledge() {
 		log.append(": OK\n");
 		log.setCaretPosition(log.getDocument().getLength());
 	}
 
-	public void append(String msg) {
+	public synchronized void append(String msg) {
 		log.append(msg + "\n");
 		log.setCaretPosition(log.getDocument().getLength());
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		log.setText("");
 	}
 }
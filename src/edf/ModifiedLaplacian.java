@@ -0,0 +1,69 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+/**
+ * Sum-modified-Laplacian focus measure (Nayar): sum of the absolute second
+ * derivatives in x and in y, accumulated on the window.
+ */
+public class ModifiedLaplacian implements FocusMeasure {
+
+	public String getName() {
+		return "Modified Laplacian";
+	}
+
+	public void compute(float[] slice, int nx, int ny, int windowSize, float[] measure) {
+		for (int y = 0; y < ny; y++) {
+			int ym = FocusMeasures.clamp(y - 1, ny) * nx;
+			int y0 = y * nx;
+			int yp = FocusMeasures.clamp(y + 1, ny) * nx;
+			for (int x = 0; x < nx; x++) {
+				int xm = (x > 0 ? x - 1 : 0);
+				int xp = (x < nx - 1 ? x + 1 : nx - 1);
+				float c = 2f * slice[y0 + x];
+				measure[y0 + x] = Math.abs(c - slice[y0 + xm] - slice[y0 + xp]) + Math.abs(c - slice[ym + x] - slice[yp + x]);
+			}
+		}
+		FocusMeasures.boxSum(measure, nx, ny, windowSize, measure);
+	}
+}
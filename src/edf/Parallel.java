@@ -0,0 +1,95 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import imageware.Parallelism;
+
+/**
+ * Parallel loops of the EDF algorithms, on the executor of
+ * imageware.Parallelism which also runs the pointwise operations and the
+ * statistics of the imagewares.
+ *
+ * A loop is split into tasks which write disjoint parts of their output, so
+ * that the results do not depend on the scheduling. The calling thread takes
+ * its share of the tasks; a loop started by a task runs sequentially. The
+ * number of threads is the number of processors by default, 1 runs all the
+ * loops in the calling thread.
+ */
+public final class Parallel {
+
+	/**
+	 * Body of a parallel loop, run on the indices begin to end-1.
+	 */
+	public interface Range extends Parallelism.Range {
+	}
+
+	private Parallel() {
+	}
+
+	public static int getThreads() {
+		return Parallelism.getThreads();
+	}
+
+	/**
+	 * Set the number of threads of the loops and of the imageware operations.
+	 */
+	public static void setThreads(int threads) {
+		Parallelism.setThreads(threads);
+	}
+
+	/**
+	 * Run the body on the indices 0 to n-1, split into chunks of at least
+	 * grain indices.
+	 */
+	public static void forRange(int n, int grain, Range body) {
+		Parallelism.forRange(n, grain, body);
+	}
+
+	/**
+	 * Run the tasks and wait for their completion. The first exception thrown
+	 * by a task is thrown again, after the completion of the other tasks.
+	 */
+	public static void invokeAll(Runnable[] tasks) {
+		Parallelism.invokeAll(tasks);
+	}
+}
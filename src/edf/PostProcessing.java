@@ -45,6 +45,7 @@ package edf;
 
 import ij.ImageStack;
 import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
 import imageware.Builder;
 import imageware.ImageWare;
 
@@ -80,6 +81,29 @@ public class PostProcessing {
 		return topology;
 	}
 
+	/**
+	 * Gather, for each pixel, the value of the slice given by the topology
+	 * (slices numbered from 1) in a stack of any type, for example another
+	 * channel of the stack from which the topology was computed.
+	 */
+	public static ImageProcessor reassignmentChannel(ImageWare topology, ImageStack stack) {
+		int nx = topology.getSizeX();
+		int ny = topology.getSizeY();
+		int nz = stack.getSize();
+		ImageProcessor[] slices = new ImageProcessor[nz];
+		for (int k = 0; k < nz; k++)
+			slices[k] = stack.getProcessor(k + 1);
+		ImageProcessor ip = slices[0].createProcessor(nx, ny);
+		for (int y = 0; y < ny; y++) {
+			for (int x = 0; x < nx; x++) {
+				int index = (int) topology.getPixel(x, y, 0);
+				index = Math.max(1, Math.min(nz, index));
+				ip.set(x, y, slices[index - 1].get(x, y));
+			}
+		}
+		return ip;
+	}
+
 	public static ColorProcessor reassignmentColor(ImageWare topology, ImageStack stack) {
 		int nx = topology.getSizeX();
 		int ny = topology.getSizeY();
@@ -79,7 +79,9 @@ public class ProcessTopology {
 			iw.copy(MorphologicalOperators.doOpen(iw));
 		}
 		if (smooth) {
+			EdfEvents event = EdfEvents.operator("Gaussian", iw.getWidth(), iw.getHeight());
 			iw.smoothGaussian(sigma);
+			EdfEvents.end(event);
 		}
 		topology.show();
 		topology.updateAndDraw();
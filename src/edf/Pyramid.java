@@ -0,0 +1,171 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import imageware.Builder;
+import imageware.ImageWare;
+
+/**
+ * Multiresolution pyramid of a z-stack for the preview: the levels are binned
+ * by 2 in x and y, the slices are kept. The height-map computed on a coarse
+ * level gives, at the next finer level, the range of slices to search around
+ * each pixel.
+ */
+public class Pyramid {
+
+	private ImageWare[] levels;
+
+	/**
+	 * Build the levels binned by 1, 2, 4, ... of the stack, until the level has
+	 * at most maxPixels pixels per slice. The levels smaller than minSize
+	 * pixels in x or y are not built.
+	 */
+	public Pyramid(ImageWare stack, int maxPixels, int minSize) {
+		int count = 1;
+		int nx = stack.getSizeX();
+		int ny = stack.getSizeY();
+		while (nx * ny > maxPixels && nx / 2 >= minSize && ny / 2 >= minSize) {
+			nx /= 2;
+			ny /= 2;
+			count++;
+		}
+		levels = new ImageWare[count];
+		levels[0] = stack;
+		for (int l = 1; l < count; l++)
+			levels[l] = bin(levels[l - 1]);
+	}
+
+	public int getLevels() {
+		return levels.length;
+	}
+
+	/**
+	 * Level l of the pyramid, binned by 2^l, the level 0 is the input stack.
+	 */
+	public ImageWare getLevel(int l) {
+		return levels[l];
+	}
+
+	/**
+	 * Average the blocks of 2x2 pixels of each slice, the last row or column
+	 * of an odd size is dropped.
+	 */
+	public static ImageWare bin(ImageWare stack) {
+		int nx = stack.getSizeX();
+		int ny = stack.getSizeY();
+		int nz = stack.getSizeZ();
+		int mx = nx / 2;
+		int my = ny / 2;
+		ImageWare slice = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		ImageWare out = Builder.create(mx, my, nz, ImageWare.FLOAT);
+		float[] in = slice.getSliceFloat(0);
+		for (int z = 0; z < nz; z++) {
+			stack.getXY(0, 0, z, slice);
+			float[] binned = out.getSliceFloat(z);
+			for (int y = 0; y < my; y++) {
+				int a = 2 * y * nx;
+				int b = a + nx;
+				for (int x = 0; x < mx; x++) {
+					binned[y * mx + x] = 0.25f * (in[a + 2 * x] + in[a + 2 * x + 1] + in[b + 2 * x] + in[b + 2 * x + 1]);
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Search range of each pixel of a level of size nx x ny from the
+	 * height-map of the coarser level: the range of the slices of the 3x3
+	 * neighbors of the corresponding coarse pixel, extended by margin and
+	 * clipped to 1..nz.
+	 * 
+	 * @return the arrays zmin and zmax, row by row, see
+	 *         AbstractEdfAlgorithm.setSearchRange()
+	 */
+	public static float[][] searchRange(ImageWare coarse, int nx, int ny, int nz, int margin) {
+		int cx = coarse.getSizeX();
+		int cy = coarse.getSizeY();
+		float[] map = new float[cx * cy];
+		for (int y = 0; y < cy; y++)
+			for (int x = 0; x < cx; x++)
+				map[y * cx + x] = (float) coarse.getPixel(x, y, 0);
+
+		float[] lowCoarse = new float[cx * cy];
+		float[] highCoarse = new float[cx * cy];
+		for (int y = 0; y < cy; y++) {
+			for (int x = 0; x < cx; x++) {
+				float low = Float.MAX_VALUE;
+				float high = -Float.MAX_VALUE;
+				for (int j = Math.max(0, y - 1); j <= Math.min(cy - 1, y + 1); j++)
+					for (int i = Math.max(0, x - 1); i <= Math.min(cx - 1, x + 1); i++) {
+						low = Math.min(low, map[j * cx + i]);
+						high = Math.max(high, map[j * cx + i]);
+					}
+				lowCoarse[y * cx + x] = Math.max(1, Math.round(low) - margin);
+				highCoarse[y * cx + x] = Math.min(nz, Math.round(high) + margin);
+			}
+		}
+
+		float[] zmin = new float[nx * ny];
+		float[] zmax = new float[nx * ny];
+		for (int y = 0; y < ny; y++) {
+			int j = Math.min(cy - 1, y * cy / ny);
+			for (int x = 0; x < nx; x++) {
+				int i = Math.min(cx - 1, x * cx / nx);
+				zmin[y * nx + x] = lowCoarse[j * cx + i];
+				zmax[y * nx + x] = highCoarse[j * cx + i];
+			}
+		}
+		return new float[][] { zmin, zmax };
+	}
+
+	/**
+	 * Slices first..last of a stack, numbered from 1.
+	 */
+	public static ImageWare substack(ImageWare stack, int first, int last) {
+		if (first == 1 && last == stack.getSizeZ()) return stack;
+		ImageWare out = Builder.create(stack.getSizeX(), stack.getSizeY(), last - first + 1, stack.getType());
+		stack.getXYZ(0, 0, first - 1, out);
+		return out;
+	}
+}
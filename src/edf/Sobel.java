@@ -44,71 +44,93 @@
 package edf;
 
 import imageware.Builder;
+import imageware.Expression;
 import imageware.ImageWare;
 
 public class Sobel {
 
+	/**
+	 * Maximum pixel value of the integer path: the squared magnitude of the
+	 * gradient of a 13-bit image fits in an int.
+	 */
+	public static final int INT_MAX_VALUE = 8191;
+
 	static public ImageWare compute(ImageWare input) {
 		int nx = input.getWidth();
 		int ny = input.getHeight();
 
+		Kernels kernels = Kernels.getInstance();
 		ImageWare gx = Builder.create(nx, ny, 1, ImageWare.FLOAT);
 		ImageWare gy = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		float dx[] = new float[nx * ny];
 		float rowin[] = new float[nx];
 		float rowout[] = new float[nx];
 		for (int y = 0; y < ny; y++) {
 			input.getX(0, y, 0, rowin);
-			sobelDifference(rowin, rowout);
-			gx.putX(0, y, 0, rowout);
-			sobelAverage(rowin, rowout);
-			gy.putX(0, y, 0, rowout);
+			kernels.sobelDifference(rowin, rowout);
+			System.arraycopy(rowout, 0, dx, y * nx, nx);
 		}
-		float colin[] = new float[ny];
-		float colout[] = new float[ny];
-		for (int x = 0; x < nx; x++) {
-			gx.getY(x, 0, 0, colin);
-			sobelAverage(colin, colout);
-			gx.putY(x, 0, 0, colout);
-			gy.putY(x, 0, 0, colin);
-			sobelDifference(colin, colout);
-			gy.putY(x, 0, 0, colout);
+
+		// Filters of the columns, applied row by row on all the columns at
+		// once. Both components are filtered from the horizontal difference.
+		float[] outx = gx.getSliceFloat(0);
+		float[] outy = gy.getSliceFloat(0);
+		for (int y = 0; y < ny; y++) {
+			int row = y * nx;
+			int up = (y - 1) * nx;
+			int down = (y + 1) * nx;
+			if (y == 0) {
+				for (int x = 0; x < nx; x++) {
+					outx[row + x] = 2 * dx[row + x] + 2 * dx[down + x];
+					outy[row + x] = 0;
+				}
+			}
+			else if (y == ny - 1) {
+				for (int x = 0; x < nx; x++) {
+					outx[row + x] = 2 * dx[up + x] + 2 * dx[row + x];
+					outy[row + x] = 0;
+				}
+			}
+			else {
+				for (int x = 0; x < nx; x++) {
+					outx[row + x] = dx[up + x] + 2 * dx[row + x] + dx[down + x];
+					outy[row + x] = dx[down + x] - dx[up + x];
+				}
+			}
 		}
 
-		gx.pow(2);
-		gy.pow(2);
-		gx.add(gy);
-		gx.sqrt();
+		// Magnitude, in one pass
+		Expression.of(gx).sqr().add(Expression.of(gy).sqr()).sqrt().evaluate(gx);
 		return gx;
 	}
 
 	/**
-	 * Implements an 1D sobel difference filter. The kernel is: [-1, 0, 1]
-	 *
-	 * @param in  input, array which should be filtered
-	 * @param out output, filtered array of the type float
+	 * Squared magnitude of the gradient of an integer image with pixels in
+	 * 0..INT_MAX_VALUE, with the filters of compute(). The arithmetic is exact,
+	 * the square root is not computed: the order of the measures is kept.
+	 * 
+	 * @param image row by row, size nx*ny
+	 * @param out   squared magnitude, row by row
 	 */
-	static private void sobelDifference(float in[], float out[]) {
-		int n = in.length;
-		out[0] = 0;
-		for (int k = 1; k < n - 1; k++) {
-			out[k] = in[k + 1] - in[k - 1];
+	static public void computeSquared(int[] image, int nx, int ny, int[] out) {
+		int[] dx = new int[nx * ny];
+		for (int y = 0; y < ny; y++) {
+			int row = y * nx;
+			for (int x = 0; x < nx; x++)
+				dx[row + x] = image[row + (x == nx - 1 ? nx - 2 : x + 1)] - image[row + (x == 0 ? 1 : x - 1)];
 		}
-		out[n - 1] = 0;
-	}
-
-	/**
-	 * Implements an 1D sobel average filter. The kernel is: [1, 2, 1]
-	 *
-	 * @param in  input, array which should be filtered
-	 * @param out output, filtered array of the type float
-	 */
-	static private void sobelAverage(float in[], float out[]) {
-		int n = in.length;
-		out[0] = 2 * in[0] + 2 * in[1];
-		for (int k = 1; k < n - 1; k++) {
-			out[k] = in[k - 1] + 2 * in[k] + in[k + 1];
+		// As compute(), both components are filtered from the horizontal
+		// difference
+		for (int y = 0; y < ny; y++) {
+			int up = (y == 0 ? 1 : y - 1) * nx;
+			int down = (y == ny - 1 ? ny - 2 : y + 1) * nx;
+			int row = y * nx;
+			for (int x = 0; x < nx; x++) {
+				int gx = dx[up + x] + 2 * dx[row + x] + dx[down + x];
+				int gy = dx[down + x] - dx[up + x];
+				out[row + x] = gx * gx + gy * gy;
+			}
 		}
-		out[n - 1] = 2 * in[n - 2] + 2 * in[n - 1];
 	}
 
 }
\ No newline at end of file
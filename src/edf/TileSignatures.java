@@ -0,0 +1,129 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edf;
+
+import imageware.Builder;
+import imageware.ImageWare;
+
+/**
+ * Signatures of the tiles of a z-stack, to detect the regions which change
+ * between the frames of a time-lapse. The signature of a tile is the mean of
+ * each block of BLOCK x BLOCK pixels of the tile, in each slice; two tiles
+ * are unchanged if all their block means differ by at most a tolerance.
+ */
+public class TileSignatures {
+
+	public static final int BLOCK = 8;
+
+	private int nx;
+	private int ny;
+	private int tileSize;
+	private int tilesX;
+	private int tilesY;
+
+	public TileSignatures(int nx, int ny, int tileSize) {
+		this.nx = nx;
+		this.ny = ny;
+		this.tileSize = tileSize;
+		this.tilesX = (nx + tileSize - 1) / tileSize;
+		this.tilesY = (ny + tileSize - 1) / tileSize;
+	}
+
+	public int getTileCount() {
+		return tilesX * tilesY;
+	}
+
+	/**
+	 * Signatures of the tiles of a stack, indexed by tile then by slice and
+	 * block.
+	 */
+	public float[][] compute(ImageWare stack) {
+		int nz = stack.getSizeZ();
+		int bx = (tileSize + BLOCK - 1) / BLOCK;
+		float[][] signatures = new float[getTileCount()][nz * bx * bx];
+		ImageWare slice = Builder.create(nx, ny, 1, ImageWare.FLOAT);
+		float[] pixels = slice.getSliceFloat(0);
+		for (int z = 0; z < nz; z++) {
+			stack.getXY(0, 0, z, slice);
+			for (int t = 0; t < getTileCount(); t++) {
+				int[] r = getTile(t, 0);
+				float[] signature = signatures[t];
+				for (int y = r[1]; y < r[3]; y++) {
+					int j = (y - r[1]) / BLOCK;
+					for (int x = r[0]; x < r[2]; x++)
+						signature[(z * bx + j) * bx + (x - r[0]) / BLOCK] += pixels[y * nx + x];
+				}
+				for (int j = 0; j < bx; j++) {
+					int h = Math.min(BLOCK, r[3] - r[1] - j * BLOCK);
+					for (int i = 0; i < bx; i++) {
+						int w = Math.min(BLOCK, r[2] - r[0] - i * BLOCK);
+						if (w > 0 && h > 0) signature[(z * bx + j) * bx + i] /= w * h;
+					}
+				}
+			}
+		}
+		return signatures;
+	}
+
+	/**
+	 * Return true if the signatures differ by more than the tolerance.
+	 */
+	public static boolean differ(float[] a, float[] b, double tolerance) {
+		if (a == null || b == null || a.length != b.length) return true;
+		for (int i = 0; i < a.length; i++)
+			if (Math.abs(a[i] - b[i]) > tolerance) return true;
+		return false;
+	}
+
+	/**
+	 * Bounds of a tile extended by a halo and clipped to the image.
+	 * 
+	 * @return x0, y0, x1, y1 with x1 and y1 excluded
+	 */
+	public int[] getTile(int tile, int halo) {
+		int x = (tile % tilesX) * tileSize;
+		int y = (tile / tilesX) * tileSize;
+		return new int[] { Math.max(0, x - halo), Math.max(0, y - halo), Math.min(nx, x + tileSize + halo),
+				Math.min(ny, y + tileSize + halo) };
+	}
+}
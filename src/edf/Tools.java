@@ -43,10 +43,7 @@
 
 package edf;
 
-import ij.process.ByteProcessor;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
-import ij.process.ShortProcessor;
 import imageware.Builder;
 import imageware.FMath;
 import imageware.ImageWare;
@@ -117,39 +114,12 @@ public class Tools {
 		return n > 0 && (n & (n - 1)) == 0;
 	}
 
+	/**
+	 * Processor on the first slice of an image, the pixels are shared (see
+	 * ImageViews).
+	 */
 	public static ImageProcessor getImageProcessor(ImageWare iw) {
-		ImageProcessor ip = null;
-
-		Object[] pixels = iw.getVolume();
-		int size = iw.getSizeX() * iw.getSizeY();
-
-		switch (iw.getType()) {
-		case ImageWare.BYTE:
-			ip = new ByteProcessor(iw.getSizeX(), iw.getSizeY());
-			byte[] bsrc = new byte[size];
-			for (int k = 0; k < size; k++) {
-				bsrc[k] = ((byte[]) pixels[0])[k];
-			}
-			ip.setPixels(bsrc);
-			break;
-		case ImageWare.SHORT:
-			ip = new ShortProcessor(iw.getSizeX(), iw.getSizeY());
-			short[] ssrc = new short[size];
-			for (int k = 0; k < size; k++)
-				ssrc[k] = ((short[]) pixels[0])[k];
-			ip.setPixels(ssrc);
-			break;
-		case ImageWare.FLOAT:
-			ip = new FloatProcessor(iw.getSizeX(), iw.getSizeY());
-			float[] fsrc = new float[size];
-			for (int k = 0; k < size; k++)
-				fsrc[k] = ((float[]) pixels[0])[k];
-			ip.setPixels(fsrc);
-			break;
-		default:
-			throw new RuntimeException("Error creating processor.");
-		}
-		return ip;
+		return ImageViews.getProcessor(iw, 0);
 	}
 
 	public static void waveletDenoising(ImageWare coeff, double rateDenoising) {
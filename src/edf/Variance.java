@@ -63,43 +63,69 @@ public class Variance {
 
 		ImageWare output = Builder.create(nx, ny, 1, ImageWare.FLOAT);
 
-		float[][] buf = new float[windowSize][windowSize];
-		int wlen = windowSize * windowSize;
-		float[] arr = new float[wlen];
-
-		int x, y, j;
-		float ave, var, temp;
-
-		// Loop through the image.
-		for (x = 0; x < nx; x++) {
-			for (y = 0; y < ny; y++) {
-
-				ave = 0;
-				var = 0;
-
-				input.getNeighborhoodXY(x, y, 0, buf, ImageWare.MIRROR);
-
-				// Transform neighborghood to 1-D array.
-				for (j = 0; j < windowSize; j++) {
-					System.arraycopy(buf[j], 0, arr, j * windowSize, windowSize);
-				}
-
-				// compute average.
-				for (j = 0; j < wlen; j++) {
-					ave += arr[j];
-				}
-				ave /= wlen;
+		// Pad the image by mirror, the window is then read without boundary test.
+		float[] image = new float[nx * ny];
+		float[] row = new float[nx];
+		for (int y = 0; y < ny; y++) {
+			input.getX(0, y, 0, row);
+			System.arraycopy(row, 0, image, y * nx, nx);
+		}
+		float[] padded = Kernels.pad(image, nx, ny, windowSize);
 
-				// variance.
-				for (j = 0; j < wlen; j++) {
-					temp = arr[j] - ave;
-					var += temp * temp;
-				}
+		Kernels.getInstance().variance(padded, nx, ny, windowSize, output.getSliceFloat(0));
+		return output;
+	}
 
-				output.putPixel(x, y, 0, var);
+	/**
+	 * Local variance of an integer image, scaled by the square of the number
+	 * of pixels of the window: n*sum(x^2) - sum(x)^2. The sums are computed
+	 * exactly in long by running sums over the columns then over the rows, the
+	 * order of the measures is the order of the variances of compute().
+	 * 
+	 * @param image row by row, size nx*ny, pixels of at most 16 bits
+	 * @param out   scaled variance, row by row
+	 */
+	static public void computeScaled(int[] image, int nx, int ny, int windowSize, long[] out) {
+		int nxp = nx + windowSize - 1;
+		int[] padded = Kernels.pad(image, nx, ny, windowSize);
+		long[] sum = new long[nxp];
+		long[] sum2 = new long[nxp];
+		long wlen = windowSize * windowSize;
+		for (int j = 0; j < windowSize - 1; j++)
+			for (int i = 0; i < nxp; i++) {
+				long v = padded[j * nxp + i];
+				sum[i] += v;
+				sum2[i] += v * v;
+			}
+		for (int y = 0; y < ny; y++) {
+			// Add the last row of the window to the sums of the columns
+			int last = (y + windowSize - 1) * nxp;
+			for (int i = 0; i < nxp; i++) {
+				long v = padded[last + i];
+				sum[i] += v;
+				sum2[i] += v * v;
+			}
+			long s = 0;
+			long s2 = 0;
+			for (int i = 0; i < windowSize - 1; i++) {
+				s += sum[i];
+				s2 += sum2[i];
+			}
+			for (int x = 0; x < nx; x++) {
+				s += sum[x + windowSize - 1];
+				s2 += sum2[x + windowSize - 1];
+				out[y * nx + x] = wlen * s2 - s * s;
+				s -= sum[x];
+				s2 -= sum2[x];
+			}
+			// Remove the first row of the window
+			int first = y * nxp;
+			for (int i = 0; i < nxp; i++) {
+				long v = padded[first + i];
+				sum[i] -= v;
+				sum2[i] -= v * v;
 			}
 		}
-		return output;
 	}
 
 }
@@ -0,0 +1,372 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edfbench;
+
+import ij.ImagePlus;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import imageware.ImageWare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import edf.FocusMeasures;
+import edf.LogSingleton;
+import edf.PostProcessing;
+import edf.Tools;
+import edfgui.ExtendedDepthOfField;
+import edfgui.Parameters;
+
+/**
+ * Speed-versus-quality report of the EDF methods.
+ *
+ * Every method and parameter combination is run on a synthetic stack with a
+ * known depth. The runtime of the sharpness estimation, the error of the
+ * height-map and the error of the composite image are measured, and the Pareto
+ * frontiers (time, height-map error) and (time, composite error) are printed,
+ * together with the position of the presets of Parameters.setQualitySettings.
+ *
+ * Usage: FrontierReport [nx ny nz [8|16|32|rgb] [seed] [repeats] [noise]]
+ */
+public class FrontierReport {
+
+	private static final String[] QUALITY_NAMES = { "LOW", "LM", "MEDIUM", "MH", "HIGH" };
+
+	private SyntheticStack synthetic;
+	private ImagePlus imp;
+	private float[] depth;
+	private ImageProcessor focused;
+	private int maxScales;
+	private int repeats;
+
+	private class Run {
+		String label;
+		Parameters parameters;
+		double time;
+		double heightMapError;
+		double compositeError;
+		boolean frontierHeightMap;
+		boolean frontierComposite;
+	}
+
+	public FrontierReport(SyntheticStack synthetic, int repeats) {
+		this.synthetic = synthetic;
+		this.repeats = Math.max(1, repeats);
+		this.imp = synthetic.createImagePlus("Synthetic");
+		this.depth = (float[]) synthetic.getDepthMap().getPixels();
+		this.focused = synthetic.getFocused();
+		this.maxScales = Tools.computeScaleAndPowerTwoSize(synthetic.getWidth(), synthetic.getHeight())[0];
+	}
+
+	/**
+	 * Enumerate all the method and parameter combinations.
+	 */
+	private ArrayList<Run> enumerate() {
+		ArrayList<Run> runs = new ArrayList<Run>();
+		Parameters p;
+
+		p = createParameters();
+		p.edfMethod = ExtendedDepthOfField.SOBEL;
+		runs.add(createRun("Sobel", p));
+
+		for (int w = 3; w <= 9; w += 2) {
+			p = createParameters();
+			p.edfMethod = ExtendedDepthOfField.VARIANCE;
+			p.varWindowSize = w;
+			runs.add(createRun("Variance w=" + w, p));
+		}
+
+		for (String measure : FocusMeasures.getNames())
+			for (int w = 3; w <= 9; w += 2) {
+				p = createParameters();
+				p.edfMethod = ExtendedDepthOfField.FOCUS_MEASURE;
+				p.focusMeasure = measure;
+				p.varWindowSize = w;
+				runs.add(createRun(measure + " w=" + w, p));
+			}
+
+		int[] orders = { 0, 1, 3, 5 };
+		int[] lengths = { 6, 14, 22 };
+		int scaleMax = Math.min(maxScales, 6);
+		for (int scales = 1; scales <= scaleMax; scales++)
+			for (int cc = 0; cc < 4; cc++)
+				for (int r = 0; r < 2; r++) {
+					for (int order : orders) {
+						p = createWaveletParameters(ExtendedDepthOfField.REAL_WAVELETS, scales, cc, r);
+						p.splineOrder = order;
+						runs.add(createRun("Real order=" + order + waveletLabel(p), p));
+					}
+					for (int length : lengths) {
+						p = createWaveletParameters(ExtendedDepthOfField.COMPLEX_WAVELETS, scales, cc, r);
+						p.daubechielength = length;
+						runs.add(createRun("Complex length=" + length + waveletLabel(p), p));
+					}
+				}
+		return runs;
+	}
+
+	private Parameters createParameters() {
+		Parameters p = new Parameters();
+		p.maxScales = maxScales;
+		p.reset();
+		p.color = (imp.getType() == ImagePlus.COLOR_RGB);
+		p.outputColorMap = (p.color ? Parameters.COLOR_RGB : Parameters.GRAYSCALE);
+		return p;
+	}
+
+	private Parameters createWaveletParameters(int method, int scales, int cc, int reassignment) {
+		Parameters p = createParameters();
+		p.edfMethod = method;
+		p.nScales = scales;
+		p.subBandCC = (cc & 1) != 0;
+		p.majCC = (cc & 2) != 0;
+		p.reassignment = (reassignment != 0);
+		return p;
+	}
+
+	private String waveletLabel(Parameters p) {
+		return " scales=" + p.nScales + (p.subBandCC ? " subBandCC" : "") + (p.majCC ? " majCC" : "")
+				+ (p.reassignment ? " reassignment" : "");
+	}
+
+	private Run createRun(String label, Parameters parameters) {
+		Run run = new Run();
+		run.label = label;
+		run.parameters = parameters;
+		return run;
+	}
+
+	/**
+	 * Run one configuration, the time is the median over the repetitions.
+	 */
+	private void measure(Run run) {
+		double[] times = new double[repeats];
+		ImageWare[] ima = null;
+		for (int i = 0; i < repeats; i++) {
+			ExtendedDepthOfField edf = new ExtendedDepthOfField(imp, run.parameters);
+			long start = System.nanoTime();
+			ima = edf.computeSharpness();
+			times[i] = (System.nanoTime() - start) * 1e-6;
+			LogSingleton.getInstance().clear();
+		}
+		Arrays.sort(times);
+		run.time = times[repeats / 2];
+
+		Parameters p = run.parameters;
+		boolean waveletMethod = (p.edfMethod == ExtendedDepthOfField.REAL_WAVELETS
+				|| p.edfMethod == ExtendedDepthOfField.COMPLEX_WAVELETS);
+		int offset = (waveletMethod && !p.reassignment ? 1 : 0);
+		run.heightMapError = heightMapError(ima[1], offset);
+		run.compositeError = compositeError(ima, offset);
+	}
+
+	/**
+	 * Root mean square error of the height-map, in slices.
+	 */
+	private double heightMapError(ImageWare map, int offset) {
+		int nx = synthetic.getWidth();
+		int ny = synthetic.getHeight();
+		double sum = 0.0, e;
+		for (int y = 0; y < ny; y++)
+			for (int x = 0; x < nx; x++) {
+				e = map.getPixel(x, y, 0) + offset - depth[x + y * nx];
+				sum += e * e;
+			}
+		return Math.sqrt(sum / (nx * ny));
+	}
+
+	/**
+	 * Root mean square error of the composite image, in percent of the dynamic
+	 * range. The color composite is gathered from the stack with the height-map.
+	 */
+	private double compositeError(ImageWare[] ima, int offset) {
+		int nx = synthetic.getWidth();
+		int ny = synthetic.getHeight();
+		double sum = 0.0, e;
+		if (imp.getType() == ImagePlus.COLOR_RGB) {
+			ImageWare map = ima[1];
+			if (offset != 0) {
+				map = ima[1].duplicate();
+				map.add(offset);
+			}
+			ColorProcessor cp = PostProcessing.reassignmentColor(map, imp.getStack());
+			int[] a = (int[]) cp.getPixels();
+			int[] b = (int[]) focused.getPixels();
+			for (int k = 0; k < nx * ny; k++)
+				for (int shift = 0; shift <= 16; shift += 8) {
+					e = ((a[k] >> shift) & 0xFF) - ((b[k] >> shift) & 0xFF);
+					sum += e * e;
+				}
+			return 100.0 * Math.sqrt(sum / (3 * nx * ny)) / 255.0;
+		}
+		double range = (imp.getType() == ImagePlus.GRAY8 ? 255.0 : (imp.getType() == ImagePlus.GRAY16 ? 4095.0 : 1.0));
+		for (int y = 0; y < ny; y++)
+			for (int x = 0; x < nx; x++) {
+				e = ima[0].getPixel(x, y, 0) - focused.getPixelValue(x, y);
+				sum += e * e;
+			}
+		return 100.0 * Math.sqrt(sum / (nx * ny)) / range;
+	}
+
+	/**
+	 * Mark the runs which are not dominated in (time, error).
+	 */
+	private void computeFrontiers(ArrayList<Run> runs) {
+		for (Run a : runs) {
+			a.frontierHeightMap = true;
+			a.frontierComposite = true;
+			for (Run b : runs) {
+				if (a == b) continue;
+				if (dominates(b.time, b.heightMapError, a.time, a.heightMapError)) a.frontierHeightMap = false;
+				if (dominates(b.time, b.compositeError, a.time, a.compositeError)) a.frontierComposite = false;
+			}
+		}
+	}
+
+	private boolean dominates(double timeA, double errorA, double timeB, double errorB) {
+		return timeA <= timeB && errorA <= errorB && (timeA < timeB || errorA < errorB);
+	}
+
+	private Run findDominating(ArrayList<Run> runs, Run preset) {
+		Run best = null;
+		for (Run r : runs)
+			if (r.frontierHeightMap && dominates(r.time, r.heightMapError, preset.time, preset.heightMapError))
+				if (best == null || r.heightMapError < best.heightMapError) best = r;
+		return best;
+	}
+
+	public void report() {
+		ArrayList<Run> runs = enumerate();
+		int nx = synthetic.getWidth();
+		int ny = synthetic.getHeight();
+		int nz = synthetic.getSize();
+		System.out.println("EDF speed-versus-quality report: " + nx + "x" + ny + "x" + nz + ", " + imp.getBitDepth()
+				+ "-bit, " + runs.size() + " configurations, " + repeats + " repetition(s)");
+
+		// Warm up the JIT compiler on the cheapest methods
+		measure(runs.get(0));
+		measure(runs.get(1));
+
+		for (int i = 0; i < runs.size(); i++) {
+			measure(runs.get(i));
+			System.out.print("\r" + (i + 1) + "/" + runs.size());
+		}
+		System.out.println();
+
+		ArrayList<Run> presets = new ArrayList<Run>();
+		for (int q = Parameters.QUALITY_LOW; q <= Parameters.QUALITY_HIGH; q++) {
+			Parameters p = createParameters();
+			p.setQualitySettings(q);
+			Run run = createRun("Preset " + QUALITY_NAMES[q], p);
+			measure(run);
+			presets.add(run);
+		}
+
+		computeFrontiers(runs);
+		Collections.sort(runs, new Comparator<Run>() {
+			public int compare(Run a, Run b) {
+				return Double.compare(a.time, b.time);
+			}
+		});
+
+		System.out.println();
+		System.out.println("All configurations (H: height-map frontier, C: composite frontier)");
+		printHeader();
+		for (Run run : runs)
+			print(run);
+
+		System.out.println();
+		System.out.println("Pareto frontier: time versus height-map error");
+		printHeader();
+		for (Run run : runs)
+			if (run.frontierHeightMap) print(run);
+
+		System.out.println();
+		System.out.println("Pareto frontier: time versus composite error");
+		printHeader();
+		for (Run run : runs)
+			if (run.frontierComposite) print(run);
+
+		System.out.println();
+		System.out.println("Presets of Parameters.setQualitySettings");
+		printHeader();
+		for (Run preset : presets) {
+			print(preset);
+			Run better = findDominating(runs, preset);
+			if (better != null) System.out.println("      dominated by: " + better.label);
+		}
+	}
+
+	private void printHeader() {
+		System.out.println(String.format("  %10s %14s %14s  %s", "time [ms]", "height [slice]", "composite [%]",
+				"configuration"));
+	}
+
+	private void print(Run run) {
+		String mark = (run.frontierHeightMap ? "H" : " ") + (run.frontierComposite ? "C" : " ");
+		System.out.println(String.format("%s%10.1f %14.3f %14.3f  %s", mark, run.time, run.heightMapError,
+				run.compositeError, run.label));
+	}
+
+	public static void main(String[] args) {
+		int nx = (args.length > 0 ? Integer.parseInt(args[0]) : 256);
+		int ny = (args.length > 1 ? Integer.parseInt(args[1]) : 256);
+		int nz = (args.length > 2 ? Integer.parseInt(args[2]) : 24);
+		int type = ImagePlus.GRAY16;
+		if (args.length > 3) {
+			if (args[3].equals("8")) type = ImagePlus.GRAY8;
+			else if (args[3].equals("16")) type = ImagePlus.GRAY16;
+			else if (args[3].equals("32")) type = ImagePlus.GRAY32;
+			else if (args[3].equalsIgnoreCase("rgb")) type = ImagePlus.COLOR_RGB;
+			else
+				throw new IllegalArgumentException("Invalid type " + args[3]);
+		}
+		long seed = (args.length > 4 ? Long.parseLong(args[4]) : 0);
+		int repeats = (args.length > 5 ? Integer.parseInt(args[5]) : 1);
+		SyntheticStack synthetic = new SyntheticStack(nx, ny, nz, type, seed);
+		synthetic.setNoise(args.length > 6 ? Double.parseDouble(args[6]) : 0.01);
+		new FrontierReport(synthetic, repeats).report();
+	}
+}
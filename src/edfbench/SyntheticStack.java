@@ -0,0 +1,392 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edfbench;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Synthetic focus stack with a known height map.
+ *
+ * The specimen is a textured surface z = h(x,y). The texture is a sum of
+ * sinusoidal gratings, so the Gaussian defocus blur of every grating has a
+ * closed form: a grating of frequency f seen with a blur sigma is attenuated by
+ * exp(-2 pi^2 sigma^2 f^2). The blur of the slice z at (x,y) is
+ * blurPerSlice * |z - h(x,y)|. Every slice is rendered row by row, without any
+ * convolution, so stacks of any size can be streamed to the disk.
+ *
+ * The ground-truth depth follows the convention of the height-map of EDF: the
+ * slice numbers start at 1.
+ */
+public class SyntheticStack {
+
+	private static final int N_GRATINGS = 24;
+	private static final int N_SURFACE = 4;
+	private static final double MAX_FREQUENCY = 0.35;
+
+	private int nx;
+	private int ny;
+	private int nz;
+	private int type;
+	private long seed;
+	private int nChannels;
+
+	private double blurPerSlice = 1.0;
+	private double noise = 0.0;
+
+	private double f0;
+	private double[] fx = new double[N_GRATINGS];
+	private double[] fy = new double[N_GRATINGS];
+	private double[] phase = new double[N_GRATINGS];
+	private double[][] amplitude;
+	private double[][] cosx;
+	private double[][] sinx;
+
+	private double[] sfx = new double[N_SURFACE];
+	private double[] sfy = new double[N_SURFACE];
+	private double[] sphase = new double[N_SURFACE];
+	private double[] samplitude = new double[N_SURFACE];
+	private double[][] scosx;
+	private double[][] ssinx;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param nx   width of the stack
+	 * @param ny   height of the stack
+	 * @param nz   number of slices
+	 * @param type ImagePlus.GRAY8, GRAY16 (12-bit range), GRAY32 ([0..1] range)
+	 *             or COLOR_RGB
+	 * @param seed seed of the random texture, surface and noise
+	 */
+	public SyntheticStack(int nx, int ny, int nz, int type, long seed) {
+		if (nx < 4 || ny < 4 || nz < 1) throw new IllegalArgumentException("Invalid size " + nx + "x" + ny + "x" + nz);
+		if (type != ImagePlus.GRAY8 && type != ImagePlus.GRAY16 && type != ImagePlus.GRAY32
+				&& type != ImagePlus.COLOR_RGB)
+			throw new IllegalArgumentException("Invalid type " + type);
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		this.type = type;
+		this.seed = seed;
+		this.nChannels = (type == ImagePlus.COLOR_RGB ? 3 : 1);
+		init();
+	}
+
+	/**
+	 * Set the blur, in pixels, added by each slice of defocus.
+	 */
+	public void setBlurPerSlice(double blurPerSlice) {
+		this.blurPerSlice = blurPerSlice;
+	}
+
+	/**
+	 * Set the standard deviation of the additive Gaussian noise, in fraction of
+	 * the dynamic range.
+	 */
+	public void setNoise(double noise) {
+		this.noise = noise;
+	}
+
+	public int getWidth() {
+		return nx;
+	}
+
+	public int getHeight() {
+		return ny;
+	}
+
+	public int getSize() {
+		return nz;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	private void init() {
+		Random rand = new Random(seed);
+		f0 = MAX_FREQUENCY / Math.sqrt(N_GRATINGS);
+		amplitude = new double[nChannels][N_GRATINGS];
+		double[] total = new double[nChannels];
+		for (int i = 0; i < N_GRATINGS; i++) {
+			// |f|^2 = (i+1) f0^2, the attenuation is a power of a single exponential
+			double f = f0 * Math.sqrt(i + 1);
+			double angle = rand.nextDouble() * Math.PI;
+			fx[i] = f * Math.cos(angle);
+			fy[i] = f * Math.sin(angle);
+			phase[i] = rand.nextDouble() * 2.0 * Math.PI;
+			for (int c = 0; c < nChannels; c++) {
+				amplitude[c][i] = (0.5 + rand.nextDouble()) / Math.sqrt(i + 1);
+				total[c] += amplitude[c][i];
+			}
+		}
+		for (int c = 0; c < nChannels; c++)
+			for (int i = 0; i < N_GRATINGS; i++)
+				amplitude[c][i] *= 0.45 / total[c];
+
+		double stotal = 0.0;
+		for (int j = 0; j < N_SURFACE; j++) {
+			double angle = rand.nextDouble() * 2.0 * Math.PI;
+			double cycles = 0.5 + 1.5 * rand.nextDouble();
+			sfx[j] = cycles * Math.cos(angle) / nx;
+			sfy[j] = cycles * Math.sin(angle) / ny;
+			sphase[j] = rand.nextDouble() * 2.0 * Math.PI;
+			samplitude[j] = 0.5 + rand.nextDouble();
+			stotal += samplitude[j];
+		}
+		for (int j = 0; j < N_SURFACE; j++)
+			samplitude[j] /= stotal;
+
+		// cos(a x + b y + p) = cos(a x) cos(b y + p) - sin(a x) sin(b y + p)
+		cosx = new double[N_GRATINGS][nx];
+		sinx = new double[N_GRATINGS][nx];
+		for (int i = 0; i < N_GRATINGS; i++)
+			for (int x = 0; x < nx; x++) {
+				cosx[i][x] = Math.cos(2.0 * Math.PI * fx[i] * x);
+				sinx[i][x] = Math.sin(2.0 * Math.PI * fx[i] * x);
+			}
+		scosx = new double[N_SURFACE][nx];
+		ssinx = new double[N_SURFACE][nx];
+		for (int j = 0; j < N_SURFACE; j++)
+			for (int x = 0; x < nx; x++) {
+				scosx[j][x] = Math.cos(2.0 * Math.PI * sfx[j] * x);
+				ssinx[j][x] = Math.sin(2.0 * Math.PI * sfx[j] * x);
+			}
+	}
+
+	/**
+	 * Ground-truth depth of one row, in slice units [0..nz-1].
+	 */
+	private void getSurfaceRow(int y, double[] h) {
+		double[] cy = new double[N_SURFACE];
+		double[] sy = new double[N_SURFACE];
+		for (int j = 0; j < N_SURFACE; j++) {
+			cy[j] = Math.cos(2.0 * Math.PI * sfy[j] * y + sphase[j]);
+			sy[j] = Math.sin(2.0 * Math.PI * sfy[j] * y + sphase[j]);
+		}
+		double s;
+		for (int x = 0; x < nx; x++) {
+			s = 0.0;
+			for (int j = 0; j < N_SURFACE; j++)
+				s += samplitude[j] * (scosx[j][x] * cy[j] - ssinx[j][x] * sy[j]);
+			h[x] = (nz - 1) * 0.5 * (1.0 + s);
+		}
+	}
+
+	/**
+	 * Render one row of the slice z in [0..1]. A negative z renders the
+	 * all-in-focus specimen.
+	 */
+	private void renderRow(int y, int z, double[] h, double[][] row, Random rand) {
+		double[] cy = new double[N_GRATINGS];
+		double[] sy = new double[N_GRATINGS];
+		for (int i = 0; i < N_GRATINGS; i++) {
+			cy[i] = Math.cos(2.0 * Math.PI * fy[i] * y + phase[i]);
+			sy[i] = Math.sin(2.0 * Math.PI * fy[i] * y + phase[i]);
+		}
+		double k = -2.0 * Math.PI * Math.PI * f0 * f0;
+		double sigma, e, att, g, v;
+		for (int x = 0; x < nx; x++) {
+			sigma = (z < 0 ? 0.0 : blurPerSlice * (z - h[x]));
+			e = Math.exp(k * sigma * sigma);
+			att = 1.0;
+			for (int c = 0; c < nChannels; c++)
+				row[c][x] = 0.5;
+			for (int i = 0; i < N_GRATINGS; i++) {
+				att *= e;
+				g = att * (cosx[i][x] * cy[i] - sinx[i][x] * sy[i]);
+				for (int c = 0; c < nChannels; c++)
+					row[c][x] += amplitude[c][i] * g;
+			}
+			if (rand != null) {
+				for (int c = 0; c < nChannels; c++) {
+					v = row[c][x] + noise * rand.nextGaussian();
+					row[c][x] = (v < 0.0 ? 0.0 : (v > 1.0 ? 1.0 : v));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the ground-truth depth, in slice number [1..nz].
+	 */
+	public FloatProcessor getDepthMap() {
+		FloatProcessor fp = new FloatProcessor(nx, ny);
+		float[] pixels = (float[]) fp.getPixels();
+		double[] h = new double[nx];
+		for (int y = 0; y < ny; y++) {
+			getSurfaceRow(y, h);
+			for (int x = 0; x < nx; x++)
+				pixels[x + y * nx] = (float) (h[x] + 1.0);
+		}
+		return fp;
+	}
+
+	/**
+	 * Render the slice z, z in [1..nz] as in ImageStack.
+	 */
+	public ImageProcessor getSlice(int z) {
+		if (z < 1 || z > nz) throw new IllegalArgumentException("Invalid slice " + z);
+		return render(z - 1);
+	}
+
+	/**
+	 * Render the specimen entirely in focus, without noise.
+	 */
+	public ImageProcessor getFocused() {
+		return render(-1);
+	}
+
+	private ImageProcessor render(int z) {
+		ImageProcessor ip = createProcessor();
+		Object pixels = ip.getPixels();
+		double[] h = new double[nx];
+		double[][] row = new double[nChannels][nx];
+		Random rand = null;
+		for (int y = 0; y < ny; y++) {
+			getSurfaceRow(y, h);
+			if (z >= 0 && noise > 0.0) rand = new Random(seed + 0x9E3779B97F4A7C15L * (1 + (long) z * ny + y));
+			renderRow(y, z, h, row, rand);
+			int offset = y * nx;
+			switch (type) {
+			case ImagePlus.GRAY8:
+				for (int x = 0; x < nx; x++)
+					((byte[]) pixels)[offset + x] = (byte) Math.round(row[0][x] * 255.0);
+				break;
+			case ImagePlus.GRAY16:
+				for (int x = 0; x < nx; x++)
+					((short[]) pixels)[offset + x] = (short) Math.round(row[0][x] * 4095.0);
+				break;
+			case ImagePlus.GRAY32:
+				for (int x = 0; x < nx; x++)
+					((float[]) pixels)[offset + x] = (float) row[0][x];
+				break;
+			case ImagePlus.COLOR_RGB:
+				for (int x = 0; x < nx; x++) {
+					int r = (int) Math.round(row[0][x] * 255.0);
+					int g = (int) Math.round(row[1][x] * 255.0);
+					int b = (int) Math.round(row[2][x] * 255.0);
+					((int[]) pixels)[offset + x] = (r << 16) | (g << 8) | b;
+				}
+				break;
+			}
+		}
+		return ip;
+	}
+
+	private ImageProcessor createProcessor() {
+		switch (type) {
+		case ImagePlus.GRAY8:
+			return new ByteProcessor(nx, ny);
+		case ImagePlus.GRAY16:
+			return new ShortProcessor(nx, ny);
+		case ImagePlus.GRAY32:
+			return new FloatProcessor(nx, ny);
+		default:
+			return new ColorProcessor(nx, ny);
+		}
+	}
+
+	/**
+	 * Render the whole stack in memory.
+	 */
+	public ImageStack createStack() {
+		ImageStack stack = new ImageStack(nx, ny);
+		for (int z = 1; z <= nz; z++)
+			stack.addSlice("z" + z, getSlice(z));
+		return stack;
+	}
+
+	public ImagePlus createImagePlus(String title) {
+		return new ImagePlus(title, createStack());
+	}
+
+	/**
+	 * Write the stack slice by slice in a directory (slice-0001.tif, ...), with
+	 * the ground-truth depth (depth.tif) and the all-in-focus image
+	 * (focused.tif). Only one slice is kept in memory.
+	 *
+	 * Usage: SyntheticStack nx ny nz [8|16|32|rgb] directory [seed] [blurPerSlice]
+	 * [noise]
+	 */
+	public static void main(String[] args) {
+		if (args.length < 5) {
+			System.out.println("Usage: SyntheticStack nx ny nz [8|16|32|rgb] directory [seed] [blurPerSlice] [noise]");
+			return;
+		}
+		int nx = Integer.parseInt(args[0]);
+		int ny = Integer.parseInt(args[1]);
+		int nz = Integer.parseInt(args[2]);
+		int type;
+		if (args[3].equals("8")) type = ImagePlus.GRAY8;
+		else if (args[3].equals("16")) type = ImagePlus.GRAY16;
+		else if (args[3].equals("32")) type = ImagePlus.GRAY32;
+		else if (args[3].equalsIgnoreCase("rgb")) type = ImagePlus.COLOR_RGB;
+		else
+			throw new IllegalArgumentException("Invalid type " + args[3]);
+		File dir = new File(args[4]);
+		dir.mkdirs();
+		long seed = (args.length > 5 ? Long.parseLong(args[5]) : 0);
+		SyntheticStack synthetic = new SyntheticStack(nx, ny, nz, type, seed);
+		if (args.length > 6) synthetic.setBlurPerSlice(Double.parseDouble(args[6]));
+		if (args.length > 7) synthetic.setNoise(Double.parseDouble(args[7]));
+
+		String digits = "%0" + Math.max(4, Integer.toString(nz).length()) + "d";
+		for (int z = 1; z <= nz; z++) {
+			String name = "slice-" + String.format(digits, z) + ".tif";
+			new FileSaver(new ImagePlus(name, synthetic.getSlice(z))).saveAsTiff(new File(dir, name).getPath());
+		}
+		new FileSaver(new ImagePlus("depth", synthetic.getDepthMap())).saveAsTiff(new File(dir, "depth.tif").getPath());
+		new FileSaver(new ImagePlus("focused", synthetic.getFocused())).saveAsTiff(new File(dir, "focused.tif").getPath());
+	}
+}
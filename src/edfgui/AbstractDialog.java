@@ -66,6 +66,7 @@ public abstract class AbstractDialog extends JFrame {
 	public Parameters parameters;
 	public Thread threadEdf;
 	public Thread threadTopoProc;
+	public Thread threadPreview;
 	public JProgressBar jProgressBar = null;
 	public Timer timer;
 	public JLabel jLabelMemMessage = null;
@@ -122,7 +123,15 @@ public abstract class AbstractDialog extends JFrame {
 	 * Cleanup properly and stop the threads.
 	 */
 	public void cleanup() {
+		if (threadEdf instanceof ThreadEdf) {
+			((ThreadEdf) threadEdf).cancel();
+		}
+		if (threadPreview instanceof ThreadPreview) {
+			((ThreadPreview) threadPreview).cancel();
+		}
 		threadEdf = null;
+		threadPreview = null;
+		SharpnessCache.getInstance().clear();
 		threadTopoProc = null;
 		if (timer != null) {
 			timer.stop();
@@ -80,10 +80,15 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.JToolBar;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import edf.FocusMeasures;
 import edf.Tools;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.WindowManager;
 
 public class AdvancedDialog extends AbstractDialog
 		implements ListSelectionListener, ActionListener, ItemListener, WindowListener {
@@ -91,6 +96,7 @@ public class AdvancedDialog extends AbstractDialog
 	private NumberFormat percentFormat;
 	private DecimalFormat decimalFormat;
 	private MyVerifier verifier = new MyVerifier();
+	private PreviewListener previewListener = new PreviewListener();
 
 	private String filename = System.getProperty("user.dir") + "/plugins/ExtendedDepthField.txt";
 
@@ -106,6 +112,11 @@ public class AdvancedDialog extends AbstractDialog
 	private String STR_OUTPUT_COLOR = "Color RGB";
 	private String STR_OUTPUT_GRAYSCALE = "Grayscale";
 
+	private String STR_CHANNELS_SEPARATE = "Separate channels";
+	private String STR_CHANNELS_MEAN = "Mean of the channels";
+	private String STR_WHOLE_FRAMES = "Whole frames";
+	private String STR_WHOLE_STACK = "Whole stack";
+
 	private boolean isColor = false;
 
 	private JPanel jContentPane = null;
@@ -133,8 +144,10 @@ public class AdvancedDialog extends AbstractDialog
 	private JPanel jPanelComplexWT = null;
 	private JPanel jPanelRealWT = null;
 	private JPanel jPanelHeightMapProcessing = null;
+	private JPanel jPanelHyperstack = null;
 
 	private JButton jButtonRun = null;
+	private JButton jButtonPreview = null;
 	private JButton jButtonClose = null;
 	private JButton jButtonCredits = null;
 	private JButton jButtonSaveSettings = null;
@@ -153,6 +166,7 @@ public class AdvancedDialog extends AbstractDialog
 	private JCheckBox jCheckBoxTopoGauss = null;
 	private JCheckBox jCheckBoxSubBandCC = null;
 	private JCheckBox jCheckBoxMajCC = null;
+	private JCheckBox jCheckBoxOffHeap = null;
 	private JCheckBox jCheckBoxDenoising = null;
 
 	private LogPane logPane = null;
@@ -167,6 +181,10 @@ public class AdvancedDialog extends AbstractDialog
 	private JComboBox jComboBoxWTScales = null;
 	private JComboBox jComboBoxWT = null;
 	private JComboBox jComboBoxSplineOrder = null;
+	private JComboBox jComboBoxReferenceChannel = null;
+	private JComboBox jComboBoxTileSize = null;
+	private JTextField jTextFieldTileTolerance = null;
+	private JComboBox jComboBoxDepthWindow = null;
 
 	private JLabel jLabelEdfVar1 = null;
 	private JLabel jLabelEdf = null;
@@ -337,7 +355,10 @@ public class AdvancedDialog extends AbstractDialog
 			addComponent(jPanelButtons, 0, 1, 1, 1, 5, getJButtonClose());
 			gbConstraints.anchor = GridBagConstraints.EAST;
 			gbLayout.setConstraints(getJButtonClose(), gbConstraints);
-			addComponent(jPanelButtons, 0, 2, 1, 1, 5, getJButtonRun());
+			addComponent(jPanelButtons, 0, 2, 1, 1, 5, getJButtonPreview());
+			gbConstraints.anchor = GridBagConstraints.EAST;
+			gbLayout.setConstraints(getJButtonPreview(), gbConstraints);
+			addComponent(jPanelButtons, 0, 3, 1, 1, 5, getJButtonRun());
 			gbConstraints.anchor = GridBagConstraints.EAST;
 			gbConstraints.insets = new Insets(5, 5, 5, 10);
 			gbLayout.setConstraints(getJButtonRun(), gbConstraints);
@@ -360,6 +381,20 @@ public class AdvancedDialog extends AbstractDialog
 		return jButtonRun;
 	}
 
+	/**
+	 * This method initializes jButtonPreview
+	 * 
+	 * @return javax.swing.JButton
+	 */
+	private JButton getJButtonPreview() {
+		if (jButtonPreview == null) {
+			jButtonPreview = new JButton();
+			jButtonPreview.setText("Preview");
+			jButtonPreview.addActionListener(this);
+		}
+		return jButtonPreview;
+	}
+
 	/**
 	 * This method initializes jButtonClose
 	 * 
@@ -565,10 +600,131 @@ public class AdvancedDialog extends AbstractDialog
 			gbConstraints.weighty = 1.0;
 			gbLayout.setConstraints(getJPanelEdfParams(), gbConstraints);
 
+			addComponent(jPanelEdf, 2, 0, 2, 1, 5, getJPanelHyperstack());
+			gbConstraints.fill = GridBagConstraints.HORIZONTAL;
+			gbConstraints.weightx = 1.0;
+			gbLayout.setConstraints(getJPanelHyperstack(), gbConstraints);
+
 		}
 		return jPanelEdf;
 	}
 
+	/**
+	 * This method initializes jPanelHyperstack, the options of the hyperstacks
+	 * with several channels or frames.
+	 * 
+	 * @return javax.swing.JPanel
+	 */
+	private JPanel getJPanelHyperstack() {
+		if (jPanelHyperstack == null) {
+			JLabel jLabelReference = new JLabel("Sharpness of");
+			jPanelHyperstack = new JPanel(gbLayout);
+			jPanelHyperstack.setName("jPanelHyperstack");
+			jPanelHyperstack.setBorder(BorderFactory.createTitledBorder("Hyperstack"));
+			addComponent(jPanelHyperstack, 0, 0, 1, 1, 5, jLabelReference);
+			gbConstraints.anchor = GridBagConstraints.EAST;
+			gbLayout.setConstraints(jLabelReference, gbConstraints);
+			addComponent(jPanelHyperstack, 0, 1, 1, 1, 5, getJComboBoxReferenceChannel());
+			gbConstraints.weightx = 1.0;
+			gbLayout.setConstraints(getJComboBoxReferenceChannel(), gbConstraints);
+			JLabel jLabelTileSize = new JLabel("Recompute by tiles of");
+			addComponent(jPanelHyperstack, 1, 0, 1, 1, 5, jLabelTileSize);
+			gbConstraints.anchor = GridBagConstraints.EAST;
+			gbLayout.setConstraints(jLabelTileSize, gbConstraints);
+			addComponent(jPanelHyperstack, 1, 1, 1, 1, 5, getJComboBoxTileSize());
+			JLabel jLabelTileTolerance = new JLabel("Tile tolerance (gray levels)");
+			addComponent(jPanelHyperstack, 2, 0, 1, 1, 5, jLabelTileTolerance);
+			gbConstraints.anchor = GridBagConstraints.EAST;
+			gbLayout.setConstraints(jLabelTileTolerance, gbConstraints);
+			addComponent(jPanelHyperstack, 2, 1, 1, 1, 5, getJTextFieldTileTolerance());
+			JLabel jLabelDepthWindow = new JLabel("Search around the previous frame");
+			addComponent(jPanelHyperstack, 3, 0, 1, 1, 5, jLabelDepthWindow);
+			gbConstraints.anchor = GridBagConstraints.EAST;
+			gbLayout.setConstraints(jLabelDepthWindow, gbConstraints);
+			addComponent(jPanelHyperstack, 3, 1, 1, 1, 5, getJComboBoxDepthWindow());
+		}
+		return jPanelHyperstack;
+	}
+
+	/**
+	 * This method initializes jComboBoxReferenceChannel: the channels are
+	 * processed separately, or all with the height-map of their mean or of
+	 * one of them.
+	 * 
+	 * @return javax.swing.JComboBox
+	 */
+	private JComboBox getJComboBoxReferenceChannel() {
+		if (jComboBoxReferenceChannel == null) {
+			jComboBoxReferenceChannel = new JComboBox();
+			jComboBoxReferenceChannel.addItem(STR_CHANNELS_SEPARATE);
+			jComboBoxReferenceChannel.addItem(STR_CHANNELS_MEAN);
+			ImagePlus imp = ThreadPreview.getSource(WindowManager.getCurrentImage());
+			int nc = (imp == null ? 1 : imp.getNChannels());
+			for (int c = 1; c <= nc; c++)
+				jComboBoxReferenceChannel.addItem("Channel " + c);
+			jComboBoxReferenceChannel.setEnabled(nc > 1);
+		}
+		return jComboBoxReferenceChannel;
+	}
+
+	/**
+	 * This method initializes jComboBoxTileSize: the frames of a time-lapse
+	 * are recomputed only in the tiles which have changed since the previous
+	 * frame, or as a whole.
+	 * 
+	 * @return javax.swing.JComboBox
+	 */
+	private JComboBox getJComboBoxTileSize() {
+		if (jComboBoxTileSize == null) {
+			jComboBoxTileSize = new JComboBox();
+			jComboBoxTileSize.addItem(STR_WHOLE_FRAMES);
+			jComboBoxTileSize.addItem("16");
+			jComboBoxTileSize.addItem("32");
+			jComboBoxTileSize.addItem("64");
+			jComboBoxTileSize.addItem("128");
+			ImagePlus imp = ThreadPreview.getSource(WindowManager.getCurrentImage());
+			jComboBoxTileSize.setEnabled(imp != null && imp.getNFrames() > 1);
+		}
+		return jComboBoxTileSize;
+	}
+
+	/**
+	 * This method initializes jTextFieldTileTolerance
+	 * 
+	 * @return javax.swing.JTextField
+	 */
+	private JTextField getJTextFieldTileTolerance() {
+		if (jTextFieldTileTolerance == null) {
+			jTextFieldTileTolerance = new JTextField("1.0");
+			jTextFieldTileTolerance.setPreferredSize(new java.awt.Dimension(50, 20));
+			jTextFieldTileTolerance.setInputVerifier(verifier);
+			jTextFieldTileTolerance.addActionListener(verifier);
+			jTextFieldTileTolerance.setEnabled(getJComboBoxTileSize().isEnabled());
+		}
+		return jTextFieldTileTolerance;
+	}
+
+	/**
+	 * This method initializes jComboBoxDepthWindow: number of slices searched
+	 * on each side of the height-map of the previous frame of a time-lapse,
+	 * or the whole stack.
+	 * 
+	 * @return javax.swing.JComboBox
+	 */
+	private JComboBox getJComboBoxDepthWindow() {
+		if (jComboBoxDepthWindow == null) {
+			jComboBoxDepthWindow = new JComboBox();
+			jComboBoxDepthWindow.addItem(STR_WHOLE_STACK);
+			jComboBoxDepthWindow.addItem("1");
+			jComboBoxDepthWindow.addItem("2");
+			jComboBoxDepthWindow.addItem("3");
+			jComboBoxDepthWindow.addItem("5");
+			jComboBoxDepthWindow.addItem("10");
+			jComboBoxDepthWindow.setEnabled(getJComboBoxTileSize().isEnabled());
+		}
+		return jComboBoxDepthWindow;
+	}
+
 	/**
 	 * This method initializes jPanelColorTreatment
 	 * 
@@ -730,7 +886,10 @@ public class AdvancedDialog extends AbstractDialog
 			jComboBoxEdf.addItem(STR_VARIANCE);
 			jComboBoxEdf.addItem(STR_REAL_WV);
 			jComboBoxEdf.addItem(STR_COMPLEX_WV);
+			for (String name : FocusMeasures.getNames())
+				jComboBoxEdf.addItem(name);
 			jComboBoxEdf.addActionListener(this);
+			jComboBoxEdf.addActionListener(previewListener);
 		}
 		return jComboBoxEdf;
 	}
@@ -794,6 +953,7 @@ public class AdvancedDialog extends AbstractDialog
 			jComboBoxVarWindowSize.addItem(new Integer(5));
 			jComboBoxVarWindowSize.addItem(new Integer(7));
 			jComboBoxVarWindowSize.addItem(new Integer(9));
+			jComboBoxVarWindowSize.addActionListener(previewListener);
 		}
 		return jComboBoxVarWindowSize;
 	}
@@ -810,6 +970,7 @@ public class AdvancedDialog extends AbstractDialog
 			jComboBoxColorTreatment.addItem(STR_FIXED_WEIGHTS);
 //			jComboBoxColorTreatment.addItem(STR_MEAN_WEIGHTS);
 			jComboBoxColorTreatment.addActionListener(this);
+			jComboBoxColorTreatment.addActionListener(previewListener);
 		}
 		return jComboBoxColorTreatment;
 	}
@@ -943,6 +1104,7 @@ public class AdvancedDialog extends AbstractDialog
 			jCheckBoxReassignment.setSelected(false);
 			jCheckBoxReassignment.setEnabled(false);
 			jCheckBoxReassignment.addItemListener(this);
+			jCheckBoxReassignment.addActionListener(previewListener);
 		}
 		return jCheckBoxReassignment;
 	}
@@ -1064,6 +1226,7 @@ public class AdvancedDialog extends AbstractDialog
 			gbLayout.setConstraints(jLabelEdfWv2, gbConstraints);
 			addComponent(jPanelEdfWvCommon, 1, 1, 1, 1, 5, getJCheckBoxSubBandCC());
 			addComponent(jPanelEdfWvCommon, 2, 1, 1, 1, 5, getJCheckBoxMajCC());
+			addComponent(jPanelEdfWvCommon, 3, 1, 1, 1, 5, getJCheckBoxOffHeap());
 		}
 		return jPanelEdfWvCommon;
 	}
@@ -1092,6 +1255,7 @@ public class AdvancedDialog extends AbstractDialog
 			jComboBoxComplexFilterLen.addItem(new Integer(6));
 			jComboBoxComplexFilterLen.addItem(new Integer(14));
 			jComboBoxComplexFilterLen.addItem(new Integer(22));
+			jComboBoxComplexFilterLen.addActionListener(previewListener);
 		}
 		return jComboBoxComplexFilterLen;
 	}
@@ -1107,6 +1271,7 @@ public class AdvancedDialog extends AbstractDialog
 			for (int i = 1; i <= nScales; i++) {
 				jComboBoxWTScales.addItem(new Integer(i));
 			}
+			jComboBoxWTScales.addActionListener(previewListener);
 		}
 		return jComboBoxWTScales;
 	}
@@ -1271,6 +1436,7 @@ public class AdvancedDialog extends AbstractDialog
 	private JCheckBox getJCheckBoxSubBandCC() {
 		if (jCheckBoxSubBandCC == null) {
 			jCheckBoxSubBandCC = new JCheckBox("Sub-band consistency check");
+			jCheckBoxSubBandCC.addActionListener(previewListener);
 		}
 		return jCheckBoxSubBandCC;
 	}
@@ -1283,10 +1449,24 @@ public class AdvancedDialog extends AbstractDialog
 	private JCheckBox getJCheckBoxMajCC() {
 		if (jCheckBoxMajCC == null) {
 			jCheckBoxMajCC = new JCheckBox("Majority consistency check");
+			jCheckBoxMajCC.addActionListener(previewListener);
 		}
 		return jCheckBoxMajCC;
 	}
 
+	/**
+	 * This method initializes jCheckBoxOffHeap: the stacks of wavelet
+	 * coefficients are kept outside of the Java heap.
+	 * 
+	 * @return javax.swing.JCheckBox
+	 */
+	private JCheckBox getJCheckBoxOffHeap() {
+		if (jCheckBoxOffHeap == null) {
+			jCheckBoxOffHeap = new JCheckBox("Coefficients outside of the heap");
+		}
+		return jCheckBoxOffHeap;
+	}
+
 	/**
 	 * This method initializes jComboBoxSplineOrder
 	 * 
@@ -1299,6 +1479,7 @@ public class AdvancedDialog extends AbstractDialog
 			jComboBoxSplineOrder.addItem(new Integer(1));
 			jComboBoxSplineOrder.addItem(new Integer(3));
 			jComboBoxSplineOrder.addItem(new Integer(5));
+			jComboBoxSplineOrder.addActionListener(previewListener);
 		}
 		return jComboBoxSplineOrder;
 	}
@@ -1379,6 +1560,10 @@ public class AdvancedDialog extends AbstractDialog
 				jTable.setRowSelectionInterval(3, 3);
 			}
 		}
+		else if (source == jButtonPreview) {
+			startPreview();
+			super.timer.start();
+		}
 		else if (source == jButtonTopoApply) {
 			getParameters();
 			if (threadTopoProc != null) {
@@ -1447,6 +1632,15 @@ public class AdvancedDialog extends AbstractDialog
 				this.jCheckBoxHeightMap.setSelected(false);
 				waveletMethod = true;
 			}
+			else if (FocusMeasures.get(edfName) != null) {
+				this.jTable.setValueAt(edfName, 0, 1);
+				((CardLayout) jPanelEdfParams.getLayout()).show(jPanelEdfParams, jPanelVarianceParams.getName());
+				((CardLayout) jPanelDenoising.getLayout()).show(jPanelDenoising, jPanelDenoisingGeneral.getName());
+				this.jCheckBoxReassignment.setEnabled(false);
+				this.jCheckBoxReassignment.setSelected(false);
+				this.jPanelEdfParams.setVisible(true);
+				waveletMethod = false;
+			}
 			else {
 				throw new RuntimeException("Unknown error: unknown source.");
 			}
@@ -1475,6 +1669,42 @@ public class AdvancedDialog extends AbstractDialog
 		}
 	}
 
+	/**
+	 * Cancel the running preview and start a new one with the current
+	 * parameters.
+	 */
+	private void startPreview() {
+		ImagePlus imp = ThreadPreview.getSource(WindowManager.getCurrentImage());
+		if (imp == null) {
+			IJ.error("The input image is not a z-stack of images.");
+			return;
+		}
+		getParameters();
+		if (threadPreview instanceof ThreadPreview) {
+			((ThreadPreview) threadPreview).cancel();
+		}
+		super.threadPreview = new ThreadPreview(imp, parameters);
+		super.threadPreview.setPriority(Thread.MIN_PRIORITY);
+		super.threadPreview.start();
+	}
+
+	/**
+	 * Restart the preview when a parameter of the sharpness estimation
+	 * changes, if the preview window is open.
+	 */
+	class PreviewListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			if (threadPreview != null && (threadPreview.isAlive() || ThreadPreview.isShown())) {
+				// After the other listeners, which update the dependent options
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						startPreview();
+					}
+				});
+			}
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -1685,6 +1915,10 @@ public class AdvancedDialog extends AbstractDialog
 		else if (strTemp.equalsIgnoreCase(STR_COMPLEX_WV)) {
 			parameters.edfMethod = ExtendedDepthOfField.COMPLEX_WAVELETS;
 		}
+		else if (FocusMeasures.get(strTemp) != null) {
+			parameters.edfMethod = ExtendedDepthOfField.FOCUS_MEASURE;
+			parameters.focusMeasure = strTemp;
+		}
 		else {
 			throw new RuntimeException("Error in string.");
 		}
@@ -1702,8 +1936,26 @@ public class AdvancedDialog extends AbstractDialog
 			throw new RuntimeException("Error in string.");
 		}
 
+		int reference = this.jComboBoxReferenceChannel.getSelectedIndex();
+		if (reference == 0) {
+			parameters.referenceChannel = Parameters.CHANNELS_SEPARATE;
+		}
+		else if (reference == 1) {
+			parameters.referenceChannel = Parameters.CHANNELS_MEAN;
+		}
+		else {
+			parameters.referenceChannel = reference - 1;
+		}
+
+		strTemp = (String) this.jComboBoxTileSize.getSelectedItem();
+		parameters.tileSize = (strTemp.equals(STR_WHOLE_FRAMES) ? 0 : Integer.parseInt(strTemp));
+		parameters.tileTolerance = Double.parseDouble(this.jTextFieldTileTolerance.getText());
+		strTemp = (String) this.jComboBoxDepthWindow.getSelectedItem();
+		parameters.depthWindow = (strTemp.equals(STR_WHOLE_STACK) ? 0 : Integer.parseInt(strTemp));
+
 		parameters.subBandCC = this.jCheckBoxSubBandCC.isSelected();
 		parameters.majCC = this.jCheckBoxMajCC.isSelected();
+		parameters.offHeap = this.jCheckBoxOffHeap.isSelected();
 		parameters.doDenoising = this.jCheckBoxDenoising.isSelected();
 		parameters.doMedian = this.jCheckBoxTopoMedian.isSelected();
 		parameters.doMorphoOpen = this.jCheckBoxTopoMorphOpen.isSelected();
@@ -1728,9 +1980,38 @@ public class AdvancedDialog extends AbstractDialog
 
 	private void updateGUIFromParameters() {
 
-		jComboBoxEdf.setSelectedIndex(parameters.edfMethod);
+		if (parameters.edfMethod == ExtendedDepthOfField.FOCUS_MEASURE) jComboBoxEdf.setSelectedItem(parameters.focusMeasure);
+		else
+			jComboBoxEdf.setSelectedIndex(parameters.edfMethod);
 		jComboBoxColorTreatment.setSelectedIndex(parameters.colorConversionMethod);
 		jComboBoxOutputColor.setSelectedIndex(parameters.outputColorMap);
+		if (parameters.referenceChannel == Parameters.CHANNELS_MEAN)
+			jComboBoxReferenceChannel.setSelectedIndex(1);
+		else if (parameters.referenceChannel > 0 && parameters.referenceChannel + 1 < jComboBoxReferenceChannel.getItemCount())
+			jComboBoxReferenceChannel.setSelectedIndex(parameters.referenceChannel + 1);
+		else
+			jComboBoxReferenceChannel.setSelectedIndex(0);
+		if (parameters.tileSize <= 0)
+			jComboBoxTileSize.setSelectedIndex(0);
+		else {
+			String tileSize = "" + parameters.tileSize;
+			jComboBoxTileSize.setSelectedItem(tileSize);
+			if (!tileSize.equals(jComboBoxTileSize.getSelectedItem())) {
+				jComboBoxTileSize.addItem(tileSize);
+				jComboBoxTileSize.setSelectedItem(tileSize);
+			}
+		}
+		jTextFieldTileTolerance.setText("" + parameters.tileTolerance);
+		if (parameters.depthWindow <= 0)
+			jComboBoxDepthWindow.setSelectedIndex(0);
+		else {
+			String depthWindow = "" + parameters.depthWindow;
+			jComboBoxDepthWindow.setSelectedItem(depthWindow);
+			if (!depthWindow.equals(jComboBoxDepthWindow.getSelectedItem())) {
+				jComboBoxDepthWindow.addItem(depthWindow);
+				jComboBoxDepthWindow.setSelectedItem(depthWindow);
+			}
+		}
 
 		jCheckBoxReassignment.setSelected(parameters.reassignment);
 
@@ -1742,6 +2023,7 @@ public class AdvancedDialog extends AbstractDialog
 		jCheckBoxTopoGauss.setSelected(parameters.doGaussian);
 		jCheckBoxSubBandCC.setSelected(parameters.subBandCC);
 		jCheckBoxMajCC.setSelected(parameters.majCC);
+		jCheckBoxOffHeap.setSelected(parameters.offHeap);
 		jCheckBoxHeightMap.setSelected(parameters.showTopology);
 		jCheckBoxTopology3dView.setSelected(parameters.show3dView);
 
@@ -1771,6 +2053,11 @@ public class AdvancedDialog extends AbstractDialog
 			getParameters();
 
 			properties.setProperty("edfmethod", "" + parameters.edfMethod);
+			properties.setProperty("focusmeasure", parameters.focusMeasure);
+			properties.setProperty("referencechannel", "" + parameters.referenceChannel);
+			properties.setProperty("tilesize", "" + parameters.tileSize);
+			properties.setProperty("tiletolerance", "" + parameters.tileTolerance);
+			properties.setProperty("depthwindow", "" + parameters.depthWindow);
 			properties.setProperty("colorconversion", "" + parameters.colorConversionMethod);
 			properties.setProperty("outputcolormap", "" + parameters.outputColorMap);
 
@@ -1785,6 +2072,7 @@ public class AdvancedDialog extends AbstractDialog
 			properties.setProperty("showtopo", "" + parameters.showTopology);
 			properties.setProperty("show3d", "" + parameters.show3dView);
 			properties.setProperty("reassignment", "" + parameters.reassignment);
+			properties.setProperty("offheap", "" + parameters.offHeap);
 
 			properties.setProperty("nscales", "" + parameters.nScales);
 			properties.setProperty("varwindow", "" + parameters.varWindowSize);
@@ -1827,6 +2115,15 @@ public class AdvancedDialog extends AbstractDialog
 
 			s = properties.getProperty("edfmethod", "" + parameters.edfMethod);
 			parameters.edfMethod = Integer.parseInt(s);
+			parameters.focusMeasure = properties.getProperty("focusmeasure", parameters.focusMeasure);
+			s = properties.getProperty("referencechannel", "" + parameters.referenceChannel);
+			parameters.referenceChannel = Integer.parseInt(s);
+			s = properties.getProperty("tilesize", "" + parameters.tileSize);
+			parameters.tileSize = Integer.parseInt(s);
+			s = properties.getProperty("tiletolerance", "" + parameters.tileTolerance);
+			parameters.tileTolerance = Double.parseDouble(s);
+			s = properties.getProperty("depthwindow", "" + parameters.depthWindow);
+			parameters.depthWindow = Integer.parseInt(s);
 			s = properties.getProperty("colorconversion", "" + parameters.colorConversionMethod);
 			parameters.colorConversionMethod = Integer.parseInt(s);
 			s = properties.getProperty("outputcolormap", "" + parameters.outputColorMap);
@@ -1854,6 +2151,8 @@ public class AdvancedDialog extends AbstractDialog
 			parameters.show3dView = Boolean.valueOf(s).booleanValue();
 			s = properties.getProperty("reassignment", "" + parameters.reassignment);
 			parameters.reassignment = Boolean.valueOf(s).booleanValue();
+			s = properties.getProperty("offheap", "" + parameters.offHeap);
+			parameters.offHeap = Boolean.valueOf(s).booleanValue();
 
 			s = properties.getProperty("nscales", "" + parameters.nScales);
 			parameters.nScales = Integer.parseInt(s);
@@ -1971,6 +2270,9 @@ public class AdvancedDialog extends AbstractDialog
 			else if (input == jTextFieldDenoisingSigma) {
 				return checkSigmaField(changeIt);
 			}
+			else if (input == jTextFieldTileTolerance) {
+				return checkTileToleranceField(changeIt);
+			}
 			else {
 				return true; // shouldn't happen
 			}
@@ -2081,6 +2383,35 @@ public class AdvancedDialog extends AbstractDialog
 			return wasValid;
 		}
 
+		/**
+		 */
+		protected boolean checkTileToleranceField(boolean change) {
+			boolean wasValid = true;
+			double tolerance = parameters.tileTolerance;
+
+//			Parse the value.
+			try {
+				tolerance = decimalFormat.parse(jTextFieldTileTolerance.getText()).doubleValue();
+			}
+			catch (ParseException pe) {
+				wasValid = false;
+			}
+
+//			Value was invalid.
+			if (tolerance < 0.0) {
+				wasValid = false;
+				if (change) tolerance = 0.0;
+			}
+
+//			Whether value was valid or not, format it nicely.
+			if (change) {
+				jTextFieldTileTolerance.setText(decimalFormat.format(tolerance));
+				jTextFieldTileTolerance.selectAll();
+			}
+
+			return wasValid;
+		}
+
 		/**
 		 * 
 		 */
@@ -50,35 +50,286 @@ import imageware.Builder;
 import imageware.ImageWare;
 import surfacemap.SurfaceMap3D;
 import edf.AbstractEdfAlgorithm;
+import edf.CancellationToken;
 import edf.Color2BW;
+import edf.DiskCache;
 import edf.EdfComplexWavelets;
+import edf.EdfEvents;
+import edf.EdfFocusMeasure;
+import edf.EdfMonitor;
 import edf.EdfRealWavelets;
 import edf.EdfSobel;
 import edf.EdfVariance;
+import edf.FocusMeasure;
+import edf.FocusMeasures;
+import edf.ImageViews;
+import edf.JobMetrics;
 import edf.LogSingleton;
 import edf.MorphologicalOperators;
 import edf.PostProcessing;
+import edf.Pyramid;
 import edf.Tools;
 
 public class ExtendedDepthOfField {
 
-	static final int SOBEL = 0;
-	static final int VARIANCE = 1;
-	static final int REAL_WAVELETS = 2;
-	static final int COMPLEX_WAVELETS = 3;
+	public static final int SOBEL = 0;
+	public static final int VARIANCE = 1;
+	public static final int REAL_WAVELETS = 2;
+	public static final int COMPLEX_WAVELETS = 3;
+	public static final int FOCUS_MEASURE = 4;
+
+	private static final String[] METHOD_NAMES = { "Sobel", "Variance", "Real wavelets", "Complex wavelets" };
 
 	private Parameters parameters = null;
 	private ImagePlus imp = null;
+	private JobMetrics metrics = null;
+	private CancellationToken token = new CancellationToken();
+	private boolean sessionCache = true;
 
+	/**
+	 * Constructor, the job is registered in the EdfMonitor when compute(),
+	 * computeSharpness() or computeComposite() starts it.
+	 */
 	public ExtendedDepthOfField(ImagePlus imp, Parameters parameters) {
 		this.parameters = parameters;
 		this.imp = imp;
+		String method = (parameters.edfMethod >= 0 && parameters.edfMethod < METHOD_NAMES.length
+				? METHOD_NAMES[parameters.edfMethod] : "" + parameters.edfMethod);
+		if (parameters.edfMethod == FOCUS_MEASURE) method = parameters.focusMeasure;
+		this.metrics = EdfMonitor.getInstance().create(imp.getTitle() + " (" + method + ")");
+		this.metrics.setImage(method, imp.getWidth(), imp.getHeight(), imp.getStackSize());
+	}
+
+	public JobMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Token checked at each stage, slice and wavelet level; cancel it to stop
+	 * the processing with a CancellationException.
+	 */
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
+	public void setCancellationToken(CancellationToken token) {
+		this.token = token;
 	}
 
 	/**
-	 * Run the main processing.
+	 * Use the SharpnessCache (default), disable it for the jobs which are
+	 * never rerun with other post-processing parameters.
+	 */
+	public void setSessionCache(boolean sessionCache) {
+		this.sessionCache = sessionCache;
+	}
+
+	private void startStage(String stage) {
+		token.checkpoint(stage, 0, 1);
+		metrics.startStage(stage);
+	}
+
+	/**
+	 * Run the main processing and show the results.
 	 */
 	public void process() {
+		ImagePlus[] out = compute();
+		ImagePlus impComposite = out[0];
+		ImagePlus impHeightMap = out[1];
+
+		if (impHeightMap != null) {
+			impHeightMap.show();
+			impHeightMap.updateAndDraw();
+
+			if (parameters.show3dView) {
+				SurfaceMap3D viewer = new SurfaceMap3D(impHeightMap, impComposite);
+				Thread thread = new Thread(viewer);
+				thread.start();
+			}
+		}
+
+		impComposite.show();
+		impComposite.updateAndDraw();
+
+		LogSingleton log = LogSingleton.getInstance();
+		log.start("Finished.");
+		log.setProgessLength(100);
+		log.append("");
+	}
+
+	/**
+	 * Run the main processing without displaying anything. The memory report
+	 * of the job is stored in the "Info" property of the results. If the image
+	 * and the sharpness parameters are those of the last run, the results of
+	 * the sharpness estimation are taken from the SharpnessCache and only the
+	 * topology post-processing is run. If the DiskCache is enabled and holds
+	 * the results of the same stack and parameters, they are returned without
+	 * processing.
+	 * 
+	 * @return the composite image and the post-processed height-map, the
+	 *         height-map is null if it is not requested by the parameters.
+	 */
+	public ImagePlus[] compute() {
+		metrics.start();
+		try {
+			DiskCache disk = DiskCache.getInstance();
+			String key = (disk.isEnabled() ? DiskCache.key(imp, parameters.getCanonicalString()) : null);
+			ImagePlus[] cached = (key == null ? null : disk.get(key));
+			if (cached != null) {
+				LogSingleton.getInstance().append("Results read from the cache " + disk.getDirectory());
+				metrics.complete();
+				return cached;
+			}
+			SharpnessCache cache = SharpnessCache.getInstance();
+			ImageWare[] ima = (sessionCache ? cache.get(imp, parameters) : null);
+			if (ima == null) {
+				ima = sharpness();
+				if (sessionCache) cache.put(imp, parameters, ima);
+			}
+			else {
+				LogSingleton log = LogSingleton.getInstance();
+				log.setStartTime((double) System.currentTimeMillis());
+				log.append("Sharpness estimation of the last run reused.");
+			}
+			ImagePlus[] out = composite(ima);
+			metrics.complete();
+			String report = metrics.getMemoryReport();
+			LogSingleton.getInstance().append(report);
+			for (ImagePlus result : out)
+				if (result != null) result.setProperty("Info", report);
+			if (key != null) disk.put(key, out);
+			return out;
+		}
+		catch (RuntimeException ex) {
+			metrics.fail(ex);
+			throw ex;
+		}
+		catch (Error ex) {
+			metrics.fail(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Run the color conversion, the sharpness estimation and the reassignment.
+	 * 
+	 * @return the grayscale fused image and the map of the selected slices, both
+	 *         of the size of the input image. The map contains the slice numbers
+	 *         starting at 1, except for the wavelet methods without reassignment
+	 *         where it starts at 0.
+	 */
+	public ImageWare[] computeSharpness() {
+		metrics.start();
+		try {
+			ImageWare[] ima = sharpness();
+			metrics.complete();
+			LogSingleton.getInstance().append(metrics.getMemoryReport());
+			return ima;
+		}
+		catch (RuntimeException ex) {
+			metrics.fail(ex);
+			throw ex;
+		}
+		catch (Error ex) {
+			metrics.fail(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Build the composite image and the post-processed height-map from the
+	 * results of computeSharpness(), the height-map is modified.
+	 */
+	public ImagePlus[] computeComposite(ImageWare[] ima) {
+		if (!JobMetrics.QUEUED.equals(metrics.getState())) return composite(ima);
+		metrics.start();
+		try {
+			ImagePlus[] out = composite(ima);
+			metrics.complete();
+			return out;
+		}
+		catch (RuntimeException ex) {
+			metrics.fail(ex);
+			throw ex;
+		}
+		catch (Error ex) {
+			metrics.fail(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Build the composite image and the post-processed height-map.
+	 */
+	private ImagePlus[] composite(ImageWare[] ima) {
+		LogSingleton log = LogSingleton.getInstance();
+		boolean waveletMethod = (parameters.edfMethod == REAL_WAVELETS || parameters.edfMethod == COMPLEX_WAVELETS);
+
+		ImagePlus impComposite = null;
+		ImagePlus impHeightMap = null;
+
+		if (parameters.color && parameters.outputColorMap == Parameters.COLOR_RGB) {
+			ColorProcessor cp;
+			if ((waveletMethod && parameters.reassignment) || !waveletMethod) {
+				cp = PostProcessing.reassignmentColor(ima[1], imp.getStack());
+				impComposite = new ImagePlus("Output", cp);
+			}
+			else {
+				impComposite = new ImagePlus("Output", ImageViews.getStack(ima[0]));
+			}
+		}
+		else {
+			impComposite = new ImagePlus("Output", ImageViews.getStack(ima[0]));
+		}
+
+		// Topology post-processing.
+		if ((waveletMethod && parameters.reassignment) || (!waveletMethod)) {
+
+			if (parameters.showTopology) {
+
+				startStage(JobMetrics.TOPOLOGY);
+
+				if (parameters.doMedian) {
+					log.start("Median filter...");
+
+					ima[1] = MorphologicalOperators.doMedian(ima[1], parameters.medianWindowSize, token);
+					log.acknowledge();
+
+				}
+
+				if (parameters.doMorphoClose) {
+					log.start("Morphological close...");
+
+					ima[1] = MorphologicalOperators.doClose(ima[1], token);
+
+					log.acknowledge();
+				}
+
+				if (parameters.doMorphoOpen) {
+					log.start("Morphological open ...");
+
+					ima[1] = MorphologicalOperators.doOpen(ima[1], token);
+
+					log.acknowledge();
+				}
+
+				if (parameters.doGaussian) {
+					log.start("Post-processing on the map: Gaussian filter of sigma: " + parameters.sigma);
+					EdfEvents event = EdfEvents.operator("Gaussian", ima[1].getSizeX(), ima[1].getSizeY());
+					ima[1].smoothGaussian(parameters.sigma);
+					EdfEvents.end(event);
+					log.acknowledge();
+				}
+
+				impHeightMap = new ImagePlus("Height-Map", ImageViews.getStack(ima[1]));
+				metrics.endStage();
+			}
+		}
+
+		return new ImagePlus[] { impComposite, impHeightMap };
+	}
+
+	private ImageWare[] sharpness() {
 
 		LogSingleton log = LogSingleton.getInstance();
 		log.setStartTime((double) System.currentTimeMillis());
@@ -94,24 +345,14 @@ public class ExtendedDepthOfField {
 		if (parameters.color) {
 
 			log.start("Color conversion...");
+			startStage(JobMetrics.COLOR_CONVERSION);
 
 			impConverted = new ImagePlus();
-			switch (parameters.colorConversionMethod) {
-			case 0:
-				stackConverted = Color2BW.C2BFixedWeights(imp.getStack(), true);
-				break;
-			case 1:
-				stackConverted = Color2BW.C2BPrincipalComponents(imp.getStack());
-				break;
-			case 2:
-				stackConverted = Color2BW.C2BMean(imp.getStack());
-				break;
-			default:
-				throw new RuntimeException("Unknown error");
-			}
+			stackConverted = convertColor(imp.getStack(), parameters.colorConversionMethod);
 			impConverted.setStack(null, stackConverted);
 			impBW = impConverted;
 
+			metrics.endStage();
 			log.acknowledge();
 		}
 
@@ -129,143 +370,192 @@ public class ExtendedDepthOfField {
 			if (!Tools.isPowerOf2(nx) || !Tools.isPowerOf2(ny)) {
 				scaleAndSizes = Tools.computeScaleAndPowerTwoSize(nx, ny);
 				log.start("Extend images to " + scaleAndSizes[1] + "x" + scaleAndSizes[2] + " pixels...");
+				startStage(JobMetrics.EXTEND);
 				imageStack = Tools.extend(imageStack, scaleAndSizes[1], scaleAndSizes[2]);
 				isExtended = true;
+				metrics.endStage();
 				log.acknowledge();
 			}
 			System.gc();
 		}
 
 		log.start("Sharpen estimation...");
+		startStage(JobMetrics.SHARPNESS);
+		metrics.setSlices(imageStack.getSizeZ());
 
-		AbstractEdfAlgorithm edf;
-		ImageWare[] ima = new ImageWare[2];
-
-		switch (parameters.edfMethod) {
-		case REAL_WAVELETS:
-			if (parameters.doDenoising) edf = new EdfRealWavelets((int) parameters.splineOrder, parameters.nScales,
-					parameters.subBandCC, parameters.majCC, parameters.rateDenoising);
-			else
-				edf = new EdfRealWavelets((int) parameters.splineOrder, parameters.nScales, parameters.subBandCC,
-						parameters.majCC);
-			ima = edf.process(imageStack);
-			break;
-		case COMPLEX_WAVELETS:
-			edf = new EdfComplexWavelets(parameters.daubechielength, parameters.nScales, parameters.subBandCC,
-					parameters.majCC);
-			ima = edf.process(imageStack);
-			break;
-		case VARIANCE:
-			edf = new EdfVariance(parameters.varWindowSize);
-			ima = edf.process(imageStack);
-			break;
-		case SOBEL:
-			edf = new EdfSobel();
-			ima = edf.process(imageStack);
-			break;
-		default:
-			throw new RuntimeException("Invalid Option.");
-		}
+		AbstractEdfAlgorithm edf = createAlgorithm(parameters);
+		ImageWare[] ima = edf.process(imageStack, token);
 		System.gc();
 
+		metrics.setRetainedBuffers(edf.getPeakRetainedBuffers(), edf.getPeakRetainedBytes());
+		metrics.endStage();
 		log.acknowledge();
 		log.setProgessLength(80);
 
 		// Crop to original images.
 		if (waveletMethod && isExtended) {
 			log.start("Crop to original size...");
+			startStage(JobMetrics.CROP);
 			imageStack = Tools.crop(imageStack, nx, ny);
 			ima[0] = Tools.crop(ima[0], nx, ny);
 			ima[1] = Tools.crop(ima[1], nx, ny);
 			System.gc();
+			metrics.endStage();
 			log.acknowledge();
 		}
 
 		if (parameters.reassignment) {
 			log.start("Reassignment to original pixel values...");
+			startStage(JobMetrics.REASSIGNMENT);
 			ima[1] = PostProcessing.reassignment(ima[0], imageStack);
 			System.gc();
+			metrics.endStage();
 			log.acknowledge();
 			log.setProgessLength(95);
 		}
 
 		if (parameters.doDenoising && !waveletMethod) {
 			log.start("Denoising (Gaussian smoothing)...");
+			startStage(JobMetrics.DENOISING);
 			ima[0].smoothGaussian(parameters.sigmaDenoising);
 			System.gc();
+			metrics.endStage();
 			log.acknowledge();
 			log.setProgessLength(95);
 		}
 
-		ImagePlus impComposite = null;
-		ImagePlus impHeightMap = null;
+		return ima;
+	}
 
-		if (parameters.color && parameters.outputColorMap == Parameters.COLOR_RGB) {
-			ColorProcessor cp;
-			if ((waveletMethod && parameters.reassignment) || !waveletMethod) {
-				cp = PostProcessing.reassignmentColor(ima[1], imp.getStack());
-				impComposite = new ImagePlus("Output", cp);
+	/**
+	 * Sharpness estimation of a grayscale stack without log, metrics nor
+	 * garbage collection, for the small stacks processed in large numbers
+	 * (tiles). The wavelet methods extend the stack to a power of 2 and their
+	 * number of scales is limited to the size of the stack.
+	 * 
+	 * @return the fused image and the map of the selected slices, as
+	 *         sharpness()
+	 */
+	static ImageWare[] estimate(ImageWare stack, Parameters parameters, CancellationToken token) {
+		return estimate(stack, parameters, token, null);
+	}
+
+	/**
+	 * Sharpness estimation limited to a search range: the stack is reduced to
+	 * the slices of the union of the ranges, in which the pixelwise methods
+	 * search each pixel in its range.
+	 * 
+	 * @param range the arrays zmin and zmax, see
+	 *              AbstractEdfAlgorithm.setSearchRange(), null for the whole
+	 *              stack
+	 */
+	static ImageWare[] estimate(ImageWare stack, Parameters parameters, CancellationToken token, float[][] range) {
+		return estimate(stack, parameters, token, range, false);
+	}
+
+	/**
+	 * Sharpness estimation limited to a search range.
+	 * 
+	 * @param map true to compute the map of the selected slices of the wavelet
+	 *            methods without reassignment, by a reassignment on a copy of
+	 *            the fused image, otherwise their map is the one of the
+	 *            coefficients
+	 */
+	static ImageWare[] estimate(ImageWare stack, Parameters parameters, CancellationToken token, float[][] range,
+			boolean map) {
+		int nx = stack.getSizeX();
+		int ny = stack.getSizeY();
+		boolean waveletMethod = (parameters.edfMethod == REAL_WAVELETS || parameters.edfMethod == COMPLEX_WAVELETS);
+		int first = 1;
+		int last = stack.getSizeZ();
+		if (range != null) {
+			first = last;
+			last = 1;
+			for (int i = 0; i < nx * ny; i++) {
+				first = Math.min(first, (int) range[0][i]);
+				last = Math.max(last, (int) range[1][i]);
 			}
-			else {
-				impComposite = new ImagePlus("Output", ima[0].buildImageStack());
+			if (first > 1) {
+				float[] zmin = new float[nx * ny];
+				float[] zmax = new float[nx * ny];
+				for (int i = 0; i < nx * ny; i++) {
+					zmin[i] = range[0][i] - (first - 1);
+					zmax[i] = range[1][i] - (first - 1);
+				}
+				range = new float[][] { zmin, zmax };
 			}
 		}
-		else {
-			impComposite = new ImagePlus("Output", ima[0].buildImageStack());
+		ImageWare sub = Pyramid.substack(stack, first, last);
+		Parameters p = parameters;
+		ImageWare input = sub;
+		if (waveletMethod) {
+			int[] scaleAndSizes = Tools.computeScaleAndPowerTwoSize(nx, ny);
+			p = parameters.copy();
+			p.nScales = Math.max(1, Math.min(parameters.nScales, scaleAndSizes[0]));
+			if (!Tools.isPowerOf2(nx) || !Tools.isPowerOf2(ny))
+				input = Tools.extend(sub, scaleAndSizes[1], scaleAndSizes[2]);
 		}
+		AbstractEdfAlgorithm algorithm = createAlgorithm(p);
+		if (range != null && !waveletMethod) algorithm.setSearchRange(range[0], range[1]);
+		ImageWare[] ima = algorithm.process(input, token);
+		if (input != sub) {
+			ima[0] = Tools.crop(ima[0], nx, ny);
+			ima[1] = Tools.crop(ima[1], nx, ny);
+		}
+		if (parameters.reassignment) ima[1] = PostProcessing.reassignment(ima[0], sub);
+		else if (map && waveletMethod) ima[1] = PostProcessing.reassignment(ima[0].duplicate(), sub);
+		if (first > 1) ima[1].add(first - 1);
+		if (parameters.doDenoising && !waveletMethod) ima[0].smoothGaussian(parameters.sigmaDenoising);
+		return ima;
+	}
 
-		// Topology post-processing.
-		if ((waveletMethod && parameters.reassignment) || (!waveletMethod)) {
-
-			if (parameters.showTopology) {
-
-				if (parameters.doMedian) {
-					log.start("Median filter...");
-
-					ima[1] = MorphologicalOperators.doMedian(ima[1], parameters.medianWindowSize);
-					log.acknowledge();
-
-				}
-
-				if (parameters.doMorphoClose) {
-					log.start("Morphological close...");
-
-					ima[1] = MorphologicalOperators.doClose(ima[1]);
-
-					log.acknowledge();
-				}
-
-				if (parameters.doMorphoOpen) {
-					log.start("Morphological open ...");
-
-					ima[1] = MorphologicalOperators.doOpen(ima[1]);
-
-					log.acknowledge();
-				}
-
-				if (parameters.doGaussian) {
-					log.start("Post-processing on the map: Gaussian filter of sigma: " + parameters.sigma);
-					ima[1].smoothGaussian(parameters.sigma);
-					log.acknowledge();
-				}
-
-				impHeightMap = new ImagePlus("Height-Map", ima[1].buildImageStack());
-				impHeightMap.show();
-				impHeightMap.updateAndDraw();
-
-				if (parameters.show3dView) {
-					SurfaceMap3D viewer = new SurfaceMap3D(impHeightMap, impComposite);
-					Thread thread = new Thread(viewer);
-					thread.start();
-				}
-			}
+	/**
+	 * Convert a color stack to grayscale with the method of
+	 * Parameters.colorConversionMethod.
+	 */
+	static ImageStack convertColor(ImageStack stack, int method) {
+		switch (method) {
+		case 0:
+			return Color2BW.C2BFixedWeights(stack, true);
+		case 1:
+			return Color2BW.C2BPrincipalComponents(stack);
+		case 2:
+			return Color2BW.C2BMean(stack);
+		default:
+			throw new RuntimeException("Unknown error");
 		}
+	}
 
-		impComposite.show();
-		impComposite.updateAndDraw();
+	/**
+	 * Create the sharpness estimation algorithm selected by the parameters.
+	 */
+	static AbstractEdfAlgorithm createAlgorithm(Parameters parameters) {
+		AbstractEdfAlgorithm algorithm = newAlgorithm(parameters);
+		algorithm.setOffHeap(parameters.offHeap);
+		return algorithm;
+	}
 
-		log.start("Finished.");
-		log.setProgessLength(100);
-		log.append("");
+	private static AbstractEdfAlgorithm newAlgorithm(Parameters parameters) {
+		switch (parameters.edfMethod) {
+		case REAL_WAVELETS:
+			if (parameters.doDenoising) return new EdfRealWavelets((int) parameters.splineOrder, parameters.nScales,
+					parameters.subBandCC, parameters.majCC, parameters.rateDenoising);
+			else
+				return new EdfRealWavelets((int) parameters.splineOrder, parameters.nScales, parameters.subBandCC,
+						parameters.majCC);
+		case COMPLEX_WAVELETS:
+			return new EdfComplexWavelets(parameters.daubechielength, parameters.nScales, parameters.subBandCC,
+					parameters.majCC);
+		case VARIANCE:
+			return new EdfVariance(parameters.varWindowSize);
+		case SOBEL:
+			return new EdfSobel();
+		case FOCUS_MEASURE:
+			FocusMeasure measure = FocusMeasures.get(parameters.focusMeasure);
+			if (measure == null) throw new RuntimeException("Unknown focus measure: " + parameters.focusMeasure);
+			return new EdfFocusMeasure(measure, parameters.varWindowSize);
+		default:
+			throw new RuntimeException("Invalid Option.");
+		}
 	}
 }
@@ -60,6 +60,9 @@ public class Parameters {
 	public static final int COLOR_RGB = 0;
 	public static final int GRAYSCALE = 1;
 
+	public static final int CHANNELS_SEPARATE = 0;
+	public static final int CHANNELS_MEAN = -1;
+
 	public boolean color;
 	public int edfMethod;
 	public int outputColorMap;
@@ -71,9 +74,14 @@ public class Parameters {
 	public int daubechielength;
 	public int splineOrder;
 	public int nScales;
-	public int varWindowSize;
+	public int varWindowSize; // also the window of the focus measures
 	public int medianWindowSize;
 	public int colorConversionMethod;
+	public String focusMeasure;
+	public int referenceChannel; // CHANNELS_SEPARATE, CHANNELS_MEAN or a channel from 1
+	public int tileSize; // incremental time-lapse, 0 to process the whole frames
+	public double tileTolerance; // in gray levels
+	public int depthWindow; // time-lapse depth prior in slices, 0 for the whole stack
 
 	public boolean reassignment;
 	public boolean subBandCC;
@@ -86,6 +94,7 @@ public class Parameters {
 	public boolean showTopology;
 	public boolean show3dView;
 	public boolean log;
+	public boolean offHeap; // coefficient stacks of the wavelet methods outside of the heap
 
 	public int maxScales = 1;
 
@@ -97,6 +106,100 @@ public class Parameters {
 		reset();
 	}
 
+	/**
+	 * Copy of the parameters, for the threads which must not see the changes
+	 * made in the dialog while they run.
+	 */
+	public Parameters copy() {
+		Parameters p = new Parameters();
+		p.color = color;
+		p.edfMethod = edfMethod;
+		p.outputColorMap = outputColorMap;
+		p.sigma = sigma;
+		p.rateDenoising = rateDenoising;
+		p.sigmaDenoising = sigmaDenoising;
+		p.daubechielength = daubechielength;
+		p.splineOrder = splineOrder;
+		p.nScales = nScales;
+		p.varWindowSize = varWindowSize;
+		p.medianWindowSize = medianWindowSize;
+		p.colorConversionMethod = colorConversionMethod;
+		p.focusMeasure = focusMeasure;
+		p.referenceChannel = referenceChannel;
+		p.tileSize = tileSize;
+		p.tileTolerance = tileTolerance;
+		p.depthWindow = depthWindow;
+		p.reassignment = reassignment;
+		p.subBandCC = subBandCC;
+		p.majCC = majCC;
+		p.doMorphoOpen = doMorphoOpen;
+		p.doMorphoClose = doMorphoClose;
+		p.doGaussian = doGaussian;
+		p.doDenoising = doDenoising;
+		p.doMedian = doMedian;
+		p.showTopology = showTopology;
+		p.show3dView = show3dView;
+		p.log = log;
+		p.offHeap = offHeap;
+		p.maxScales = maxScales;
+		return p;
+	}
+
+	/**
+	 * Parameters which change the result of the sharpness estimation, the
+	 * color conversion and the reassignment, as a canonical string: only the
+	 * options used by the selected method are included, in a fixed order. The
+	 * topology post-processing and the display options are not included.
+	 */
+	public String getSharpnessKey() {
+		boolean waveletMethod = (edfMethod == ExtendedDepthOfField.REAL_WAVELETS
+				|| edfMethod == ExtendedDepthOfField.COMPLEX_WAVELETS);
+		String key = "method=" + edfMethod;
+		if (color) key += ";conversion=" + colorConversionMethod;
+		switch (edfMethod) {
+		case ExtendedDepthOfField.VARIANCE:
+			key += ";window=" + varWindowSize;
+			break;
+		case ExtendedDepthOfField.FOCUS_MEASURE:
+			key += ";measure=" + focusMeasure + ";window=" + varWindowSize;
+			break;
+		case ExtendedDepthOfField.REAL_WAVELETS:
+			key += ";spline=" + splineOrder;
+			if (doDenoising) key += ";rate=" + rateDenoising;
+			break;
+		case ExtendedDepthOfField.COMPLEX_WAVELETS:
+			key += ";daubechies=" + daubechielength;
+			break;
+		}
+		if (waveletMethod) {
+			key += ";scales=" + nScales + ";subBandCC=" + subBandCC + ";majCC=" + majCC + ";reassignment=" + reassignment;
+		}
+		else if (doDenoising) {
+			key += ";sigmaDenoising=" + sigmaDenoising;
+		}
+		return key;
+	}
+
+	/**
+	 * All the parameters which change the composite image and the height-map,
+	 * as a canonical string: the sharpness key, the output color map and the
+	 * topology post-processing if the height-map is computed.
+	 */
+	public String getCanonicalString() {
+		boolean waveletMethod = (edfMethod == ExtendedDepthOfField.REAL_WAVELETS
+				|| edfMethod == ExtendedDepthOfField.COMPLEX_WAVELETS);
+		String key = getSharpnessKey();
+		if (color) key += ";output=" + outputColorMap;
+		if (showTopology && (reassignment || !waveletMethod)) {
+			key += ";topology=true";
+			if (doMedian) key += ";median=" + medianWindowSize;
+			if (doMorphoClose) key += ";close=true";
+			if (doMorphoOpen) key += ";open=true";
+			if (doGaussian) key += ";sigma=" + sigma;
+		}
+		return key;
+	}
+
 	/**
 	 * Reset to default parameters.
 	 *
@@ -115,6 +218,11 @@ public class Parameters {
 		splineOrder = 3;
 		nScales = maxScales;
 		varWindowSize = 3;
+		focusMeasure = "Tenengrad";
+		referenceChannel = CHANNELS_SEPARATE;
+		tileSize = 0;
+		tileTolerance = 1.0;
+		depthWindow = 0;
 		medianWindowSize = 3;
 
 		reassignment = false;
@@ -128,6 +236,7 @@ public class Parameters {
 		showTopology = false;
 		show3dView = false;
 		log = false;
+		offHeap = false;
 	}
 
 	/**
@@ -0,0 +1,176 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edfgui;
+
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.ImageStack;
+import imageware.ImageWare;
+
+/**
+ * Cache of the raw results of the last sharpness estimation of the session:
+ * the fused image and the height-map before the topology post-processing.
+ * The entry is keyed by the identity of the input image and by the parameters
+ * which change the sharpness estimation (Parameters.getSharpnessKey()), so
+ * that a new run which only changes the post-processing of the height-map
+ * (median, open, close, Gaussian) replays the topology stage only.
+ *
+ * The identity of the image does not change when its pixels are edited in
+ * place: the entry is dropped when ImageJ reports an update or the closing of
+ * the cached image, and the key includes the flag of unsaved changes and a
+ * signature of a sample of the pixels, for the edits which are not reported
+ * (images without window).
+ */
+public class SharpnessCache implements ImageListener {
+
+	private static final int SAMPLES = 4096;
+
+	private static SharpnessCache instance;
+
+	private String key = null;
+	private int id = 0;
+	private ImageWare[] ima = null;
+	private long hits = 0;
+	private long misses = 0;
+
+	private SharpnessCache() {
+		ImagePlus.addImageListener(this);
+	}
+
+	public static synchronized SharpnessCache getInstance() {
+		if (instance == null) {
+			instance = new SharpnessCache();
+		}
+		return instance;
+	}
+
+	public Object clone() throws CloneNotSupportedException {
+		throw new CloneNotSupportedException();
+	}
+
+	/**
+	 * Return a copy of the cached fused image and height-map, or null if the
+	 * image or the sharpness parameters differ from the last run.
+	 */
+	public synchronized ImageWare[] get(ImagePlus imp, Parameters parameters) {
+		if (ima == null || !key(imp, parameters).equals(key)) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return new ImageWare[] { ima[0].duplicate(), ima[1].duplicate() };
+	}
+
+	/**
+	 * Keep a copy of the results of a sharpness estimation, the previous entry
+	 * is dropped.
+	 */
+	public synchronized void put(ImagePlus imp, Parameters parameters, ImageWare[] results) {
+		key = key(imp, parameters);
+		id = imp.getID();
+		ima = new ImageWare[] { results[0].duplicate(), results[1].duplicate() };
+	}
+
+	/**
+	 * Release the cached images.
+	 */
+	public synchronized void clear() {
+		key = null;
+		id = 0;
+		ima = null;
+	}
+
+	public void imageOpened(ImagePlus imp) {
+	}
+
+	/**
+	 * The pixels of the image may have changed, the entry is dropped.
+	 */
+	public synchronized void imageUpdated(ImagePlus imp) {
+		if (imp != null && ima != null && imp.getID() == id) clear();
+	}
+
+	public synchronized void imageClosed(ImagePlus imp) {
+		if (imp != null && ima != null && imp.getID() == id) clear();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Identity of the image (ImageJ ID and stack object), state of its pixels
+	 * and parameters of the sharpness estimation.
+	 */
+	private static String key(ImagePlus imp, Parameters parameters) {
+		return imp.getID() + "/" + System.identityHashCode(imp.getStack()) + "/" + imp.getWidth() + "x"
+				+ imp.getHeight() + "x" + imp.getStackSize() + "/" + imp.changes + "/"
+				+ Long.toHexString(signature(imp.getStack())) + "/" + parameters.getSharpnessKey();
+	}
+
+	/**
+	 * Hash of SAMPLES pixels of each slice, spread over the slice.
+	 */
+	private static long signature(ImageStack stack) {
+		int n = stack.getWidth() * stack.getHeight();
+		int step = Math.max(1, n / SAMPLES);
+		long hash = 17;
+		for (int z = 1; z <= stack.getSize(); z++) {
+			Object pixels = stack.getPixels(z);
+			for (int i = (z * 7919) % step; i < n; i += step) {
+				int value;
+				if (pixels instanceof byte[]) value = ((byte[]) pixels)[i];
+				else if (pixels instanceof short[]) value = ((short[]) pixels)[i];
+				else if (pixels instanceof float[]) value = Float.floatToIntBits(((float[]) pixels)[i]);
+				else if (pixels instanceof int[]) value = ((int[]) pixels)[i];
+				else return 0;
+				hash = hash * 31 + value;
+			}
+		}
+		return hash;
+	}
+}
@@ -43,21 +43,37 @@
 
 package edfgui;
 
+import edf.CancellationToken;
+import edf.LogSingleton;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.WindowManager;
 
+import java.util.concurrent.CancellationException;
+
 public class ThreadEdf extends Thread {
 
 	Parameters parameters;
+	private CancellationToken token = new CancellationToken();
 
 	public ThreadEdf(Parameters parameters) {
 		super();
 		this.parameters = parameters;
 	}
 
+	/**
+	 * Stop the processing at the next slice or wavelet level.
+	 */
+	public void cancel() {
+		token.cancel();
+	}
+
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
 	public void run() {
-		ImagePlus imp = WindowManager.getCurrentImage();
+		ImagePlus imp = ThreadPreview.getSource(WindowManager.getCurrentImage());
 		if (imp == null) {
 			IJ.error("The input image is not a z-stack of images.");
 			return;
@@ -65,8 +81,26 @@ public class ThreadEdf extends Thread {
 		if (imp.getType() == ImagePlus.COLOR_RGB) {
 			parameters.outputColorMap = Parameters.COLOR_RGB;
 		}
-		ExtendedDepthOfField edf = new ExtendedDepthOfField(imp, parameters);
-		edf.process();
+		try {
+			if (imp.getNChannels() > 1 || imp.getNFrames() > 1) {
+				TimeLapseEdf edf = new TimeLapseEdf(imp, parameters);
+				edf.setCancellationToken(token);
+				edf.setIncremental(parameters.tileSize, parameters.tileTolerance);
+				edf.setDepthPrior(parameters.depthWindow);
+				edf.process();
+			}
+			else {
+				ExtendedDepthOfField edf = new ExtendedDepthOfField(imp, parameters);
+				edf.setCancellationToken(token);
+				edf.process();
+			}
+		}
+		catch (CancellationException ex) {
+			LogSingleton log = LogSingleton.getInstance();
+			log.append("");
+			log.append(ex.getMessage());
+			log.setProgessLength(100);
+		}
 		System.gc();
 	}
 
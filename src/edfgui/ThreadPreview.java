@@ -0,0 +1,184 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edfgui;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+import imageware.Builder;
+import imageware.ImageWare;
+
+import java.util.concurrent.CancellationException;
+
+import edf.CancellationToken;
+import edf.LogSingleton;
+import edf.Pyramid;
+import edf.Tools;
+
+/**
+ * Progressive preview of the EDF. The selected method is run first on the
+ * stack binned by 2, 4, 8, ... down to at most 128x128 pixels, then on the
+ * finer levels up to the full resolution; each result replaces the previous
+ * one in the preview window. At the finer levels, the search of
+ * each pixel is limited to the slices around the height-map of the coarser
+ * level (the wavelet methods are limited to the range of slices of the whole
+ * coarse height-map). The preview shows the grayscale composite image.
+ *
+ * The preview is cancelled by cancel(), for example when the parameters
+ * change; it stops at the next slice or level.
+ */
+public class ThreadPreview extends Thread {
+
+	public static final int PREVIEW_PIXELS = 128 * 128;
+	public static final int MIN_SIZE = 32;
+	public static final int MARGIN = 2;
+
+	private static ImagePlus impPreview = null;
+	private static ImagePlus impSource = null;
+
+	private Parameters parameters;
+	private ImagePlus imp;
+	private CancellationToken token = new CancellationToken();
+
+	/**
+	 * Constructor, the parameters are copied.
+	 */
+	public ThreadPreview(ImagePlus imp, Parameters parameters) {
+		super();
+		this.imp = imp;
+		this.parameters = parameters.copy();
+	}
+
+	/**
+	 * Stop the preview at the next slice or wavelet level.
+	 */
+	public void cancel() {
+		token.cancel();
+	}
+
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
+	/**
+	 * Return true if the preview window is shown.
+	 */
+	public static synchronized boolean isShown() {
+		return impPreview != null && impPreview.getWindow() != null;
+	}
+
+	/**
+	 * Return the stack previewed if imp is the preview window, otherwise imp.
+	 */
+	public static synchronized ImagePlus getSource(ImagePlus imp) {
+		if (imp != null && imp == impPreview && impSource != null) return impSource;
+		return imp;
+	}
+
+	public void run() {
+		try {
+			preview();
+		}
+		catch (CancellationException ex) {
+		}
+	}
+
+	/**
+	 * Run the levels from the coarsest to the finest.
+	 * 
+	 * @return the composite image and the height-map of the finest level
+	 */
+	public ImageWare[] preview() {
+		LogSingleton log = LogSingleton.getInstance();
+		ImageWare stack;
+		if (parameters.color)
+			stack = Builder.wrap(ExtendedDepthOfField.convertColor(imp.getStack(), parameters.colorConversionMethod));
+		else
+			stack = Builder.wrap(imp);
+		token.check();
+
+		Pyramid pyramid = new Pyramid(stack, PREVIEW_PIXELS, MIN_SIZE);
+		ImageWare[] ima = null;
+		for (int l = pyramid.getLevels() - 1; l >= 0; l--) {
+			double chrono = System.currentTimeMillis();
+			ima = estimate(pyramid.getLevel(l), (ima == null ? null : ima[1]));
+			show(ima[0], 1 << l);
+			log.append("Preview 1/" + (1 << l) + ": " + Math.round(System.currentTimeMillis() - chrono) + " ms");
+		}
+		return ima;
+	}
+
+	/**
+	 * Run the method on one level of the pyramid, with
+	 * ExtendedDepthOfField.estimate().
+	 * 
+	 * @param coarse height-map of the coarser level, null for the first level
+	 */
+	private ImageWare[] estimate(ImageWare stack, ImageWare coarse) {
+		float[][] range = null;
+		if (coarse != null)
+			range = Pyramid.searchRange(coarse, stack.getSizeX(), stack.getSizeY(), stack.getSizeZ(), MARGIN);
+		return ExtendedDepthOfField.estimate(stack, parameters, token, range, true);
+	}
+
+	/**
+	 * Show the composite image at the size of the input image.
+	 */
+	private void show(ImageWare composite, int factor) {
+		ImageProcessor ip = Tools.getImageProcessor(composite.convert(ImageWare.FLOAT));
+		if (factor > 1) ip = ip.resize(imp.getWidth(), imp.getHeight());
+		ip.resetMinAndMax();
+		String title = "Preview " + imp.getTitle() + (factor > 1 ? " (1/" + factor + ")" : "");
+		synchronized (ThreadPreview.class) {
+			token.check();
+			impSource = imp;
+			if (impPreview == null || impPreview.getWindow() == null) {
+				impPreview = new ImagePlus(title, ip);
+				impPreview.show();
+			}
+			else {
+				impPreview.setProcessor(title, ip);
+				impPreview.updateAndDraw();
+			}
+		}
+	}
+}
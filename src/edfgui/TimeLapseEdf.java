@@ -0,0 +1,554 @@
+/*
+ * EDF - Extended Depth of Field
+ *
+ * Reference: B. Forster et al., Complex Wavelets for Extended Depth-of-Field:
+ * A New Method for the Fusion of Multichannel Microscopy Images,
+ * Microscopy Research and Techniques, 2004.
+ */
+
+/*
+ * Copyright 2006-2023 Biomedical Imaging Group at the EPFL.
+ *
+ * EDF is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * EDF is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * EDF. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Java Code Project: EDF - Extended Depth of Focus
+ *
+ * Organization: Biomedical Imaging Group (BIG)
+ * Ecole Polytechnique Federale de Lausanne (EPFL), Lausanne, Switzerland
+ *
+ * Information: http://bigwww.epfl.ch/demo/edf/
+ *
+ * References:
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser
+ * Complex Wavelets for Extended Depth-of-Field: A New Method for the Fusion
+ * of Multichannel Microscopy Images, Microscopy Research and Techniques,
+ * 65(1-2), pp. 33-42, September 2004.
+ * *
+ * B. Forster, D. Van De Ville, J. Berent, D. Sage, M. Unser,
+ * Extended Depth-of-Focus for Multi-Channel Microscopy Images
+ * Proceedings of IEEE International Symposium on Biomedical Imaging, 2004.
+ */
+
+package edfgui;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import imageware.Builder;
+import imageware.ImageWare;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edf.CancellationToken;
+import edf.LogSingleton;
+import edf.PostProcessing;
+import edf.Pyramid;
+import edf.TileSignatures;
+import wavelets.WaveletWorkspace;
+
+/**
+ * EDF of a hyperstack: each channel of each time point is a z-stack which is
+ * focused by ExtendedDepthOfField in one job. The z-stacks are views on the
+ * pixels of the hyperstack, they are not duplicated. Each thread keeps its
+ * wavelet workspace from one z-stack to the next, until the end of the job.
+ *
+ * The first z-stack is processed alone to measure the memory used by one
+ * z-stack; the others are processed in parallel, with as many threads as the
+ * memory budget allows (half of the free heap by default), at most one per
+ * processor. The results are a hyperstack of the fused images and a
+ * hyperstack of the height-maps, with the channels and the time points of
+ * the input.
+ *
+ * With Parameters.referenceChannel set to a channel, or to CHANNELS_MEAN for
+ * the mean of the channels, the sharpness is estimated once per time point on
+ * the reference; the composite image of each channel is gathered from its
+ * z-stack with the map of the selected slices, as reassignmentColor() does for
+ * the RGB images. The height-map hyperstack has then a single channel.
+ *
+ * In the incremental mode (setIncremental()), the frames of each channel (or
+ * of the reference) are processed in order: the tiles whose signature did not
+ * change since they were last computed keep their fused pixels and their
+ * height-map, only the changed tiles are processed again, with a halo. The
+ * topology post-processing is always applied to the whole height-map.
+ *
+ * With a depth prior (setDepthPrior()), the slices of each pixel are searched
+ * in a window around the depths of its neighbors in the previous frame. The
+ * search is done again on the whole stack if too many pixels select a bound
+ * of their window, the depth moved more than the window.
+ */
+public class TimeLapseEdf {
+
+	/**
+	 * Maximum fraction of the pixels on the bounds of their depth window.
+	 */
+	private static final double BOUNDED_FRACTION = 0.05;
+
+	private Parameters parameters;
+	private ImagePlus imp;
+	private CancellationToken token = new CancellationToken();
+	private long memoryBudget = 0;
+	private int tileSize = 0;
+	private double tolerance = 0.0;
+	private int depthWindow = 0;
+	private long tilesComputed = 0;
+	private long tilesTotal = 0;
+
+	private int nc;
+	private int nz;
+	private int nt;
+	private ImageProcessor[] composites;
+	private ImageProcessor[] heightMaps;
+	private long[] peaks;
+	private Increment[] increments;
+
+	public TimeLapseEdf(ImagePlus imp, Parameters parameters) {
+		this.imp = imp;
+		this.parameters = parameters;
+	}
+
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
+	public void setCancellationToken(CancellationToken token) {
+		this.token = token;
+	}
+
+	/**
+	 * Maximum memory in bytes used by the z-stacks processed in parallel, 0
+	 * for half of the free heap.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Process only the changed tiles of each frame, for the time-lapses of
+	 * slowly changing samples. A tile is changed if one of the means of its
+	 * blocks of 8x8 pixels, in one slice, changed by more than the tolerance
+	 * (in gray levels) since the tile was last computed. A tileSize of 0
+	 * disables the incremental mode.
+	 */
+	public void setIncremental(int tileSize, double tolerance) {
+		this.tileSize = tileSize;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Search the slices of each pixel in the range of the depths of its 3x3
+	 * neighbors in the previous frame, extended by plus or minus window
+	 * slices. A window of 0 disables the prior. The pixelwise methods skip
+	 * the slices out of the windows of all the pixels, the wavelet methods use
+	 * the prior only with the reassignment (their map is then a height-map),
+	 * on the slices of the union of the windows.
+	 */
+	public void setDepthPrior(int window) {
+		this.depthWindow = window;
+	}
+
+	/**
+	 * Number of tiles processed and total number of tiles of the last run in
+	 * incremental mode.
+	 */
+	public synchronized long[] getTileCounts() {
+		return new long[] { tilesComputed, tilesTotal };
+	}
+
+	/**
+	 * Run the processing and show the results.
+	 */
+	public void process() {
+		ImagePlus[] out = compute();
+		if (out[1] != null) out[1].show();
+		out[0].show();
+		LogSingleton log = LogSingleton.getInstance();
+		log.start("Finished.");
+		log.setProgessLength(100);
+		log.append("");
+	}
+
+	/**
+	 * Run the processing without displaying anything.
+	 * 
+	 * @return the hyperstack of the composite images and the hyperstack of the
+	 *         height-maps, null if it is not requested by the parameters.
+	 */
+	public ImagePlus[] compute() {
+		nc = imp.getNChannels();
+		nz = imp.getNSlices();
+		nt = imp.getNFrames();
+		if (parameters.referenceChannel > nc) throw new RuntimeException("No channel " + parameters.referenceChannel);
+		boolean reference = (nc > 1 && parameters.referenceChannel != Parameters.CHANNELS_SEPARATE);
+		int n = (reference ? nt : nc * nt);
+		composites = new ImageProcessor[nc * nt];
+		heightMaps = new ImageProcessor[n];
+		peaks = new long[n];
+		int tracks = (reference ? 1 : nc);
+		increments = null;
+		tilesComputed = 0;
+		tilesTotal = 0;
+		if (tileSize > 0 || depthWindow > 0) {
+			increments = new Increment[tracks];
+			for (int k = 0; k < tracks; k++)
+				increments[k] = new Increment();
+		}
+		try {
+			return compute(reference, n, tracks);
+		}
+		finally {
+			WaveletWorkspace.keep(false);
+		}
+	}
+
+	/**
+	 * Run the first z-stack alone, then the others in parallel.
+	 */
+	private ImagePlus[] compute(boolean reference, int n, final int tracks) {
+		LogSingleton log = LogSingleton.getInstance();
+		run(0);
+		int threads = getThreads(peaks[0]);
+		log.append("Time-lapse: " + n + " z-stacks of " + nz + " slices on " + threads + " threads"
+				+ (reference ? ", " + nc + " channels gathered" : ""));
+
+		if (n > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+			if (increments == null) {
+				for (int i = 1; i < n; i++) {
+					final int index = i;
+					futures.add(executor.submit(new Runnable() {
+						public void run() {
+							TimeLapseEdf.this.run(index);
+						}
+					}));
+				}
+			}
+			else {
+				// The frames of a channel are processed in order
+				for (int k = 0; k < tracks; k++) {
+					final int track = k;
+					futures.add(executor.submit(new Runnable() {
+						public void run() {
+							for (int t = (track == 0 ? 1 : 0); t < nt; t++)
+								TimeLapseEdf.this.run(t * tracks + track);
+						}
+					}));
+				}
+			}
+			executor.shutdown();
+			try {
+				for (Future<?> future : futures)
+					future.get();
+			}
+			catch (InterruptedException ex) {
+				token.cancel();
+				throw new CancellationException("Interrupted");
+			}
+			catch (ExecutionException ex) {
+				token.cancel();
+				executor.shutdownNow();
+				Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+
+		ImagePlus impComposite = build("Output", composites, nc);
+		ImagePlus impHeightMap = (heightMaps[0] == null ? null : build("Height-Map", heightMaps, (reference ? 1 : nc)));
+		return new ImagePlus[] { impComposite, impHeightMap };
+	}
+
+	/**
+	 * Focus the z-stack of the channel and time point of the index, or the
+	 * reference of the time point of the index.
+	 */
+	private void run(int index) {
+		// The workspace of a pool thread goes with the thread, at the end of the job
+		WaveletWorkspace.keep(true);
+		if (heightMaps.length < composites.length) {
+			runReference(index);
+			return;
+		}
+		int c = index % nc;
+		int t = index / nc;
+		ImagePlus impFrame = new ImagePlus(imp.getTitle() + " c" + (c + 1) + " t" + (t + 1), getZStack(c, t));
+		ExtendedDepthOfField edf = new ExtendedDepthOfField(impFrame, parameters);
+		edf.setCancellationToken(token);
+		edf.setSessionCache(false);
+		ImagePlus[] out;
+		if (increments == null) out = edf.compute();
+		else
+			out = edf.computeComposite(increments[c].update(impFrame, parameters, edf));
+		composites[index] = out[0].getProcessor();
+		heightMaps[index] = (out[1] == null ? null : out[1].getProcessor());
+		peaks[index] = edf.getMetrics().getPeakRetainedBytes();
+	}
+
+	/**
+	 * Estimate the sharpness on the reference of the time point t and gather
+	 * the composite image of each channel. The wavelet methods are run with
+	 * the reassignment, to get the map of the selected slices.
+	 */
+	private void runReference(int t) {
+		ImageStack reference;
+		String name;
+		if (parameters.referenceChannel == Parameters.CHANNELS_MEAN) {
+			reference = getMeanZStack(t);
+			name = "mean";
+		}
+		else {
+			reference = getZStack(parameters.referenceChannel - 1, t);
+			name = "c" + parameters.referenceChannel;
+		}
+		Parameters p = parameters.copy();
+		if (p.edfMethod == ExtendedDepthOfField.REAL_WAVELETS || p.edfMethod == ExtendedDepthOfField.COMPLEX_WAVELETS)
+			p.reassignment = true;
+		ImagePlus impFrame = new ImagePlus(imp.getTitle() + " " + name + " t" + (t + 1), reference);
+		ExtendedDepthOfField edf = new ExtendedDepthOfField(impFrame, p);
+		edf.setCancellationToken(token);
+		edf.setSessionCache(false);
+		ImageWare[] ima = (increments == null ? edf.computeSharpness() : increments[0].update(impFrame, p, edf));
+		ImageWare labels = ima[1].duplicate();
+		ImagePlus[] out = edf.computeComposite(ima);
+		for (int c = 0; c < nc; c++) {
+			token.checkpoint("Channels", c, nc);
+			composites[t * nc + c] = PostProcessing.reassignmentChannel(labels, getZStack(c, t));
+		}
+		heightMaps[t] = (out[1] == null ? null : out[1].getProcessor());
+		peaks[t] = edf.getMetrics().getPeakRetainedBytes();
+	}
+
+	/**
+	 * Halo of the tiles: the support of the sharpness measure and of the
+	 * denoising. The wavelet methods depend on the whole image, their halo of
+	 * half a tile gives an approximation of the result.
+	 */
+	private int getHalo(Parameters p) {
+		int halo;
+		switch (p.edfMethod) {
+		case ExtendedDepthOfField.SOBEL:
+			halo = 2;
+			break;
+		case ExtendedDepthOfField.VARIANCE:
+		case ExtendedDepthOfField.FOCUS_MEASURE:
+			halo = p.varWindowSize / 2 + 2;
+			break;
+		default:
+			return tileSize / 2;
+		}
+		if (p.doDenoising) halo += (int) Math.ceil(3 * p.sigmaDenoising);
+		return halo;
+	}
+
+	/**
+	 * Return true if the slices selected out of their search range or on one
+	 * of its bounds, not on the bounds of the stack, are at most
+	 * BOUNDED_FRACTION of the pixels.
+	 */
+	private static boolean isConfident(ImageWare labels, float[][] range, int nz) {
+		int nx = labels.getSizeX();
+		int ny = labels.getSizeY();
+		int bounded = 0;
+		for (int y = 0; y < ny; y++)
+			for (int x = 0; x < nx; x++) {
+				double label = labels.getPixel(x, y, 0);
+				int i = y * nx + x;
+				if ((label <= range[0][i] && range[0][i] > 1) || (label >= range[1][i] && range[1][i] < nz)) bounded++;
+			}
+		return bounded <= BOUNDED_FRACTION * nx * ny;
+	}
+
+	/**
+	 * Search range of the pixels of the region {x0, y0, x1, y1}.
+	 */
+	private static float[][] cropRange(float[][] range, int nx, int[] r) {
+		int w = r[2] - r[0];
+		float[][] out = new float[2][w * (r[3] - r[1])];
+		for (int y = r[1]; y < r[3]; y++) {
+			System.arraycopy(range[0], y * nx + r[0], out[0], (y - r[1]) * w, w);
+			System.arraycopy(range[1], y * nx + r[0], out[1], (y - r[1]) * w, w);
+		}
+		return out;
+	}
+
+	/**
+	 * Results of the last frame of a channel, or of the reference, and
+	 * signatures of the tiles when they were computed.
+	 */
+	private class Increment {
+		private TileSignatures tiles;
+		private float[][] signatures;
+		private ImageWare fused;
+		private ImageWare map;
+
+		/**
+		 * Sharpness estimation of the next frame, as computeSharpness().
+		 */
+		ImageWare[] update(ImagePlus impFrame, Parameters p, ExtendedDepthOfField edf) {
+			ImageWare stack;
+			if (p.color) stack = Builder.wrap(ExtendedDepthOfField.convertColor(impFrame.getStack(), p.colorConversionMethod));
+			else
+				stack = Builder.wrap(impFrame);
+			int nx = stack.getSizeX();
+			int ny = stack.getSizeY();
+			boolean waveletMethod = (p.edfMethod == ExtendedDepthOfField.REAL_WAVELETS
+					|| p.edfMethod == ExtendedDepthOfField.COMPLEX_WAVELETS);
+			float[][] range = null;
+			if (depthWindow > 0 && map != null && (!waveletMethod || p.reassignment))
+				range = Pyramid.searchRange(map, nx, ny, nz, depthWindow);
+
+			if (tileSize <= 0) {
+				ImageWare[] ima = estimate(impFrame, stack, p, edf, range);
+				map = ima[1].duplicate();
+				return ima;
+			}
+
+			if (tiles == null) tiles = new TileSignatures(stack.getSizeX(), stack.getSizeY(), tileSize);
+			float[][] current = tiles.compute(stack);
+			int count = tiles.getTileCount();
+			ArrayList<Integer> changed = new ArrayList<Integer>();
+			if (fused != null) {
+				for (int i = 0; i < count; i++)
+					if (TileSignatures.differ(current[i], signatures[i], tolerance)) changed.add(i);
+			}
+
+			if (fused == null || 2 * changed.size() > count) {
+				ImageWare[] ima = estimate(impFrame, stack, p, edf, range);
+				fused = ima[0].duplicate();
+				map = ima[1].duplicate();
+				signatures = current;
+				count(impFrame, count, count);
+				return ima;
+			}
+
+			// The pixelwise methods rewrite the tile and its halo, the pixels of
+			// the unchanged neighbors which depend on the changed tile
+			int halo = getHalo(p);
+			int margin = (waveletMethod ? 0 : halo);
+			for (int k = 0; k < changed.size(); k++) {
+				int tile = changed.get(k);
+				token.checkpoint("Tiles", k, changed.size());
+				int[] r = tiles.getTile(tile, halo + margin);
+				int[] inner = tiles.getTile(tile, margin);
+				ImageWare crop = Builder.create(r[2] - r[0], r[3] - r[1], stack.getSizeZ(), stack.getType());
+				stack.getXYZ(r[0], r[1], 0, crop);
+				ImageWare[] ima;
+				if (range == null) ima = ExtendedDepthOfField.estimate(crop, p, token);
+				else {
+					float[][] tileRange = cropRange(range, nx, r);
+					ima = ExtendedDepthOfField.estimate(crop, p, token, tileRange);
+					if (!isConfident(ima[1], tileRange, nz)) ima = ExtendedDepthOfField.estimate(crop, p, token);
+				}
+				ImageWare part = Builder.create(inner[2] - inner[0], inner[3] - inner[1], 1, ImageWare.FLOAT);
+				ima[0].getXY(inner[0] - r[0], inner[1] - r[1], 0, part);
+				fused.putXY(inner[0], inner[1], 0, part);
+				ima[1].getXY(inner[0] - r[0], inner[1] - r[1], 0, part);
+				map.putXY(inner[0], inner[1], 0, part);
+				signatures[tile] = current[tile];
+			}
+			count(impFrame, changed.size(), count);
+			return new ImageWare[] { fused.duplicate(), map.duplicate() };
+		}
+
+		/**
+		 * Sharpness estimation of the whole frame in the search range, or on
+		 * the whole stack if there is no range or if the depth left it.
+		 */
+		private ImageWare[] estimate(ImagePlus impFrame, ImageWare stack, Parameters p, ExtendedDepthOfField edf,
+				float[][] range) {
+			if (range != null) {
+				ImageWare[] ima = ExtendedDepthOfField.estimate(stack, p, token, range);
+				if (isConfident(ima[1], range, nz)) return ima;
+				LogSingleton.getInstance().append(impFrame.getTitle() + ": depth out of the prior, full search");
+			}
+			return edf.computeSharpness();
+		}
+	}
+
+	private synchronized void count(ImagePlus impFrame, int computed, int total) {
+		tilesComputed += computed;
+		tilesTotal += total;
+		LogSingleton.getInstance().append(impFrame.getTitle() + ": " + computed + "/" + total + " tiles processed");
+	}
+
+	/**
+	 * View on the z-stack of the channel c and time point t, the pixels are
+	 * shared with the hyperstack.
+	 */
+	private ImageStack getZStack(int c, int t) {
+		ImageStack stack = imp.getStack();
+		ImageStack frame = new ImageStack(imp.getWidth(), imp.getHeight());
+		for (int z = 0; z < nz; z++) {
+			int n = imp.getStackIndex(c + 1, z + 1, t + 1);
+			frame.addSlice(stack.getSliceLabel(n), stack.getPixels(n));
+		}
+		return frame;
+	}
+
+	/**
+	 * Mean of the channels of the time point t, in float.
+	 */
+	private ImageStack getMeanZStack(int t) {
+		int size = imp.getWidth() * imp.getHeight();
+		ImageStack stack = imp.getStack();
+		ImageStack mean = new ImageStack(imp.getWidth(), imp.getHeight());
+		for (int z = 0; z < nz; z++) {
+			float[] sum = new float[size];
+			for (int c = 0; c < nc; c++) {
+				ImageProcessor ip = stack.getProcessor(imp.getStackIndex(c + 1, z + 1, t + 1));
+				for (int i = 0; i < size; i++)
+					sum[i] += ip.getf(i);
+			}
+			for (int i = 0; i < size; i++)
+				sum[i] /= nc;
+			mean.addSlice("", new FloatProcessor(imp.getWidth(), imp.getHeight(), sum, null));
+		}
+		return mean;
+	}
+
+	/**
+	 * Number of threads allowed by the memory budget, for z-stacks which
+	 * retain peak bytes in the algorithm plus a float copy of the z-stack.
+	 */
+	private int getThreads(long peak) {
+		long budget = memoryBudget;
+		if (budget <= 0) {
+			Runtime runtime = Runtime.getRuntime();
+			budget = (runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) / 2;
+		}
+		long perStack = peak + 4L * imp.getWidth() * imp.getHeight() * nz;
+		long threads = budget / Math.max(1, perStack);
+		return (int) Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+	}
+
+	private ImagePlus build(String title, ImageProcessor[] ips, int channels) {
+		ImageStack stack = new ImageStack(imp.getWidth(), imp.getHeight());
+		for (int i = 0; i < ips.length; i++)
+			stack.addSlice("c" + (i % channels + 1) + " t" + (i / channels + 1), ips[i]);
+		ImagePlus out = new ImagePlus(title, stack);
+		if (ips.length > 1) {
+			out.setDimensions(channels, 1, nt);
+			out.setOpenAsHyperStack(true);
+		}
+		out.setCalibration(imp.getCalibration());
+		return out;
+	}
+}
@@ -90,6 +90,28 @@ public class Builder {
 		}
 	}
 
+	/**
+	 * Create an empty stack of a specified type outside of the Java heap.
+	 * 
+	 * @param nx
+	 *            size in X axis
+	 * @param ny
+	 *            size in Y axis
+	 * @param nz
+	 *            size in Z axis
+	 * @param type
+	 *            type of the stack
+	 * @param scope
+	 *            scope which releases the stack, or null if the stack is
+	 *            released by its close()
+	 */
+	public static OffHeapStack createOffHeap(int nx, int ny, int nz, int type, OffHeapScope scope) {
+		OffHeapStack stack = new OffHeapStack(nx, ny, nz, type);
+		if (scope != null)
+			scope.add(stack);
+		return stack;
+	}
+
 	/**
 	 * Create a imageware of from an Java AWT Image.
 	 * 
@@ -1 +1 @@
-package imageware;import ij.ImageStack;import java.awt.Image;/** * Class ByteSet. *  * @author Daniel Sage Biomedical Imaging Group Ecole Polytechnique Federale de *         Lausanne, Lausanne, Switzerland */public class ByteSet extends ByteProcess implements ImageWare {	// ------------------------------------------------------------------	//	// Constructors section	//	// ------------------------------------------------------------------	protected ByteSet(int nx, int ny, int nz) {		super(nx, ny, nz);	}	protected ByteSet(Image image, int mode) {		super(image, mode);	}	protected ByteSet(ImageStack stack, int mode) {		super(stack, mode);	}	protected ByteSet(ImageStack stack, byte chan) {		super(stack, chan);	}	protected ByteSet(byte[] array, int mode) {		super(array, mode);	}	protected ByteSet(byte[][] array, int mode) {		super(array, mode);	}	protected ByteSet(byte[][][] array, int mode) {		super(array, mode);	}	protected ByteSet(short[] array, int mode) {		super(array, mode);	}	protected ByteSet(short[][] array, int mode) {		super(array, mode);	}	protected ByteSet(short[][][] array, int mode) {		super(array, mode);	}	protected ByteSet(float[] array, int mode) {		super(array, mode);	}	protected ByteSet(float[][] array, int mode) {		super(array, mode);	}	protected ByteSet(float[][][] array, int mode) {		super(array, mode);	}	protected ByteSet(double[] array, int mode) {		super(array, mode);	}	protected ByteSet(double[][] array, int mode) {		super(array, mode);	}	protected ByteSet(double[][][] array, int mode) {		super(array, mode);	}	/**	 * Duplicate the imageware.	 * 	 * Create a new imageware with the same size, same type and same data than	 * the calling one.	 * 	 * @return a duplicated version of this imageware	 */	public ImageWare duplicate() {		ImageWare out = new ByteSet(nx, ny, nz);		byte[] outdata;		for (int z = 0; z < nz; z++) {			outdata = (byte[]) (((ByteSet) out).data[z]);			System.arraycopy(data[z], 0, outdata, 0, nxy);		}		return out;	}	/**	 * Replicate the imageware.	 * 	 * Create a new imageware with the same size, same type than the calling	 * one. The data are not copied.	 * 	 * @return a replicated version of this imageware	 */	public ImageWare replicate() {		return new ByteSet(nx, ny, nz);	}	/**	 * Replicate the imageware.	 * 	 * Create a new imageware with the same size and a specified type than the	 * calling one. The data are not copied.	 * 	 * @param type	 *            requested type	 * @return a replicated version of this imageware	 */	public ImageWare replicate(int type) {		switch (type) {		case ImageWare.BYTE:			return new ByteSet(nx, ny, nz);		case ImageWare.SHORT:			return new ShortSet(nx, ny, nz);		case ImageWare.FLOAT:			return new FloatSet(nx, ny, nz);		case ImageWare.DOUBLE:			return new DoubleSet(nx, ny, nz);		default:			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unknown type " + type + "].\n"					+ "-------------------------------------------------------\n");		}	}	/**	 * Copy all the data of source in the current imageware. The source should	 * have the same size and same type than the calling one.	 * 	 * @param source	 *            a source imageware	 */	public void copy(ImageWare source) {		if (nx != source.getSizeX())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same size ("					+ nx + " != " + source.getSizeX() + ").\n" + "-------------------------------------------------------\n");		if (ny != source.getSizeY())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same size ("					+ ny + " != " + source.getSizeY() + ").\n" + "-------------------------------------------------------\n");		if (nz != source.getSizeZ())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same size ("					+ nz + " != " + source.getSizeZ() + ").\n" + "-------------------------------------------------------\n");		if (getType() != source.getType())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same type ("					+ getType() + " != " + source.getType() + ").\n" + "-------------------------------------------------------\n");		byte[] src;		for (int z = 0; z < nz; z++) {			src = (byte[]) (((ByteSet) source).data[z]);			System.arraycopy(src, 0, data[z], 0, nxy);		}	}	/**	 * convert the imageware in a specified type.	 * 	 * Create a new imageware with the same size and converted data than the	 * calling one.	 * 	 * @param type	 *            indicates the type of the output	 * @return a converted version of this imageware	 */	public ImageWare convert(int type) {		if (type == ImageWare.BYTE)			return duplicate();		ImageWare out = null;		switch (type) {		case ImageWare.BYTE: {			byte[] slice;			out = new ByteSet(nx, ny, nz);			byte[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((byte[]) ((ByteSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (byte) (slice[k] & 0xFF);				}			}		}			break;		case ImageWare.SHORT: {			byte[] slice;			out = new ShortSet(nx, ny, nz);			short[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((short[]) ((ShortSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (short) (slice[k] & 0xFF);				}			}		}			break;		case ImageWare.FLOAT: {			byte[] slice;			out = new FloatSet(nx, ny, nz);			float[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((float[]) ((FloatSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (float) (slice[k] & 0xFF);				}			}		}			break;		case ImageWare.DOUBLE: {			byte[] slice;			out = new DoubleSet(nx, ny, nz);			double[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((double[]) ((DoubleSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (double) (slice[k] & 0xFF);				}			}		}			break;		default:			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unknown type " + type + "].\n"					+ "-------------------------------------------------------\n");		}		return out;	}	/**	 * Print information of this ImageWare object.	 */	public void printInfo() {		System.out.println("ImageWare object information");		System.out.println("Dimension: " + getDimension());		System.out.println("Size: [" + nx + ", " + ny + ", " + nz + "]");		System.out.println("TotalSize: " + getTotalSize());		System.out.println("Type: " + getTypeToString());		System.out.println("Maximun: " + getMaximum());		System.out.println("Minimun: " + getMinimum());		System.out.println("Mean: " + getMean());		System.out.println("Norm1: " + getNorm1());		System.out.println("Norm2: " + getNorm2());		System.out.println("Total: " + getTotal());		System.out.println("");	}	/**	 * Show this ImageWare object.	 */	public void show() {		String title = getTypeToString();		switch (getDimension()) {		case 1:			title += " line";			break;		case 2:			title += " image";			break;		case 3:			title += " volume";			break;		}		Display.show(title, this);		// ImagePlus imp = new ImagePlus(title, buildImageStack());		// imp.show();	}	/**	 * Show the data in ImagePlus object with a specify title.	 * 	 * @param title	 *            a string given the title of the window	 */	public void show(String title) {		Display.show(title, this);		// ImagePlus imp = new ImagePlus(title, buildImageStack());		// imp.show();	}	/**	 * Return the minimum value of this imageware.	 * 	 * @return the min value of this imageware	 */	public double getMinimum() {		double min = Double.MAX_VALUE;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++)				if ((slice[k] & 0xFF) < min)					min = slice[k] & 0xFF;		}		return min;	}	/**	 * Return the maximum value of this imageware.	 * 	 * @return the max value of this imageware	 */	public double getMaximum() {		double max = -Double.MAX_VALUE;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++)				if ((slice[k] & 0xFF) > max)					max = slice[k] & 0xFF;		}		return max;	}	/**	 * Return the mean value of this imageware.	 * 	 * @return the mean value of this imageware	 */	public double getMean() {		return getTotal() / (nz * nxy);	}	/**	 * Return the norm value of order 1.	 * 	 * @return the norm value of this imageware in L1 sense	 */	public double getNorm1() {		double norm = 0.0;		double value = 0;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++) {				value = (double) (slice[k] & 0xFF);				norm += (value > 0.0 ? value : -value);			}		}		return norm;	}	/**	 * Return the norm value of order 2.	 * 	 * @return the norm value of this imageware in L2 sense	 */	public double getNorm2() {		double norm = 0.0;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++)				norm += (slice[k] & 0xFF) * (slice[k] & 0xFF);		}		return norm;	}	/**	 * Return the sum of all pixel in this imageware.	 * 	 * @return the total sum of all pixel in this imageware	 */	public double getTotal() {		double total = 0.0;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++)				total += slice[k] & 0xFF;		}		return total;	}	/**	 * Return the the minumum [0] and the maximum [1] value of this imageware.	 * Faster routine than call one getMinimum() and then one getMaximum().	 * 	 * @return an array of two values, the min and the max values of the images	 */	public double[] getMinMax() {		double max = -Double.MAX_VALUE;		double min = Double.MAX_VALUE;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++) {				if ((slice[k] & 0xFF) > max)					max = slice[k] & 0xFF;				if ((slice[k] & 0xFF) < min)					min = slice[k] & 0xFF;			}		}		double minmax[] = { min, max };		return minmax;	}} // end of class
\ No newline at end of file
+package imageware;import ij.ImageStack;import java.awt.Image;/** * Class ByteSet. *  * @author Daniel Sage Biomedical Imaging Group Ecole Polytechnique Federale de *         Lausanne, Lausanne, Switzerland */public class ByteSet extends ByteProcess implements ImageWare {	// ------------------------------------------------------------------	//	// Constructors section	//	// ------------------------------------------------------------------	protected ByteSet(int nx, int ny, int nz) {		super(nx, ny, nz);	}	protected ByteSet(Image image, int mode) {		super(image, mode);	}	protected ByteSet(ImageStack stack, int mode) {		super(stack, mode);	}	protected ByteSet(ImageStack stack, byte chan) {		super(stack, chan);	}	protected ByteSet(byte[] array, int mode) {		super(array, mode);	}	protected ByteSet(byte[][] array, int mode) {		super(array, mode);	}	protected ByteSet(byte[][][] array, int mode) {		super(array, mode);	}	protected ByteSet(short[] array, int mode) {		super(array, mode);	}	protected ByteSet(short[][] array, int mode) {		super(array, mode);	}	protected ByteSet(short[][][] array, int mode) {		super(array, mode);	}	protected ByteSet(float[] array, int mode) {		super(array, mode);	}	protected ByteSet(float[][] array, int mode) {		super(array, mode);	}	protected ByteSet(float[][][] array, int mode) {		super(array, mode);	}	protected ByteSet(double[] array, int mode) {		super(array, mode);	}	protected ByteSet(double[][] array, int mode) {		super(array, mode);	}	protected ByteSet(double[][][] array, int mode) {		super(array, mode);	}	/**	 * Duplicate the imageware.	 * 	 * Create a new imageware with the same size, same type and same data than	 * the calling one.	 * 	 * @return a duplicated version of this imageware	 */	public ImageWare duplicate() {		ImageWare out = new ByteSet(nx, ny, nz);		byte[] outdata;		for (int z = 0; z < nz; z++) {			outdata = (byte[]) (((ByteSet) out).data[z]);			System.arraycopy(data[z], 0, outdata, 0, nxy);		}		return out;	}	/**	 * Replicate the imageware.	 * 	 * Create a new imageware with the same size, same type than the calling	 * one. The data are not copied.	 * 	 * @return a replicated version of this imageware	 */	public ImageWare replicate() {		return new ByteSet(nx, ny, nz);	}	/**	 * Replicate the imageware.	 * 	 * Create a new imageware with the same size and a specified type than the	 * calling one. The data are not copied.	 * 	 * @param type	 *            requested type	 * @return a replicated version of this imageware	 */	public ImageWare replicate(int type) {		switch (type) {		case ImageWare.BYTE:			return new ByteSet(nx, ny, nz);		case ImageWare.SHORT:			return new ShortSet(nx, ny, nz);		case ImageWare.FLOAT:			return new FloatSet(nx, ny, nz);		case ImageWare.DOUBLE:			return new DoubleSet(nx, ny, nz);		default:			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unknown type " + type + "].\n"					+ "-------------------------------------------------------\n");		}	}	/**	 * Copy all the data of source in the current imageware. The source should	 * have the same size and same type than the calling one.	 * 	 * @param source	 *            a source imageware	 */	public void copy(ImageWare source) {		if (nx != source.getSizeX())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same size ("					+ nx + " != " + source.getSizeX() + ").\n" + "-------------------------------------------------------\n");		if (ny != source.getSizeY())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same size ("					+ ny + " != " + source.getSizeY() + ").\n" + "-------------------------------------------------------\n");		if (nz != source.getSizeZ())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same size ("					+ nz + " != " + source.getSizeZ() + ").\n" + "-------------------------------------------------------\n");		if (getType() != source.getType())			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unable to copy because it is not the same type ("					+ getType() + " != " + source.getType() + ").\n" + "-------------------------------------------------------\n");		byte[] src;		for (int z = 0; z < nz; z++) {			src = (byte[]) (((ByteSet) source).data[z]);			System.arraycopy(src, 0, data[z], 0, nxy);		}	}	/**	 * convert the imageware in a specified type.	 * 	 * Create a new imageware with the same size and converted data than the	 * calling one.	 * 	 * @param type	 *            indicates the type of the output	 * @return a converted version of this imageware	 */	public ImageWare convert(int type) {		if (type == ImageWare.BYTE)			return duplicate();		ImageWare out = null;		switch (type) {		case ImageWare.BYTE: {			byte[] slice;			out = new ByteSet(nx, ny, nz);			byte[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((byte[]) ((ByteSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (byte) (slice[k] & 0xFF);				}			}		}			break;		case ImageWare.SHORT: {			byte[] slice;			out = new ShortSet(nx, ny, nz);			short[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((short[]) ((ShortSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (short) (slice[k] & 0xFF);				}			}		}			break;		case ImageWare.FLOAT: {			byte[] slice;			out = new FloatSet(nx, ny, nz);			float[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((float[]) ((FloatSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (float) (slice[k] & 0xFF);				}			}		}			break;		case ImageWare.DOUBLE: {			byte[] slice;			out = new DoubleSet(nx, ny, nz);			double[] outslice;			for (int z = 0; z < nz; z++) {				slice = ((byte[]) data[z]);				outslice = ((double[]) ((DoubleSet) out).data[z]);				for (int k = 0; k < nxy; k++) {					outslice[k] = (double) (slice[k] & 0xFF);				}			}		}			break;		default:			throw new ArrayStoreException("\n-------------------------------------------------------\n" + "Error in imageware package\n" + "Unknown type " + type + "].\n"					+ "-------------------------------------------------------\n");		}		return out;	}	/**	 * Print information of this ImageWare object.	 */	public void printInfo() {		System.out.println("ImageWare object information");		System.out.println("Dimension: " + getDimension());		System.out.println("Size: [" + nx + ", " + ny + ", " + nz + "]");		System.out.println("TotalSize: " + getTotalSize());		System.out.println("Type: " + getTypeToString());		System.out.println("Maximun: " + getMaximum());		System.out.println("Minimun: " + getMinimum());		System.out.println("Mean: " + getMean());		System.out.println("Norm1: " + getNorm1());		System.out.println("Norm2: " + getNorm2());		System.out.println("Total: " + getTotal());		System.out.println("");	}	/**	 * Show this ImageWare object.	 */	public void show() {		String title = getTypeToString();		switch (getDimension()) {		case 1:			title += " line";			break;		case 2:			title += " image";			break;		case 3:			title += " volume";			break;		}		Display.show(title, this);		// ImagePlus imp = new ImagePlus(title, buildImageStack());		// imp.show();	}	/**	 * Show the data in ImagePlus object with a specify title.	 * 	 * @param title	 *            a string given the title of the window	 */	public void show(String title) {		Display.show(title, this);		// ImagePlus imp = new ImagePlus(title, buildImageStack());		// imp.show();	}	/**	 * Return the minimum value of this imageware.	 * 	 * @return the min value of this imageware	 */	public double getMinimum() {		final double[] minima = new double[Parallelism.countBlocks(nx, ny, nz)];		Parallelism.forBlocks(nx, ny, nz, new Parallelism.Block() {			public void run(int block, int z, int begin, int end) {				double min = Double.MAX_VALUE;				byte[] slice = ((byte[]) data[z]);				for (int k = begin; k < end; k++)					if ((slice[k] & 0xFF) < min)						min = slice[k] & 0xFF;				minima[block] = min;			}		});		double min = Double.MAX_VALUE;		for (int block = 0; block < minima.length; block++) {			if (minima[block] < min)				min = minima[block];		}		return min;	}	/**	 * Return the maximum value of this imageware.	 * 	 * @return the max value of this imageware	 */	public double getMaximum() {		final double[] maxima = new double[Parallelism.countBlocks(nx, ny, nz)];		Parallelism.forBlocks(nx, ny, nz, new Parallelism.Block() {			public void run(int block, int z, int begin, int end) {				double max = -Double.MAX_VALUE;				byte[] slice = ((byte[]) data[z]);				for (int k = begin; k < end; k++)					if ((slice[k] & 0xFF) > max)						max = slice[k] & 0xFF;				maxima[block] = max;			}		});		double max = -Double.MAX_VALUE;		for (int block = 0; block < maxima.length; block++) {			if (maxima[block] > max)				max = maxima[block];		}		return max;	}	/**	 * Return the mean value of this imageware.	 * 	 * @return the mean value of this imageware	 */	public double getMean() {		return getTotal() / (nz * nxy);	}	/**	 * Return the norm value of order 1.	 * 	 * @return the norm value of this imageware in L1 sense	 */	public double getNorm1() {		double norm = 0.0;		double value = 0;		byte[] slice;		for (int z = 0; z < nz; z++) {			slice = ((byte[]) data[z]);			for (int k = 0; k < nxy; k++) {				value = (double) (slice[k] & 0xFF);				norm += (value > 0.0 ? value : -value);			}		}		return norm;	}	/**	 * Return the norm value of order 2.	 * 	 * @return the norm value of this imageware in L2 sense	 */	public double getNorm2() {		final double[] partial = new double[Parallelism.countBlocks(nx, ny, nz)];		Parallelism.forBlocks(nx, ny, nz, new Parallelism.Block() {			public void run(int block, int z, int begin, int end) {				double norm = 0.0;				byte[] slice = ((byte[]) data[z]);				for (int k = begin; k < end; k++)					norm += (slice[k] & 0xFF) * (slice[k] & 0xFF);				partial[block] = norm;			}		});		double norm = 0.0;		for (int block = 0; block < partial.length; block++) {			norm += partial[block];		}		return norm;	}	/**	 * Return the sum of all pixel in this imageware.	 * 	 * @return the total sum of all pixel in this imageware	 */	public double getTotal() {		final double[] partial = new double[Parallelism.countBlocks(nx, ny, nz)];		Parallelism.forBlocks(nx, ny, nz, new Parallelism.Block() {			public void run(int block, int z, int begin, int end) {				double total = 0.0;				byte[] slice = ((byte[]) data[z]);				for (int k = begin; k < end; k++)					total += slice[k] & 0xFF;				partial[block] = total;			}		});		double total = 0.0;		for (int block = 0; block < partial.length; block++) {			total += partial[block];		}		return total;	}	/**	 * Return the the minumum [0] and the maximum [1] value of this imageware.	 * Faster routine than call one getMinimum() and then one getMaximum().	 * 	 * @return an array of two values, the min and the max values of the images	 */	public double[] getMinMax() {		final double[] maxima = new double[Parallelism.countBlocks(nx, ny, nz)];		final double[] minima = new double[Parallelism.countBlocks(nx, ny, nz)];		Parallelism.forBlocks(nx, ny, nz, new Parallelism.Block() {			public void run(int block, int z, int begin, int end) {				double max = -Double.MAX_VALUE;				double min = Double.MAX_VALUE;				byte[] slice = ((byte[]) data[z]);				for (int k = begin; k < end; k++) {					if ((slice[k] & 0xFF) > max)						max = slice[k] & 0xFF;					if ((slice[k] & 0xFF) < min)						min = slice[k] & 0xFF;				}				maxima[block] = max;				minima[block] = min;			}		});		double max = -Double.MAX_VALUE;		double min = Double.MAX_VALUE;		for (int block = 0; block < maxima.length; block++) {			if (maxima[block] > max)				max = maxima[block];			if (minima[block] < min)				min = minima[block];		}		double minmax[] = { min, max };		return minmax;	}} // end of class
\ No newline at end of file
@@ -0,0 +1,403 @@
+package imageware;
+
+import java.util.Arrays;
+
+/**
+ * Class Expression.
+ *
+ * Lazy pointwise expression on imagewares: the operations are recorded and
+ * evaluated together in one pass over the pixels, without intermediate
+ * imageware. For instance, the magnitude of a gradient
+ *
+ * <pre>
+ * Expression.of(gx).sqr().add(Expression.of(gy).sqr()).sqrt().evaluate(gx);
+ * </pre>
+ *
+ * reads gx and gy once and writes gx once, where gx.pow(2), gy.pow(2),
+ * gx.add(gy) and gx.sqrt() make four passes. The evaluation runs by blocks
+ * of Parallelism, in parallel, and by chunks of CHUNK pixels inside the
+ * blocks.
+ *
+ * The expressions are immutable, an operation returns a new expression. The
+ * values are computed in double; for a FLOAT output, each intermediate result
+ * and each constant is rounded to float, as in the in-place operations of a
+ * FLOAT imageware, so that the result is the same as theirs. The output can be
+ * one of the operands.
+ */
+
+public abstract class Expression {
+
+	/**
+	 * Number of pixels evaluated at once.
+	 */
+	public static final int CHUNK = 1024;
+
+	private static final int ADD = 0;
+	private static final int SUBTRACT = 1;
+	private static final int MULTIPLY = 2;
+	private static final int DIVIDE = 3;
+
+	private static final int ABS = 0;
+	private static final int SQRT = 1;
+	private static final int SQR = 2;
+	private static final int LOG = 3;
+	private static final int EXP = 4;
+	private static final int NEGATE = 5;
+	private static final int POW = 6;
+
+	private final int nx;
+	private final int ny;
+	private final int nz;
+
+	private Expression(int nx, int ny, int nz) {
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+	}
+
+	/**
+	 * Expression of the pixels of an imageware.
+	 */
+	public static Expression of(ImageWare image) {
+		return new Operand(image);
+	}
+
+	/**
+	 * Constant expression, of the size of the other operands.
+	 */
+	public static Expression constant(double value) {
+		return new Constant(value);
+	}
+
+	public Expression add(Expression expression) {
+		return new Binary(ADD, this, expression);
+	}
+
+	public Expression subtract(Expression expression) {
+		return new Binary(SUBTRACT, this, expression);
+	}
+
+	public Expression multiply(Expression expression) {
+		return new Binary(MULTIPLY, this, expression);
+	}
+
+	public Expression divide(Expression expression) {
+		return new Binary(DIVIDE, this, expression);
+	}
+
+	public Expression add(double constant) {
+		return add(constant(constant));
+	}
+
+	public Expression multiply(double constant) {
+		return multiply(constant(constant));
+	}
+
+	public Expression abs() {
+		return new Unary(ABS, 0.0, this);
+	}
+
+	public Expression sqrt() {
+		return new Unary(SQRT, 0.0, this);
+	}
+
+	public Expression sqr() {
+		return new Unary(SQR, 0.0, this);
+	}
+
+	public Expression log() {
+		return new Unary(LOG, 0.0, this);
+	}
+
+	public Expression exp() {
+		return new Unary(EXP, 0.0, this);
+	}
+
+	public Expression negate() {
+		return new Unary(NEGATE, 0.0, this);
+	}
+
+	public Expression pow(double a) {
+		return new Unary(POW, a, this);
+	}
+
+	/**
+	 * Evaluate the expression into a new imageware of the given type, of the
+	 * size of the operands.
+	 */
+	public ImageWare evaluate(int type) {
+		if (nx < 0)
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "Unable to evaluate an expression without imageware.\n"
+					+ "-------------------------------------------------------\n");
+		ImageWare output = Builder.create(nx, ny, nz, type);
+		evaluate(output);
+		return output;
+	}
+
+	/**
+	 * Evaluate the expression into an imageware of the size of the operands,
+	 * which can be one of them.
+	 */
+	public void evaluate(final ImageWare output) {
+		final int nx = output.getSizeX();
+		final int ny = output.getSizeY();
+		final int nz = output.getSizeZ();
+		if (this.nx >= 0 && (this.nx != nx || this.ny != ny || this.nz != nz))
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "Unable to evaluate the expression because the output is not the same size.\n"
+					+ "[" + this.nx + "," + this.ny + "," + this.nz + "] != " + "[" + nx + "," + ny + "," + nz + "].\n"
+					+ "-------------------------------------------------------\n");
+		final int type = output.getType();
+		final boolean single = (type == ImageWare.FLOAT);
+		final int registers = getDepth();
+		Parallelism.forBlocks(nx, ny, nz, new Parallelism.Block() {
+			public void run(int block, int z, int begin, int end) {
+				double[][] buffers = new double[registers][CHUNK];
+				double[] values = buffers[0];
+				for (int k = begin; k < end; k += CHUNK) {
+					int n = Math.min(CHUNK, end - k);
+					evaluate(z, k, n, single, buffers, 0);
+					store(output, type, z, k, n, values);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Number of buffers of the evaluation.
+	 */
+	abstract int getDepth();
+
+	/**
+	 * Values of the pixels index to index+n-1 of the slice z, into
+	 * buffers[register]; the buffers after register are free.
+	 */
+	abstract void evaluate(int z, int index, int n, boolean single, double[][] buffers, int register);
+
+	private static void store(ImageWare output, int type, int z, int index, int n, double[] values) {
+		switch (type) {
+		case ImageWare.BYTE: {
+			byte[] slice = output.getSliceByte(z);
+			for (int k = 0; k < n; k++)
+				slice[index + k] = (byte) values[k];
+		}
+			break;
+		case ImageWare.SHORT: {
+			short[] slice = output.getSliceShort(z);
+			for (int k = 0; k < n; k++)
+				slice[index + k] = (short) values[k];
+		}
+			break;
+		case ImageWare.FLOAT: {
+			float[] slice = output.getSliceFloat(z);
+			for (int k = 0; k < n; k++)
+				slice[index + k] = (float) values[k];
+		}
+			break;
+		case ImageWare.DOUBLE:
+			System.arraycopy(values, 0, output.getSliceDouble(z), index, n);
+			break;
+		default:
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "Unknown type " + type + "].\n"
+					+ "-------------------------------------------------------\n");
+		}
+	}
+
+	private static final class Operand extends Expression {
+		private final ImageWare image;
+
+		Operand(ImageWare image) {
+			super(image.getSizeX(), image.getSizeY(), image.getSizeZ());
+			this.image = image;
+		}
+
+		int getDepth() {
+			return 1;
+		}
+
+		void evaluate(int z, int index, int n, boolean single, double[][] buffers, int register) {
+			double[] out = buffers[register];
+			switch (image.getType()) {
+			case ImageWare.BYTE: {
+				byte[] slice = image.getSliceByte(z);
+				for (int k = 0; k < n; k++)
+					out[k] = slice[index + k] & 0xFF;
+			}
+				break;
+			case ImageWare.SHORT: {
+				short[] slice = image.getSliceShort(z);
+				for (int k = 0; k < n; k++)
+					out[k] = slice[index + k] & 0xFFFF;
+			}
+				break;
+			case ImageWare.FLOAT: {
+				float[] slice = image.getSliceFloat(z);
+				for (int k = 0; k < n; k++)
+					out[k] = slice[index + k];
+			}
+				break;
+			case ImageWare.DOUBLE:
+				System.arraycopy(image.getSliceDouble(z), index, out, 0, n);
+				break;
+			default:
+				throw new ArrayStoreException("\n-------------------------------------------------------\n"
+						+ "Error in imageware package\n" + "Unknown type " + image.getType() + "].\n"
+						+ "-------------------------------------------------------\n");
+			}
+		}
+	}
+
+	private static final class Constant extends Expression {
+		private final double value;
+
+		Constant(double value) {
+			super(-1, -1, -1);
+			this.value = value;
+		}
+
+		int getDepth() {
+			return 1;
+		}
+
+		void evaluate(int z, int index, int n, boolean single, double[][] buffers, int register) {
+			Arrays.fill(buffers[register], 0, n, single ? (float) value : value);
+		}
+	}
+
+	private static final class Unary extends Expression {
+		private final int operation;
+		private final double parameter;
+		private final Expression operand;
+
+		Unary(int operation, double parameter, Expression operand) {
+			super(operand.nx, operand.ny, operand.nz);
+			this.operation = operation;
+			this.parameter = parameter;
+			this.operand = operand;
+		}
+
+		int getDepth() {
+			return operand.getDepth();
+		}
+
+		void evaluate(int z, int index, int n, boolean single, double[][] buffers, int register) {
+			operand.evaluate(z, index, n, single, buffers, register);
+			double[] out = buffers[register];
+			switch (operation) {
+			case ABS:
+				for (int k = 0; k < n; k++)
+					out[k] = Math.abs(out[k]);
+				break;
+			case SQRT:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) Math.sqrt(out[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] = Math.sqrt(out[k]);
+				break;
+			case SQR:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) (out[k] * out[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] = out[k] * out[k];
+				break;
+			case LOG:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) Math.log(out[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] = Math.log(out[k]);
+				break;
+			case EXP:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) Math.exp(out[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] = Math.exp(out[k]);
+				break;
+			case NEGATE:
+				for (int k = 0; k < n; k++)
+					out[k] = -out[k];
+				break;
+			case POW:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) Math.pow(out[k], parameter);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] = Math.pow(out[k], parameter);
+				break;
+			}
+		}
+	}
+
+	private static final class Binary extends Expression {
+		private final int operation;
+		private final Expression left;
+		private final Expression right;
+
+		Binary(int operation, Expression left, Expression right) {
+			super(left.nx >= 0 ? left.nx : right.nx, left.nx >= 0 ? left.ny : right.ny, left.nx >= 0 ? left.nz : right.nz);
+			if (left.nx >= 0 && right.nx >= 0 && (left.nx != right.nx || left.ny != right.ny || left.nz != right.nz))
+				throw new ArrayStoreException("\n-------------------------------------------------------\n"
+						+ "Error in imageware package\n" + "Unable to combine the expressions because the operands are not the same size.\n"
+						+ "[" + left.nx + "," + left.ny + "," + left.nz + "] != " + "[" + right.nx + "," + right.ny + "," + right.nz + "].\n"
+						+ "-------------------------------------------------------\n");
+			this.operation = operation;
+			this.left = left;
+			this.right = right;
+		}
+
+		int getDepth() {
+			return Math.max(left.getDepth(), right.getDepth() + 1);
+		}
+
+		void evaluate(int z, int index, int n, boolean single, double[][] buffers, int register) {
+			left.evaluate(z, index, n, single, buffers, register);
+			right.evaluate(z, index, n, single, buffers, register + 1);
+			double[] out = buffers[register];
+			double[] operand = buffers[register + 1];
+			switch (operation) {
+			case ADD:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) (out[k] + operand[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] += operand[k];
+				break;
+			case SUBTRACT:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) (out[k] - operand[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] -= operand[k];
+				break;
+			case MULTIPLY:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) (out[k] * operand[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] *= operand[k];
+				break;
+			case DIVIDE:
+				if (single)
+					for (int k = 0; k < n; k++)
+						out[k] = (float) (out[k] / operand[k]);
+				else
+					for (int k = 0; k < n; k++)
+						out[k] /= operand[k];
+				break;
+			}
+		}
+	}
+}
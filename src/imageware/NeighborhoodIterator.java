@@ -0,0 +1,131 @@
+package imageware;
+
+/**
+ * Class NeighborhoodIterator.
+ *
+ * Window of a PaddedView which slides along the rows of the view, one pixel
+ * at a time. The window is centered on the pixel (getX(), getY()) as in
+ * getNeighborhoodXY(); its pixel (i,j), i from 0 to windowX-1 and j from 0
+ * to windowY-1, is get(i, j). The column leaving the window and the column
+ * entering it at the next move are available for the running sums and
+ * histograms.
+ *
+ * <pre>
+ * NeighborhoodIterator window = view.iterator();
+ * for (int y = 0; y &lt; ny; y++)
+ * 	for (window.setRow(y); window.hasNext(); window.next()) {
+ * 		...
+ * 	}
+ * </pre>
+ *
+ * The iterator does not allocate.
+ */
+
+public class NeighborhoodIterator {
+
+	private final double[] pixels;
+	private final int stride;
+	private final int nx;
+	private final int windowX;
+	private final int windowY;
+	private int x;
+	private int y;
+	private int offset;
+
+	NeighborhoodIterator(PaddedView view) {
+		this.pixels = view.getPixels();
+		this.stride = view.getStride();
+		this.nx = view.getSizeX();
+		this.windowX = view.getWindowX();
+		this.windowY = view.getWindowY();
+	}
+
+	/**
+	 * Center the window on the first pixel of the row y.
+	 */
+	public void setRow(int y) {
+		moveTo(0, y);
+	}
+
+	/**
+	 * Center the window on the pixel (x,y).
+	 */
+	public void moveTo(int x, int y) {
+		this.x = x;
+		this.y = y;
+		this.offset = x + y * stride;
+	}
+
+	/**
+	 * True while the window is centered on a pixel of the row.
+	 */
+	public boolean hasNext() {
+		return x < nx;
+	}
+
+	/**
+	 * Move the window by one pixel along the row.
+	 */
+	public void next() {
+		x++;
+		offset++;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Pixel (i,j) of the window.
+	 */
+	public double get(int i, int j) {
+		return pixels[offset + i + j * stride];
+	}
+
+	/**
+	 * Center pixel of the window.
+	 */
+	public double getCenter() {
+		return pixels[offset + windowX / 2 + (windowY / 2) * stride];
+	}
+
+	/**
+	 * Pixel j of the first column of the window, which leaves the window at
+	 * the next move.
+	 */
+	public double getLeaving(int j) {
+		return pixels[offset + j * stride];
+	}
+
+	/**
+	 * Pixel j of the column which enters the window at the next move, valid
+	 * if the window is not centered on the last pixel of the row.
+	 */
+	public double getEntering(int j) {
+		return pixels[offset + windowX + j * stride];
+	}
+
+	/**
+	 * Copy the window into buffer of windowX * windowY values, column by
+	 * column: buffer[i * windowY + j] is the pixel (i,j) of the window, as
+	 * buffer[i][j] of getNeighborhoodXY().
+	 */
+	public void getWindow(double[] buffer) {
+		int k = 0;
+		for (int i = 0; i < windowX; i++)
+			for (int j = 0; j < windowY; j++)
+				buffer[k++] = pixels[offset + i + j * stride];
+	}
+
+	/**
+	 * Index of the top-left pixel of the window in the padded pixels of the
+	 * view.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+}
@@ -0,0 +1,59 @@
+package imageware;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+
+/**
+ * Class OffHeapScope.
+ *
+ * Lifetime of off-heap stacks: the stacks created in a scope by
+ * Builder.createOffHeap() are released together by its close(), typically at
+ * the end of the job which uses them.
+ *
+ * <pre>
+ * OffHeapScope scope = new OffHeapScope();
+ * try {
+ * 	OffHeapStack stack = Builder.createOffHeap(nx, ny, nz, ImageWare.FLOAT, scope);
+ * 	...
+ * }
+ * finally {
+ * 	scope.close();
+ * }
+ * </pre>
+ */
+
+public class OffHeapScope implements Closeable {
+
+	private final ArrayList<OffHeapStack> stacks = new ArrayList<OffHeapStack>();
+	private boolean closed = false;
+
+	synchronized void add(OffHeapStack stack) {
+		if (closed) {
+			stack.close();
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "The off-heap scope is closed.\n"
+					+ "-------------------------------------------------------\n");
+		}
+		stacks.add(stack);
+	}
+
+	/**
+	 * Size in bytes of the stacks of the scope which are not closed.
+	 */
+	public synchronized long getSizeInBytes() {
+		long size = 0;
+		for (OffHeapStack stack : stacks)
+			if (!stack.isClosed()) size += stack.getSizeInBytes();
+		return size;
+	}
+
+	/**
+	 * Release the memory of all the stacks of the scope.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (OffHeapStack stack : stacks)
+			stack.close();
+		stacks.clear();
+	}
+}
@@ -0,0 +1,239 @@
+package imageware;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Class OffHeapStack.
+ *
+ * Stack of pixels stored outside of the Java heap, in one direct buffer per
+ * slice, with the pixel and row accessors of the imagewares. The pixels are
+ * read and written as double values, unsigned for the BYTE and SHORT types.
+ * A large stack does not load the garbage collector, which neither copies
+ * nor scans it.
+ *
+ * The memory is released by close(), or by the close() of the OffHeapScope
+ * of the stack; it must not be in use by another thread at that time. The
+ * direct memory is limited by the option -XX:MaxDirectMemorySize of the JVM,
+ * by default the maximum size of the heap.
+ *
+ * Created by Builder.createOffHeap().
+ */
+
+public class OffHeapStack {
+
+	private final int nx;
+	private final int ny;
+	private final int nz;
+	private final int type;
+	private final int bytes;
+	private ByteBuffer[] slices;
+
+	OffHeapStack(int nx, int ny, int nz, int type) {
+		switch (type) {
+		case ImageWare.BYTE:
+			bytes = 1;
+			break;
+		case ImageWare.SHORT:
+			bytes = 2;
+			break;
+		case ImageWare.FLOAT:
+			bytes = 4;
+			break;
+		case ImageWare.DOUBLE:
+			bytes = 8;
+			break;
+		default:
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "Unknown type " + type + ".\n"
+					+ "-------------------------------------------------------\n");
+		}
+		if ((long) nx * ny * bytes > Integer.MAX_VALUE)
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "Unable to allocate a slice of " + nx + "x" + ny
+					+ " pixels outside of the heap.\n" + "-------------------------------------------------------\n");
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		this.type = type;
+		this.slices = new ByteBuffer[nz];
+		try {
+			for (int z = 0; z < nz; z++)
+				slices[z] = ByteBuffer.allocateDirect(nx * ny * bytes).order(ByteOrder.nativeOrder());
+		}
+		catch (OutOfMemoryError ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getSizeX() {
+		return nx;
+	}
+
+	public int getSizeY() {
+		return ny;
+	}
+
+	public int getSizeZ() {
+		return nz;
+	}
+
+	/**
+	 * Size of the pixels in bytes.
+	 */
+	public long getSizeInBytes() {
+		return (long) nx * ny * nz * bytes;
+	}
+
+	public boolean isClosed() {
+		return slices == null;
+	}
+
+	public double getPixel(int x, int y, int z) {
+		return get(slice(z), x + y * nx);
+	}
+
+	public void putPixel(int x, int y, int z, double value) {
+		put(slice(z), x + y * nx, value);
+	}
+
+	/**
+	 * Copy the row y of the slice z, from x, into a buffer.
+	 */
+	public void getX(int x, int y, int z, double[] buffer) {
+		ByteBuffer slice = slice(z);
+		int offset = x + y * nx;
+		for (int i = 0; i < buffer.length; i++)
+			buffer[i] = get(slice, offset + i);
+	}
+
+	/**
+	 * Copy a buffer into the row y of the slice z, from x.
+	 */
+	public void putX(int x, int y, int z, double[] buffer) {
+		ByteBuffer slice = slice(z);
+		int offset = x + y * nx;
+		for (int i = 0; i < buffer.length; i++)
+			put(slice, offset + i, buffer[i]);
+	}
+
+	/**
+	 * Copy the slice z into an array of nx*ny values, row by row.
+	 */
+	public void getXY(int z, double[] buffer) {
+		getX(0, 0, z, buffer);
+	}
+
+	/**
+	 * Copy an array of nx*ny values, row by row, into the slice z.
+	 */
+	public void putXY(int z, double[] buffer) {
+		putX(0, 0, z, buffer);
+	}
+
+	/**
+	 * Copy the slice z into the slice zi of an imageware of the same size in
+	 * X and Y.
+	 */
+	public void getXY(int z, ImageWare image, int zi) {
+		double[] row = new double[nx];
+		for (int y = 0; y < ny; y++) {
+			getX(0, y, z, row);
+			image.putX(0, y, zi, row);
+		}
+	}
+
+	/**
+	 * Copy the slice zi of an imageware of the same size in X and Y into the
+	 * slice z.
+	 */
+	public void putXY(int z, ImageWare image, int zi) {
+		double[] row = new double[nx];
+		for (int y = 0; y < ny; y++) {
+			image.getX(0, y, zi, row);
+			putX(0, y, z, row);
+		}
+	}
+
+	/**
+	 * Release the memory of the stack; the stack can not be used anymore.
+	 */
+	public void close() {
+		ByteBuffer[] released = slices;
+		slices = null;
+		if (released == null) return;
+		for (int z = 0; z < released.length; z++)
+			if (released[z] != null) free(released[z]);
+	}
+
+	private ByteBuffer slice(int z) {
+		if (slices == null)
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "The off-heap stack is closed.\n"
+					+ "-------------------------------------------------------\n");
+		return slices[z];
+	}
+
+	private double get(ByteBuffer slice, int index) {
+		switch (type) {
+		case ImageWare.BYTE:
+			return slice.get(index) & 0xFF;
+		case ImageWare.SHORT:
+			return slice.getShort(index << 1) & 0xFFFF;
+		case ImageWare.FLOAT:
+			return slice.getFloat(index << 2);
+		default:
+			return slice.getDouble(index << 3);
+		}
+	}
+
+	private void put(ByteBuffer slice, int index, double value) {
+		switch (type) {
+		case ImageWare.BYTE:
+			slice.put(index, (byte) value);
+			break;
+		case ImageWare.SHORT:
+			slice.putShort(index << 1, (short) value);
+			break;
+		case ImageWare.FLOAT:
+			slice.putFloat(index << 2, (float) value);
+			break;
+		default:
+			slice.putDouble(index << 3, value);
+		}
+	}
+
+	/**
+	 * Release the memory of a direct buffer at once, with the cleaner of the
+	 * JVM: Unsafe.invokeCleaner() from Java 9, DirectBuffer.cleaner() in Java
+	 * 8. If neither is available, the memory is released by the garbage
+	 * collector, when the buffer is collected.
+	 */
+	private static void free(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			invokeCleaner.invoke(field.get(null), buffer);
+			return;
+		}
+		catch (Exception ex) {
+		}
+		try {
+			Method getCleaner = buffer.getClass().getMethod("cleaner");
+			getCleaner.setAccessible(true);
+			Object cleaner = getCleaner.invoke(buffer);
+			if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+		}
+		catch (Exception ex) {
+		}
+	}
+}
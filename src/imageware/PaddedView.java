@@ -0,0 +1,141 @@
+package imageware;
+
+/**
+ * Class PaddedView.
+ *
+ * Copy of a rectangle of one slice of an imageware, extended at its borders
+ * for the windows of size windowX x windowY, with the boundary conditions of
+ * getNeighborhoodXY(), MIRROR or PERIODIC. The window centered on the pixel
+ * (x,y) of the rectangle starts at the index x + y * getStride() of the
+ * padded pixels: the windows are read without boundary test.
+ *
+ * The view can be filled again from another slice or rectangle of the same
+ * size without allocation.
+ */
+
+public class PaddedView {
+
+	private final int nx;
+	private final int ny;
+	private final int windowX;
+	private final int windowY;
+	private final byte boundaryConditions;
+	private final int stride;
+	private final double[] pixels;
+	private final double[] row;
+	private final int[] xs;
+
+	/**
+	 * Padded view of the slice z of an imageware.
+	 */
+	public PaddedView(ImageWare image, int z, int windowX, int windowY, byte boundaryConditions) {
+		this(image, 0, 0, z, image.getSizeX(), image.getSizeY(), windowX, windowY, boundaryConditions);
+	}
+
+	/**
+	 * Padded view of the rectangle nx x ny at (x0,y0) of the slice z of an
+	 * imageware, the boundary conditions apply to the borders of the
+	 * rectangle.
+	 */
+	public PaddedView(ImageWare image, int x0, int y0, int z, int nx, int ny, int windowX, int windowY,
+			byte boundaryConditions) {
+		if (boundaryConditions != ImageWare.MIRROR && boundaryConditions != ImageWare.PERIODIC)
+			throw new ArrayStoreException("\n-------------------------------------------------------\n"
+					+ "Error in imageware package\n" + "Unable to pad the image.\n"
+					+ "The boundary conditions should be MIRROR or PERIODIC.\n"
+					+ "-------------------------------------------------------\n");
+		this.nx = nx;
+		this.ny = ny;
+		this.windowX = windowX;
+		this.windowY = windowY;
+		this.boundaryConditions = boundaryConditions;
+		this.stride = nx + windowX - 1;
+		this.pixels = new double[stride * (ny + windowY - 1)];
+		this.row = new double[nx];
+		this.xs = new int[stride];
+		int period = getPeriod(nx);
+		for (int i = 0; i < stride; i++)
+			xs[i] = extend(i - windowX / 2, nx, period);
+		fill(image, x0, y0, z);
+	}
+
+	/**
+	 * Fill the view from the rectangle at (x0,y0) of the slice z of an
+	 * imageware.
+	 */
+	public void fill(ImageWare image, int x0, int y0, int z) {
+		int period = getPeriod(ny);
+		int nyp = ny + windowY - 1;
+		int last = -1;
+		for (int j = 0; j < nyp; j++) {
+			int y = extend(j - windowY / 2, ny, period);
+			if (y != last) {
+				image.getX(x0, y0 + y, z, row);
+				last = y;
+			}
+			int offset = j * stride;
+			for (int i = 0; i < stride; i++)
+				pixels[offset + i] = row[xs[i]];
+		}
+	}
+
+	/**
+	 * Neighborhood iterator of windowX x windowY on this view.
+	 */
+	public NeighborhoodIterator iterator() {
+		return new NeighborhoodIterator(this);
+	}
+
+	/**
+	 * Padded pixels, row by row, getStride() pixels per row.
+	 */
+	public double[] getPixels() {
+		return pixels;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	public int getSizeX() {
+		return nx;
+	}
+
+	public int getSizeY() {
+		return ny;
+	}
+
+	public int getWindowX() {
+		return windowX;
+	}
+
+	public int getWindowY() {
+		return windowY;
+	}
+
+	/**
+	 * Pixel (x,y) of the rectangle, x from -windowX/2 and y from -windowY/2
+	 * to the padded borders.
+	 */
+	public double getPixel(int x, int y) {
+		return pixels[(x + windowX / 2) + (y + windowY / 2) * stride];
+	}
+
+	private int getPeriod(int n) {
+		return (boundaryConditions == ImageWare.MIRROR ? (n <= 1 ? 1 : 2 * n - 2) : n);
+	}
+
+	/**
+	 * Position inside 0..n-1 of the position p, as computed by
+	 * getNeighborhoodXY().
+	 */
+	private static int extend(int p, int n, int period) {
+		while (p < 0)
+			p += period;
+		while (p >= n) {
+			p = period - p;
+			p = (p < 0 ? -p : p);
+		}
+		return p;
+	}
+}
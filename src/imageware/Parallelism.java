@@ -0,0 +1,267 @@
+package imageware;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class Parallelism.
+ *
+ * Parallel execution of the pointwise operations and of the statistics of
+ * the imagewares, and of the parallel loops of their users. The pixels are
+ * split into blocks of whole rows of about GRAIN pixels inside each slice;
+ * the blocks depend only on the size of the imageware, not on the number of
+ * threads. The reductions compute one partial result per block and combine
+ * them in the order of the blocks: their results are the same in parallel and
+ * in sequential mode.
+ *
+ * The tasks run on an executor, by default a pool of daemon threads with one
+ * thread per processor; the calling thread takes its share of the tasks, a
+ * loop started by a task runs sequentially. setThreads(1) runs everything in
+ * the calling thread. The bytes allocated by the other threads for the tasks
+ * are added to a counter of the calling thread, getHelperAllocations().
+ */
+
+public final class Parallelism {
+
+	/**
+	 * Number of pixels of a block.
+	 */
+	public static final int GRAIN = 1 << 16;
+
+	/**
+	 * Body of a parallel loop, run on the indices begin to end-1.
+	 */
+	public interface Range {
+		public void run(int begin, int end);
+	}
+
+	/**
+	 * Body of a loop on the blocks of an imageware: the pixels begin to end-1
+	 * of the slice z form the block number block.
+	 */
+	public interface Block {
+		public void run(int block, int z, int begin, int end);
+	}
+
+	private static int threads = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService executor = null;
+	private static boolean ownExecutor = true;
+	private static final ThreadLocal<Boolean> inTask = new ThreadLocal<Boolean>();
+	private static final ThreadLocal<AtomicLong> helperAllocations = new ThreadLocal<AtomicLong>();
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	private Parallelism() {
+	}
+
+	public static synchronized int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads, on a pool of daemon threads created at the
+	 * next parallel loop. 1 disables the parallel execution.
+	 */
+	public static synchronized void setThreads(int threads) {
+		if (ownExecutor && executor != null) executor.shutdown();
+		Parallelism.threads = Math.max(1, threads);
+		executor = null;
+		ownExecutor = true;
+	}
+
+	/**
+	 * Run the tasks on an executor of the application, which is not shut down
+	 * by this class; at most threads tasks are submitted at once.
+	 */
+	public static synchronized void setExecutor(ExecutorService executor, int threads) {
+		if (ownExecutor && Parallelism.executor != null) Parallelism.executor.shutdown();
+		Parallelism.threads = Math.max(1, threads);
+		Parallelism.executor = executor;
+		ownExecutor = (executor == null);
+	}
+
+	/**
+	 * Counter of the bytes allocated by the helper threads for the parallel
+	 * loops started by the current thread, without the allocations of the
+	 * current thread itself; null if the JVM does not measure the allocations
+	 * of the threads.
+	 */
+	public static AtomicLong getHelperAllocations() {
+		if (getAllocatedBytes() < 0) return null;
+		AtomicLong counter = helperAllocations.get();
+		if (counter == null) {
+			counter = new AtomicLong();
+			helperAllocations.set(counter);
+		}
+		return counter;
+	}
+
+	/**
+	 * Number of blocks of an imageware of size nx x ny x nz.
+	 */
+	public static int countBlocks(int nx, int ny, int nz) {
+		return nz * blocksPerSlice(nx, ny);
+	}
+
+	/**
+	 * Run the body on the blocks of an imageware of size nx x ny x nz.
+	 */
+	public static void forBlocks(final int nx, final int ny, int nz, final Block body) {
+		final int rows = rowsPerBlock(nx, ny);
+		final int perSlice = blocksPerSlice(nx, ny);
+		int blocks = nz * perSlice;
+		if (blocks == 1) {
+			body.run(0, 0, 0, nx * ny);
+			return;
+		}
+		forRange(blocks, 1, new Range() {
+			public void run(int begin, int end) {
+				for (int block = begin; block < end; block++) {
+					int z = block / perSlice;
+					int y = (block % perSlice) * rows;
+					body.run(block, z, y * nx, Math.min(ny, y + rows) * nx);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Run the body on the indices 0 to n-1, split into chunks of at least
+	 * grain indices.
+	 */
+	public static void forRange(final int n, int grain, final Range body) {
+		int chunks = Math.min(4 * getThreads(), (n + grain - 1) / Math.max(1, grain));
+		if (chunks <= 1) {
+			if (n > 0) body.run(0, n);
+			return;
+		}
+		final int size = (n + chunks - 1) / chunks;
+		Runnable[] tasks = new Runnable[(n + size - 1) / size];
+		for (int i = 0; i < tasks.length; i++) {
+			final int begin = i * size;
+			tasks[i] = new Runnable() {
+				public void run() {
+					body.run(begin, Math.min(n, begin + size));
+				}
+			};
+		}
+		invokeAll(tasks);
+	}
+
+	/**
+	 * Run the tasks and wait for their completion. The first exception thrown
+	 * by a task is thrown again, after the completion of the other tasks.
+	 */
+	public static void invokeAll(final Runnable[] tasks) {
+		ExecutorService pool = getExecutor();
+		if (pool == null || tasks.length <= 1 || inTask.get() != null) {
+			for (Runnable task : tasks)
+				task.run();
+			return;
+		}
+		final AtomicInteger next = new AtomicInteger(0);
+		final Runnable worker = new Runnable() {
+			public void run() {
+				inTask.set(Boolean.TRUE);
+				try {
+					for (int i = next.getAndIncrement(); i < tasks.length; i = next.getAndIncrement())
+						tasks[i].run();
+				}
+				finally {
+					inTask.remove();
+				}
+			}
+		};
+		final AtomicLong allocations = helperAllocations.get();
+		Runnable helper = worker;
+		if (allocations != null) {
+			helper = new Runnable() {
+				public void run() {
+					long start = getAllocatedBytes();
+					try {
+						worker.run();
+					}
+					finally {
+						allocations.addAndGet(getAllocatedBytes() - start);
+					}
+				}
+			};
+		}
+		int helpers = Math.min(getThreads(), tasks.length) - 1;
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < helpers; i++)
+			futures.add(pool.submit(helper));
+		RuntimeException error = null;
+		try {
+			worker.run();
+		}
+		catch (RuntimeException ex) {
+			error = ex;
+			next.set(tasks.length);
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException ex) {
+				if (error != null) continue;
+				Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException) error = (RuntimeException) cause;
+				else if (cause instanceof Error) throw (Error) cause;
+				else error = new RuntimeException(cause);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				if (error == null) error = new RuntimeException(ex);
+			}
+		}
+		if (error != null) throw error;
+	}
+
+	/**
+	 * Bytes allocated by the current thread, -1 if the JVM does not measure
+	 * them.
+	 */
+	private static long getAllocatedBytes() {
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return -1;
+		try {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		catch (UnsupportedOperationException ex) {
+			return -1;
+		}
+	}
+
+	private static int rowsPerBlock(int nx, int ny) {
+		return Math.max(1, Math.min(ny, GRAIN / Math.max(1, nx)));
+	}
+
+	private static int blocksPerSlice(int nx, int ny) {
+		int rows = rowsPerBlock(nx, ny);
+		return Math.max(1, (ny + rows - 1) / rows);
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (threads <= 1) return null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				private int count = 0;
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ImageWare parallel " + (++count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			ownExecutor = true;
+		}
+		return executor;
+	}
+}
@@ -1,5 +1,8 @@
 package wavelets;
 
+import edf.CancellationToken;
+import edf.EdfEvents;
+
 /**
  * This class generates the Complex wavelets filters.
  * 
@@ -30,153 +33,152 @@ public class ComplexWavelet {
 	 * @return the wavelets coefficients
 	 */
 	static public ImageAccess[] analysis(ImageAccess in, int n, int length) {
+		return analysis(in, n, length, null);
+	}
 
-		// Compute the size to the fine and coarse levels
-		int nxfine = in.getWidth();
-		int nyfine = in.getHeight();
-
-		// Declare the object image
-		ImageAccess sub1;
-		ImageAccess sub2;
-		ImageAccess sub3;
-		ImageAccess sub4;
-		ImageAccess subre;
-		ImageAccess subim;
-		ImageAccess outRe;
-		ImageAccess outIm;
-
-		// Initialization
-		int nx = nxfine;
-		int ny = nyfine;
-		outRe = in.duplicate();
-		outIm = in.duplicate();
-
-		int re = 0;
-		int im = 1;
-
-		// From fine to coarse main loop
-		// first iteration
-
-		subre = new ImageAccess(nx, ny);
-		sub1 = new ImageAccess(nx, ny);
-		sub2 = new ImageAccess(nx, ny);
-
-		// Copy in[] into image[]
-		outRe.getSubImage(0, 0, subre);
-
-		// Apply the Wavelet splitting
-		sub1 = split(subre, re, re, length);
-		sub2 = split(subre, im, im, length);
-
-		sub1.subtract(sub1, sub2);
-
-		// Put the result image[] into in[]
-		outRe.putSubImage(0, 0, sub1);
-
-		// Apply the Wavelet splitting
-		sub1 = split(subre, re, im, length);
-		sub2 = split(subre, im, re, length);
-
-		sub1.add(sub1, sub2);
-
-		outIm.putSubImage(0, 0, sub1);
-
-		// Reduce the size by a factor of 2
-		nx = nx / 2;
-		ny = ny / 2;
-
-		for (int i = 1; i < n; i++) {
-
-			// Create a new image array of size [nx,ny]
-			subre = new ImageAccess(nx, ny);
-			subim = new ImageAccess(nx, ny);
-			sub1 = new ImageAccess(nx, ny);
-			sub2 = new ImageAccess(nx, ny);
-			sub3 = new ImageAccess(nx, ny);
-			sub4 = new ImageAccess(nx, ny);
-
-			// Copy in[] into image[]
-			outRe.getSubImage(0, 0, subre);
-			outIm.getSubImage(0, 0, subim);
-
-			sub1 = split(subre, re, re, length);
-			sub2 = split(subre, im, im, length);
-			sub3 = split(subim, re, im, length);
-			sub4 = split(subim, im, re, length);
-
-			sub1.subtract(sub1, sub2);
-			sub1.subtract(sub1, sub3);
-			sub1.subtract(sub1, sub4);
-
-			outRe.putSubImage(0, 0, sub1);
+	/**
+	 * Complex wavelet transformation with a cancellation token checked at each
+	 * level, the token may be null.
+	 */
+	static public ImageAccess[] analysis(ImageAccess in, int n, int length, CancellationToken token) {
+		ImageAccess outRe = new ImageAccess(in.getWidth(), in.getHeight());
+		ImageAccess outIm = new ImageAccess(in.getWidth(), in.getHeight());
+		analysis(in, outRe, outIm, n, length, token);
+		return new ImageAccess[] { outRe, outIm };
+	}
 
-			sub1 = split(subre, re, im, length);
-			sub2 = split(subre, im, re, length);
-			sub3 = split(subim, re, re, length);
-			sub4 = split(subim, im, im, length);
+	/**
+	 * Complex wavelet transformation into outRe, which may be in, and outIm.
+	 * The levels are computed in place in the top-left quadrants of outRe and
+	 * outIm, with the buffers of the workspace of the thread.
+	 */
+	static public void analysis(ImageAccess in, ImageAccess outRe, ImageAccess outIm, int n, int length,
+			CancellationToken token) {
+		analysis(in, outRe, outIm, n, length, null, token);
+	}
 
-			sub1.add(sub1, sub2);
-			sub1.add(sub1, sub3);
-			sub1.subtract(sub1, sub4);
+	/**
+	 * Complex wavelet transformation with the maximum-modulus selection fused
+	 * into the last pass of each level: if selection is not null, the
+	 * coefficients of the detail subbands and the coarse coefficients are
+	 * passed to the selection and they are not stored in outRe and outIm.
+	 */
+	static public void analysis(ImageAccess in, ImageAccess outRe, ImageAccess outIm, int n, int length,
+			MaximumModulus selection, CancellationToken token) {
+		int width = in.getWidth();
+		int nx = width;
+		int ny = in.getHeight();
+		if (outRe != in) System.arraycopy(in.getPixels(), 0, outRe.getPixels(), 0, nx * ny);
+		WaveletWorkspace workspace = WaveletWorkspace.get(nx, ny);
+		ComplexWaveFilter wf = workspace.getComplexFilter(length);
 
-			outIm.putSubImage(0, 0, sub1);
+		// From fine to coarse main loop, the first level has a real input
+		for (int i = 0; i < n; i++) {
+			if (token != null) token.check();
+			EdfEvents event = EdfEvents.level("Complex analysis", nx, ny, i + 1);
+			split(outRe.getPixels(), outIm.getPixels(), width, nx, ny, i == 0, wf, workspace, selection, i == n - 1);
+			EdfEvents.end(event);
 
 			// Reduce the size by a factor of 2
 			nx = nx / 2;
 			ny = ny / 2;
 		}
-		ImageAccess[] outComplex = new ImageAccess[2];
-		outComplex[0] = outRe.duplicate();
-		outComplex[1] = outIm.duplicate();
-		return outComplex;
 	}
 
 	/**
-	 * Perform 1 iteration of the wavelet transformation of an ImageObject. The
-	 * algorithm use the separability of the wavelet transformation. The result of
-	 * the computation is put in the ImageObject calling this method.
-	 *
-	 * @param in an ImageAcess object provided by ImageJ
+	 * Perform 1 iteration of the complex wavelet transformation, in place on
+	 * the quadrants nx x ny of the real and imaginary parts. The rows of the
+	 * quadrants are filtered first with the real and the imaginary filters,
+	 * then the columns of these four images, by blocks of
+	 * WaveletWorkspace.BLOCK, give the eight separable terms:
+	 * 
+	 * <pre>
+	 * re = rr(re) - ii(re) - ri(im) - ir(im)
+	 * im = ri(re) + ir(re) + rr(im) - ii(im)
+	 * </pre>
+	 * 
+	 * where ab() filters the rows with a and the columns with b. At the first
+	 * level, the input is real, the terms of im are omitted. The final
+	 * coefficients of the level are passed to the selection, if any.
 	 */
-	static private ImageAccess split(ImageAccess in, int type1, int type2, int length) {
-		int nx = in.getWidth();
-		int ny = in.getHeight();
-		ImageAccess out = new ImageAccess(nx, ny);
-
-		ComplexWaveFilter wf = new ComplexWaveFilter(length);
-
-		if (nx >= 1) {
-			double rowin[] = new double[nx];
-			double rowout[] = new double[nx];
-			for (int y = 0; y < ny; y++) {
-				in.getRow(y, rowin);
-
-				if (type1 == 0) split_1D(rowin, rowout, wf.h, wf.g);
-
-				if (type1 == 1) split_1D(rowin, rowout, wf.hi, wf.gi);
-
-				out.putRow(y, rowout);
-			}
-		}
-		else {
-			// out.copy(in);
-			out = in.duplicate();
+	static private void split(double[] re, double[] im, int width, int nx, int ny, boolean real,
+			ComplexWaveFilter wf, WaveletWorkspace workspace, MaximumModulus selection, boolean last) {
+		double[] rr = workspace.image(0);
+		double[] ri = workspace.image(1);
+		double[] ir = workspace.image(2);
+		double[] ii = workspace.image(3);
+		double[] row = workspace.buffer(0, nx);
+		double[] out = workspace.buffer(1, nx);
+		for (int y = 0; y < ny; y++) {
+			System.arraycopy(re, y * width, row, 0, nx);
+			split_1D(row, out, wf.h, wf.g);
+			System.arraycopy(out, 0, rr, y * nx, nx);
+			split_1D(row, out, wf.hi, wf.gi);
+			System.arraycopy(out, 0, ri, y * nx, nx);
+			if (real) continue;
+			System.arraycopy(im, y * width, row, 0, nx);
+			split_1D(row, out, wf.h, wf.g);
+			System.arraycopy(out, 0, ir, y * nx, nx);
+			split_1D(row, out, wf.hi, wf.gi);
+			System.arraycopy(out, 0, ii, y * nx, nx);
 		}
 
-		if (ny > 1) {
-			double colin[] = new double[ny];
-			double colout[] = new double[ny];
-			for (int x = 0; x < nx; x++) {
-				out.getColumn(x, colin);
-
-				if (type2 == 0) split_1D(colin, colout, wf.h, wf.g);
-
-				if (type2 == 1) split_1D(colin, colout, wf.hi, wf.gi);
-
-				out.putColumn(x, colout);
+		boolean columns = (ny > 1);
+		double[][] a = workspace.columns(0, ny);
+		double[][] b = workspace.columns(1, ny);
+		double[][] c = workspace.columns(2, ny);
+		double[][] d = workspace.columns(3, ny);
+		double[][] outRe = workspace.columns(4, ny);
+		double[][] outIm = workspace.columns(5, ny);
+		double[] t = workspace.buffer(6, ny);
+		double[] u = workspace.buffer(7, ny);
+		for (int x = 0; x < nx; x += WaveletWorkspace.BLOCK) {
+			int count = Math.min(WaveletWorkspace.BLOCK, nx - x);
+			WaveletWorkspace.gather(rr, nx, x, count, ny, a);
+			WaveletWorkspace.gather(ri, nx, x, count, ny, b);
+			if (!real) {
+				WaveletWorkspace.gather(ir, nx, x, count, ny, c);
+				WaveletWorkspace.gather(ii, nx, x, count, ny, d);
+			}
+			for (int k = 0; k < count; k++) {
+				double[] r = outRe[k];
+				double[] m = outIm[k];
+				double[] p = split(a[k], t, wf.h, wf.g, columns);
+				double[] q = split(b[k], u, wf.hi, wf.gi, columns);
+				for (int y = 0; y < ny; y++)
+					r[y] = p[y] - q[y];
+				if (!real) {
+					p = split(c[k], t, wf.hi, wf.gi, columns);
+					q = split(d[k], u, wf.h, wf.g, columns);
+					for (int y = 0; y < ny; y++)
+						r[y] = r[y] - p[y] - q[y];
+				}
+				p = split(a[k], t, wf.hi, wf.gi, columns);
+				q = split(b[k], u, wf.h, wf.g, columns);
+				for (int y = 0; y < ny; y++)
+					m[y] = p[y] + q[y];
+				if (!real) {
+					p = split(c[k], t, wf.h, wf.g, columns);
+					q = split(d[k], u, wf.hi, wf.gi, columns);
+					for (int y = 0; y < ny; y++)
+						m[y] = m[y] + p[y] - q[y];
+				}
+			}
+			if (selection == null) {
+				WaveletWorkspace.scatter(outRe, count, ny, re, width, x);
+				WaveletWorkspace.scatter(outIm, count, ny, im, width, x);
 			}
+			else selection.scatter(outRe, outIm, count, nx, ny, last, re, im, width, x);
 		}
+	}
 
+	/**
+	 * Split of a column, or the column itself if the columns are not
+	 * transformed.
+	 */
+	static private double[] split(double[] in, double[] out, double h[], double g[], boolean columns) {
+		if (!columns) return in;
+		split_1D(in, out, h, g);
 		return out;
 	}
 
@@ -196,13 +198,11 @@ public class ComplexWavelet {
 		int n2 = n / 2;
 		int nh = h.length;
 		int ng = g.length;
-
-		double voutL[] = new double[n];
-		double voutH[] = new double[n];
 		double pix;
 		int j1;
 
-		for (int i = 0; i < n; i++) {
+		// Only the even samples of the filtered signals are kept
+		for (int i = 0; i < n; i += 2) {
 			pix = 0.0;
 			for (int k = 0; k < nh; k++) { // Low pass part
 				j1 = i + k - (nh / 2);
@@ -216,12 +216,12 @@ public class ComplexWavelet {
 				}
 				pix = pix + h[k] * vin[j1];
 			}
-			voutL[i] = pix;
+			vout[i / 2] = pix;
 		}
 
-		for (int i = 0; i < n; i++) {
+		for (int i = 0; i < n; i += 2) {
 			pix = 0.0;
-			for (int k = 0; k < ng; k++) { // Low pass part
+			for (int k = 0; k < ng; k++) { // High pass part
 				j1 = i + k - (ng / 2);
 				if (j1 < 0) { // Periodic conditions
 					while (j1 < n)
@@ -233,14 +233,8 @@ public class ComplexWavelet {
 				}
 				pix = pix + g[k] * vin[j1];
 			}
-			voutH[i] = pix;
+			vout[n2 + i / 2] = pix;
 		}
-
-		for (int k = 0; k < n2; k++)
-			vout[k] = voutL[2 * k];
-		for (int k = n2; k < n; k++)
-			vout[k] = voutH[2 * k - n];
-
 	}
 
 	/**
@@ -257,119 +251,134 @@ public class ComplexWavelet {
 	 */
 
 	static public ImageAccess[] synthesis(ImageAccess inRe, ImageAccess inIm, int n, int length) {
-		// Compute the size to the fine and coarse levels
-		int div = (int) Math.pow(2.0, (double) (n - 1));
-		int nxcoarse = inRe.getWidth() / div;
-		int nycoarse = inRe.getHeight() / div;
-
-		// Declare the object image
-		ImageAccess subre, subim, sub1, sub2, sub3, sub4;
-		ImageAccess outRe;
-		ImageAccess outIm;
+		return synthesis(inRe, inIm, n, length, null);
+	}
 
-		// Initialisazion
-		int nx = nxcoarse;
-		int ny = nycoarse;
+	/**
+	 * Inverse complex wavelet transformation with a cancellation token checked
+	 * at each level, the token may be null.
+	 */
+	static public ImageAccess[] synthesis(ImageAccess inRe, ImageAccess inIm, int n, int length,
+			CancellationToken token) {
+		ImageAccess outRe = new ImageAccess(inRe.getWidth(), inRe.getHeight());
+		ImageAccess outIm = new ImageAccess(inRe.getWidth(), inRe.getHeight());
+		synthesis(inRe, inIm, outRe, outIm, n, length, token);
+		return new ImageAccess[] { outRe, outIm };
+	}
 
-		outRe = inRe.duplicate();
-		outIm = inIm.duplicate();
+	/**
+	 * Inverse complex wavelet transformation into outRe and outIm, which may
+	 * be inRe and inIm, in place as analysis().
+	 */
+	static public void synthesis(ImageAccess inRe, ImageAccess inIm, ImageAccess outRe, ImageAccess outIm, int n,
+			int length, CancellationToken token) {
+		int width = inRe.getWidth();
+		int height = inRe.getHeight();
+		if (outRe != inRe) System.arraycopy(inRe.getPixels(), 0, outRe.getPixels(), 0, width * height);
+		if (outIm != inIm) System.arraycopy(inIm.getPixels(), 0, outIm.getPixels(), 0, width * height);
+		WaveletWorkspace workspace = WaveletWorkspace.get(width, height);
+		ComplexWaveFilter wf = workspace.getComplexFilter(length);
 
-		int re = 0;
-		int im = 1;
+		// Compute the size to the fine and coarse levels
+		int div = (int) Math.pow(2.0, (double) (n - 1));
+		int nx = width / div;
+		int ny = height / div;
 
-		// From fine to coarse main loop
+		// From coarse to fine main loop
 		for (int i = 0; i < n; i++) {
-			// Create a new image array of size [nx,ny]
-			subre = new ImageAccess(nx, ny);
-			subim = new ImageAccess(nx, ny);
-			sub1 = new ImageAccess(nx, ny);
-			sub2 = new ImageAccess(nx, ny);
-			sub3 = new ImageAccess(nx, ny);
-			sub4 = new ImageAccess(nx, ny);
-			// Copy in[] into image[]
-			outRe.getSubImage(0, 0, subre);
-			outIm.getSubImage(0, 0, subim);
-
-			// Apply the Wavelet splitting
-			sub1 = merge(subre, re, re, length);
-			sub2 = merge(subre, im, im, length);
-			sub3 = merge(subim, re, im, length);
-			sub4 = merge(subim, im, re, length);
-
-			sub1.subtract(sub1, sub2);
-			sub1.add(sub1, sub3);
-			sub1.add(sub1, sub4);
-
-			outRe.putSubImage(0, 0, sub1);
-
-			// Apply the Wavelet splitting
-			sub1 = merge(subre, re, im, length);
-			sub2 = merge(subre, im, re, length);
-			sub3 = merge(subim, re, re, length);
-			sub4 = merge(subim, im, im, length);
-
-			sub3.subtract(sub3, sub1);
-			sub3.subtract(sub3, sub2);
-			sub3.subtract(sub3, sub4);
-			outIm.putSubImage(0, 0, sub3);
+			if (token != null) token.check();
+			EdfEvents event = EdfEvents.level("Complex synthesis", nx, ny, n - i);
+			merge(outRe.getPixels(), outIm.getPixels(), width, nx, ny, wf, workspace);
+			EdfEvents.end(event);
 			// Enlarge the size by a factor of 2
 			nx = nx * 2;
 			ny = ny * 2;
-
 		}
-		ImageAccess[] ReconstComplex = new ImageAccess[2];
-		ReconstComplex[0] = outRe.duplicate();
-		ReconstComplex[1] = outIm.duplicate();
-		return ReconstComplex;
 	}
 
 	/**
-	 * Perform 1 iteration of the inverse wavelet transformation of an ImageObject.
-	 * The algorithm use the separability of the wavelet transformation. The result
-	 * of the computation is put in the ImageAccess calling this method.
-	 *
-	 * @param in     an ImageAcess object provided by ImageJ
-	 * @param type1
-	 * @param type2
-	 * @param length
-	 * @return merge
+	 * Perform 1 iteration of the inverse complex wavelet transformation, in
+	 * place on the quadrants nx x ny of the real and imaginary parts, with the
+	 * separable terms of split():
+	 * 
+	 * <pre>
+	 * re = rr(re) - ii(re) + ri(im) + ir(im)
+	 * im = rr(im) - ri(re) - ir(re) - ii(im)
+	 * </pre>
 	 */
-	static private ImageAccess merge(ImageAccess in, int type1, int type2, int length) {
-		int nx = in.getWidth();
-		int ny = in.getHeight();
-		ImageAccess out = new ImageAccess(nx, ny);
-		ComplexWaveFilter wf = new ComplexWaveFilter(length);
-
-		if (nx >= 1) {
-			double rowin[] = new double[nx];
-			double rowout[] = new double[nx];
-			for (int y = 0; y < ny; y++) {
-				in.getRow(y, rowin);
-
-				if (type1 == 0) merge_1D(rowin, rowout, wf.h, wf.g);
-				if (type1 == 1) {
-					merge_1D(rowin, rowout, wf.hi, wf.gi);
-				}
-				out.putRow(y, rowout);
-			}
+	static private void merge(double[] re, double[] im, int width, int nx, int ny, ComplexWaveFilter wf,
+			WaveletWorkspace workspace) {
+		double[] rr = workspace.image(0);
+		double[] ri = workspace.image(1);
+		double[] ir = workspace.image(2);
+		double[] ii = workspace.image(3);
+		double[] row = workspace.buffer(0, nx);
+		double[] out = workspace.buffer(1, nx);
+		double[] upL = workspace.buffer(6, nx);
+		double[] upH = workspace.buffer(7, nx);
+		for (int y = 0; y < ny; y++) {
+			System.arraycopy(re, y * width, row, 0, nx);
+			merge_1D(row, out, wf.h, wf.g, upL, upH);
+			System.arraycopy(out, 0, rr, y * nx, nx);
+			merge_1D(row, out, wf.hi, wf.gi, upL, upH);
+			System.arraycopy(out, 0, ri, y * nx, nx);
+			System.arraycopy(im, y * width, row, 0, nx);
+			merge_1D(row, out, wf.h, wf.g, upL, upH);
+			System.arraycopy(out, 0, ir, y * nx, nx);
+			merge_1D(row, out, wf.hi, wf.gi, upL, upH);
+			System.arraycopy(out, 0, ii, y * nx, nx);
 		}
-		else {
-			out = in.duplicate();
-		}
-
-		if (ny > 1) {
-			double colin[] = new double[ny];
-			double colout[] = new double[ny];
-			for (int x = 0; x < nx; x++) {
-				out.getColumn(x, colin);
 
-				if (type2 == 0) merge_1D(colin, colout, wf.h, wf.g);
-				if (type2 == 1) {
-					merge_1D(colin, colout, wf.hi, wf.gi);
-				}
-				out.putColumn(x, colout);
+		boolean columns = (ny > 1);
+		double[][] a = workspace.columns(0, ny);
+		double[][] b = workspace.columns(1, ny);
+		double[][] c = workspace.columns(2, ny);
+		double[][] d = workspace.columns(3, ny);
+		double[][] outRe = workspace.columns(4, ny);
+		double[][] outIm = workspace.columns(5, ny);
+		double[] t = workspace.buffer(0, ny);
+		double[] u = workspace.buffer(1, ny);
+		upL = workspace.buffer(6, ny);
+		upH = workspace.buffer(7, ny);
+		for (int x = 0; x < nx; x += WaveletWorkspace.BLOCK) {
+			int count = Math.min(WaveletWorkspace.BLOCK, nx - x);
+			WaveletWorkspace.gather(rr, nx, x, count, ny, a);
+			WaveletWorkspace.gather(ri, nx, x, count, ny, b);
+			WaveletWorkspace.gather(ir, nx, x, count, ny, c);
+			WaveletWorkspace.gather(ii, nx, x, count, ny, d);
+			for (int k = 0; k < count; k++) {
+				double[] r = outRe[k];
+				double[] m = outIm[k];
+				double[] p = merge(a[k], t, wf.h, wf.g, upL, upH, columns);
+				double[] q = merge(b[k], u, wf.hi, wf.gi, upL, upH, columns);
+				for (int y = 0; y < ny; y++)
+					r[y] = p[y] - q[y];
+				p = merge(c[k], t, wf.hi, wf.gi, upL, upH, columns);
+				q = merge(d[k], u, wf.h, wf.g, upL, upH, columns);
+				for (int y = 0; y < ny; y++)
+					r[y] = r[y] + p[y] + q[y];
+				p = merge(c[k], t, wf.h, wf.g, upL, upH, columns);
+				q = merge(a[k], u, wf.hi, wf.gi, upL, upH, columns);
+				for (int y = 0; y < ny; y++)
+					m[y] = p[y] - q[y];
+				p = merge(b[k], t, wf.h, wf.g, upL, upH, columns);
+				q = merge(d[k], u, wf.hi, wf.gi, upL, upH, columns);
+				for (int y = 0; y < ny; y++)
+					m[y] = m[y] - p[y] - q[y];
 			}
+			WaveletWorkspace.scatter(outRe, count, ny, re, width, x);
+			WaveletWorkspace.scatter(outIm, count, ny, im, width, x);
 		}
+	}
+
+	/**
+	 * Merge of a column, or the column itself if the columns are not
+	 * transformed.
+	 */
+	static private double[] merge(double[] in, double[] out, double h[], double g[], double[] upL, double[] upH,
+			boolean columns) {
+		if (!columns) return in;
+		merge_1D(in, out, h, g, upL, upH);
 		return out;
 	}
 
@@ -384,8 +393,10 @@ public class ComplexWavelet {
 	 * @param vout output, a double 1D vector
 	 * @param h    input, a double 1D vector, lowpass filter
 	 * @param g    input, a double 1D vector, highpass filter
+	 * @param vinL buffer of the size of vin, upsampled low pass part
+	 * @param vinH buffer of the size of vin, upsampled high pass part
 	 */
-	static private void merge_1D(double vin[], double vout[], double h[], double g[]) {
+	static private void merge_1D(double vin[], double vout[], double h[], double g[], double vinL[], double vinH[]) {
 		int n = vin.length;
 		int n2 = n / 2;
 		int nh = h.length;
@@ -395,8 +406,6 @@ public class ComplexWavelet {
 		double pix;
 		// Upsampling
 
-		double vinL[] = new double[n];
-		double vinH[] = new double[n];
 		for (int k = 0; k < n; k++) {
 			vinL[k] = 0;
 			vinH[k] = 0;
@@ -129,6 +129,23 @@ public class ImageAccess {
 		pixels = new double[size];
 	}
 
+	/**
+	 * Creates a new ImageAccess object on an array of pixels, row by row. The array is shared, not copied.
+	 *
+	 * @param pixels the array of nx*ny pixels
+	 * @param nx the size of the image along the X-axis
+	 * @param ny the size of the image along the Y-axis
+	 */
+	public ImageAccess(double[] pixels, int nx, int ny) {
+		if (nx < 1) throw new ArrayStoreException("Constructor: nx < 1.");
+		if (ny < 1) throw new ArrayStoreException("Constructor: ny < 1.");
+		if (pixels == null || pixels.length < nx * ny) throw new ArrayStoreException("Constructor: array too small.");
+		this.nx = nx;
+		this.ny = ny;
+		size = nx * ny;
+		this.pixels = pixels;
+	}
+
 	/**
 	 * Return the width of the image.
 	 *
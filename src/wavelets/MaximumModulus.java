@@ -0,0 +1,110 @@
+package wavelets;
+
+/**
+ * Maximum-modulus selection of the wavelet coefficients of the slices of a
+ * stack, fused into the transforms: the last pass of each level passes the
+ * coefficients of its detail subbands, and at the last level the coarse
+ * coefficients too, to the selection instead of storing them. For each
+ * coefficient, the selection keeps the maximum of the modulus, the label of
+ * the slice and the coefficient, as the loop
+ *
+ * <pre>
+ * if (maximum[i] &lt; modulus) {
+ * 	maximum[i] = modulus;
+ * 	height[i] = label;
+ * 	fused[i] = coefficient;
+ * }
+ * </pre>
+ *
+ * The modulus is the absolute value for the real transforms and the squared
+ * modulus for the complex transforms.
+ */
+public class MaximumModulus {
+
+	private final float[] maximum;
+	private final short[] height;
+	private final float[] fusedRe;
+	private final float[] fusedIm;
+	private short label;
+
+	/**
+	 * Selection of the real coefficients, the arrays have the size of the
+	 * transformed images.
+	 */
+	public MaximumModulus(float[] maximum, short[] height, float[] fused) {
+		this(maximum, height, fused, null);
+	}
+
+	/**
+	 * Selection of the complex coefficients, the arrays have the size of the
+	 * transformed images.
+	 */
+	public MaximumModulus(float[] maximum, short[] height, float[] fusedRe, float[] fusedIm) {
+		this.maximum = maximum;
+		this.height = height;
+		this.fusedRe = fusedRe;
+		this.fusedIm = fusedIm;
+	}
+
+	/**
+	 * Label of the slice of the next transforms.
+	 */
+	public void setLabel(int label) {
+		this.label = (short) label;
+	}
+
+	void select(int index, double value) {
+		double modulus = (value < 0 ? -value : value);
+		if (maximum[index] < modulus) {
+			maximum[index] = (float) modulus;
+			height[index] = label;
+			fusedRe[index] = (float) value;
+		}
+	}
+
+	void select(int index, double re, double im) {
+		double modulus = re * re + im * im;
+		if (maximum[index] < modulus) {
+			maximum[index] = (float) modulus;
+			height[index] = label;
+			fusedRe[index] = (float) re;
+			fusedIm[index] = (float) im;
+		}
+	}
+
+	/**
+	 * Copy the columns of a block back to the image, as
+	 * WaveletWorkspace.scatter(), except the coefficients which are final for
+	 * the level nx x ny: they are selected and not stored.
+	 */
+	void scatter(double[][] block, int count, int nx, int ny, boolean last, double[] pixels, int width, int x) {
+		int cx = (last ? 0 : nx / 2);
+		int cy = (last ? 0 : ny / 2);
+		for (int y = 0; y < ny; y++) {
+			int offset = y * width + x;
+			for (int b = 0; b < count; b++) {
+				if (y < cy && x + b < cx) pixels[offset + b] = block[b][y];
+				else select(offset + b, block[b][y]);
+			}
+		}
+	}
+
+	/**
+	 * Complex version of scatter(), on the real and imaginary parts.
+	 */
+	void scatter(double[][] blockRe, double[][] blockIm, int count, int nx, int ny, boolean last, double[] re,
+			double[] im, int width, int x) {
+		int cx = (last ? 0 : nx / 2);
+		int cy = (last ? 0 : ny / 2);
+		for (int y = 0; y < ny; y++) {
+			int offset = y * width + x;
+			for (int b = 0; b < count; b++) {
+				if (y < cy && x + b < cx) {
+					re[offset + b] = blockRe[b][y];
+					im[offset + b] = blockIm[b][y];
+				}
+				else select(offset + b, blockRe[b][y], blockIm[b][y]);
+			}
+		}
+	}
+}
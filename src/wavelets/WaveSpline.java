@@ -1,5 +1,9 @@
 package wavelets;
 
+import edf.CancellationToken;
+import edf.EdfEvents;
+import edf.Kernels;
+
 /**
  * This class generates the Complex wavelets filters.
  * 
@@ -28,79 +32,90 @@ public class WaveSpline {
 	 * @param n  a integer value giving the number of scale
 	 */
 	static public ImageAccess analysis(ImageAccess in, int order, int n) {
+		return analysis(in, order, n, null);
+	}
 
-		// Compute the size to the fine and coarse levels
-		int nxfine = in.getWidth();
-		int nyfine = in.getHeight();
+	/**
+	 * Wavelet transformation with a cancellation token checked at each level,
+	 * the token may be null.
+	 */
+	static public ImageAccess analysis(ImageAccess in, int order, int n, CancellationToken token) {
+		ImageAccess out = new ImageAccess(in.getWidth(), in.getHeight());
+		analysis(in, out, order, n, token);
+		return out;
+	}
 
-		// Declare the object image
-		ImageAccess sub;
+	/**
+	 * Wavelet transformation into out, which may be in. The levels are
+	 * computed in place in the top-left quadrant of out, with the buffers of
+	 * the workspace of the thread.
+	 */
+	static public void analysis(ImageAccess in, ImageAccess out, int order, int n, CancellationToken token) {
+		analysis(in, out, order, n, null, token);
+	}
 
-		// Initialization
-		int nx = nxfine;
-		int ny = nyfine;
-		ImageAccess out = in.duplicate();
+	/**
+	 * Wavelet transformation into out with the maximum-modulus selection fused
+	 * into the last pass of each level: if selection is not null, the
+	 * coefficients of the detail subbands and the coarse coefficients are
+	 * passed to the selection and they are not stored in out.
+	 */
+	static public void analysis(ImageAccess in, ImageAccess out, int order, int n, MaximumModulus selection,
+			CancellationToken token) {
+		int nx = in.getWidth();
+		int ny = in.getHeight();
+		if (out != in) System.arraycopy(in.getPixels(), 0, out.getPixels(), 0, nx * ny);
+		WaveletWorkspace workspace = WaveletWorkspace.get(nx, ny);
+		WaveSplineFilter wf = workspace.getSplineFilter(order);
+		double[] pixels = out.getPixels();
 
 		// From fine to coarse main loop
 		for (int i = 0; i < n; i++) {
-
-			// Create a new image array of size [nx,ny]
-			sub = new ImageAccess(nx, ny);
-
-			// Copy in[] into image[]
-			out.getSubImage(0, 0, sub);
-
-			// Apply the Wavelet splitting
-			sub = split(sub, order);
-
-			// Put the result image[] into in[]
-			out.putSubImage(0, 0, sub);
+			if (token != null) token.check();
+			EdfEvents event = EdfEvents.level("Spline analysis", nx, ny, i + 1);
+			split(pixels, in.getWidth(), nx, ny, wf, workspace, selection, i == n - 1);
+			EdfEvents.end(event);
 
 			// Reduce the size by a factor of 2
 			nx = nx / 2;
 			ny = ny / 2;
 		}
-		return out;
 	}
 
 	/**
-	 * Perform 1 iteration of the wavelet transformation of an ImageObject. The algorithm use the separability of the wavelet transformation. The result of the computation is put
-	 * in the ImageObject calling this method.
-	 *
-	 * @param in an ImageAcess object provided by ImageJ
+	 * Perform 1 iteration of the wavelet transformation, in place on the
+	 * quadrant nx x ny of an image of the given width. The algorithm use the
+	 * separability of the wavelet transformation, the columns are transformed
+	 * by blocks of WaveletWorkspace.BLOCK. The final coefficients of the level
+	 * are passed to the selection, if any.
 	 */
-	static private ImageAccess split(ImageAccess in, int order) {
-		int nx = in.getWidth();
-		int ny = in.getHeight();
-		ImageAccess out = new ImageAccess(nx, ny);
-
-		WaveSplineFilter wf = new WaveSplineFilter(order);
-
-		if (nx >= 1) {
-			double rowin[] = new double[nx];
-			double rowout[] = new double[nx];
-			for (int y = 0; y < ny; y++) {
-				in.getRow(y, rowin);
-				split_1D(rowin, rowout, wf.h, wf.g);
-				out.putRow(y, rowout);
-			}
-		}
-		else {
-			// out.copy(in);
-			out = in.duplicate();
+	static private void split(double[] pixels, int width, int nx, int ny, WaveSplineFilter wf,
+			WaveletWorkspace workspace, MaximumModulus selection, boolean last) {
+		double rowin[] = workspace.buffer(0, nx);
+		double rowout[] = workspace.buffer(1, nx);
+		for (int y = 0; y < ny; y++) {
+			System.arraycopy(pixels, y * width, rowin, 0, nx);
+			split_1D(rowin, rowout, wf.h, wf.g);
+			System.arraycopy(rowout, 0, pixels, y * width, nx);
 		}
 
 		if (ny > 1) {
-			double colin[] = new double[ny];
-			double colout[] = new double[ny];
-			for (int x = 0; x < nx; x++) {
-				out.getColumn(x, colin);
-				split_1D(colin, colout, wf.h, wf.g);
-				out.putColumn(x, colout);
+			double colin[][] = workspace.columns(0, ny);
+			double colout[][] = workspace.columns(1, ny);
+			for (int x = 0; x < nx; x += WaveletWorkspace.BLOCK) {
+				int count = Math.min(WaveletWorkspace.BLOCK, nx - x);
+				WaveletWorkspace.gather(pixels, width, x, count, ny, colin);
+				for (int b = 0; b < count; b++)
+					split_1D(colin[b], colout[b], wf.h, wf.g);
+				if (selection == null) WaveletWorkspace.scatter(colout, count, ny, pixels, width, x);
+				else selection.scatter(colout, count, nx, ny, last, pixels, width, x);
 			}
 		}
-
-		return out;
+		else if (selection != null) {
+			// A single row is not split in y, all its coefficients are final
+			for (int x = 0; x < nx; x++)
+				selection.select(x, pixels[x]);
+		}
 	}
 
 	/**
@@ -135,49 +150,7 @@ public class WaveSpline {
 		/////////////////////////////////////////////
 		// Order is higher than 0
 		/////////////////////////////////////////////
-		double pix;
-		int j, k, j1, j2;
-		int period = 2 * n - 2; // period for mirror boundary conditions
-
-		for (int i = 0; i < n2; i++) {
-			j = i * 2;
-			pix = vin[j] * h[0];
-			for (k = 1; k < nh; k++) { // Low pass part
-				j1 = j - k;
-				if (j1 < 0) { // Mirror conditions
-					while (j1 < 0)
-						j1 += period; // Periodize
-					if (j1 >= n) j1 = period - j1; // Symmetrize
-				}
-				j2 = j + k;
-				if (j2 >= n) { // Mirror conditions
-					while (j2 >= n)
-						j2 -= period; // Periodize
-					if (j2 < 0) j2 = -j2; // Symmetrize
-				}
-				pix = pix + h[k] * (vin[j1] + vin[j2]);
-			}
-			vout[i] = pix;
-
-			j = j + 1;
-			pix = vin[j] * g[0]; // High pass part
-			for (k = 1; k < ng; k++) {
-				j1 = j - k;
-				if (j1 < 0) { // Mirror conditions
-					while (j1 < 0)
-						j1 += period; // Periodize
-					if (j1 >= n) j1 = period - j1; // Symmetrize
-				}
-				j2 = j + k;
-				if (j2 >= n) { // Mirror conditions
-					while (j2 >= n)
-						j2 -= period; // Periodize
-					if (j2 < 0) j2 = -j2; // Symmetrize
-				}
-				pix = pix + g[k] * (vin[j1] + vin[j2]);
-			}
-			vout[i + n2] = pix;
-		}
+		Kernels.getInstance().splitSymmetric(vin, vout, h, g);
 	}
 
 	/**
@@ -189,75 +162,72 @@ public class WaveSpline {
 	 */
 
 	static public ImageAccess synthesis(ImageAccess in, int order, int n) {
-		// Compute the size to the fine and coarse levels
-		int div = (int) Math.pow(2.0, (double) (n - 1));
-		int nxcoarse = in.getWidth() / div;
-		int nycoarse = in.getHeight() / div;
-
-		// Declare the object image
-		ImageAccess sub;
-
-		// Initialisazion
-		int nx = nxcoarse;
-		int ny = nycoarse;
-		ImageAccess out = in.duplicate();
-
-		// From fine to coarse main loop
-		for (int i = 0; i < n; i++) {
+		return synthesis(in, order, n, null);
+	}
 
-			// Create a new image array of size [nx,ny]
-			sub = new ImageAccess(nx, ny);
+	/**
+	 * Inverse wavelet transformation with a cancellation token checked at each
+	 * level, the token may be null.
+	 */
+	static public ImageAccess synthesis(ImageAccess in, int order, int n, CancellationToken token) {
+		ImageAccess out = new ImageAccess(in.getWidth(), in.getHeight());
+		synthesis(in, out, order, n, token);
+		return out;
+	}
 
-			// Copy in[] into image[]
-			out.getSubImage(0, 0, sub);
+	/**
+	 * Inverse wavelet transformation into out, which may be in, in place as
+	 * analysis().
+	 */
+	static public void synthesis(ImageAccess in, ImageAccess out, int order, int n, CancellationToken token) {
+		int width = in.getWidth();
+		if (out != in) System.arraycopy(in.getPixels(), 0, out.getPixels(), 0, width * in.getHeight());
+		WaveletWorkspace workspace = WaveletWorkspace.get(width, in.getHeight());
+		WaveSplineFilter wf = workspace.getSplineFilter(order);
+		double[] pixels = out.getPixels();
 
-			// Apply the Wavelet splitting
-			sub = merge(sub, order);
+		// Compute the size to the fine and coarse levels
+		int div = (int) Math.pow(2.0, (double) (n - 1));
+		int nx = width / div;
+		int ny = in.getHeight() / div;
 
-			// Put the result image[] into in[]
-			out.putSubImage(0, 0, sub);
-			// Reduce the size by a factor of 2
+		// From coarse to fine main loop
+		for (int i = 0; i < n; i++) {
+			if (token != null) token.check();
+			EdfEvents event = EdfEvents.level("Spline synthesis", nx, ny, n - i);
+			merge(pixels, width, nx, ny, wf, workspace);
+			EdfEvents.end(event);
+			// Enlarge the size by a factor of 2
 			nx = nx * 2;
 			ny = ny * 2;
 		}
-		return out;
 	}
 
 	/**
-	 * Perform 1 iteration of the inverse wavelet transformation of an ImageObject. The algorithm use the separability of the wavelet transformation. The result of the computation
-	 * is put in the ImageObject calling this method.
-	 *
-	 * @param in an ImageAcess object provided by ImageJ
+	 * Perform 1 iteration of the inverse wavelet transformation, in place on
+	 * the quadrant nx x ny of an image of the given width.
 	 */
-	static private ImageAccess merge(ImageAccess in, int order) {
-		int nx = in.getWidth();
-		int ny = in.getHeight();
-		ImageAccess out = new ImageAccess(nx, ny);
-		WaveSplineFilter wf = new WaveSplineFilter(order);
-
-		if (nx >= 1) {
-			double rowin[] = new double[nx];
-			double rowout[] = new double[nx];
-			for (int y = 0; y < ny; y++) {
-				in.getRow(y, rowin);
-				merge_1D(rowin, rowout, wf.h, wf.g);
-				out.putRow(y, rowout);
-			}
-		}
-		else {
-			out = in.duplicate();
+	static private void merge(double[] pixels, int width, int nx, int ny, WaveSplineFilter wf,
+			WaveletWorkspace workspace) {
+		double rowin[] = workspace.buffer(0, nx);
+		double rowout[] = workspace.buffer(1, nx);
+		for (int y = 0; y < ny; y++) {
+			System.arraycopy(pixels, y * width, rowin, 0, nx);
+			merge_1D(rowin, rowout, wf.h, wf.g);
+			System.arraycopy(rowout, 0, pixels, y * width, nx);
 		}
 
 		if (ny > 1) {
-			double colin[] = new double[ny];
-			double colout[] = new double[ny];
-			for (int x = 0; x < nx; x++) {
-				out.getColumn(x, colin);
-				merge_1D(colin, colout, wf.h, wf.g);
-				out.putColumn(x, colout);
+			double colin[][] = workspace.columns(0, ny);
+			double colout[][] = workspace.columns(1, ny);
+			for (int x = 0; x < nx; x += WaveletWorkspace.BLOCK) {
+				int count = Math.min(WaveletWorkspace.BLOCK, nx - x);
+				WaveletWorkspace.gather(pixels, width, x, count, ny, colin);
+				for (int b = 0; b < count; b++)
+					merge_1D(colin[b], colout[b], wf.h, wf.g);
+				WaveletWorkspace.scatter(colout, count, ny, pixels, width, x);
 			}
 		}
-		return out;
 	}
 
 	/**
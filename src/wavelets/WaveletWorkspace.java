@@ -0,0 +1,153 @@
+package wavelets;
+
+/**
+ * Buffers of the multi-level wavelet transforms of the images of size nx x
+ * ny: the rows and the blocks of columns of the levels and the temporary
+ * images of the complex transforms, with the filters. The transforms run in place on the
+ * top-left quadrant of their image; once the buffers of all the levels are
+ * allocated, a transform allocates nothing.
+ * 
+ * There is one workspace per thread, it is replaced when the size of the
+ * images changes and released by release(), at the end of a job. A thread
+ * which runs a series of jobs, such as the frames of a time-lapse, keeps its
+ * workspace from one job to the next with keep(true).
+ */
+public class WaveletWorkspace {
+
+	private static final int MAX_BUFFERS = 64;
+
+	/**
+	 * Number of columns transformed together by the passes on the columns: the
+	 * block is read and written row by row, one cache line of each row.
+	 */
+	static final int BLOCK = 8;
+
+	private static final ThreadLocal<WaveletWorkspace> workspaces = new ThreadLocal<WaveletWorkspace>();
+	private static final ThreadLocal<Boolean> kept = new ThreadLocal<Boolean>();
+
+	private final int nx;
+	private final int ny;
+	private final double[][] images = new double[4][];
+	private final double[][][] buffers = new double[8][MAX_BUFFERS][];
+	private final int[] counts = new int[8];
+	private final double[][][][] blocks = new double[8][MAX_BUFFERS][][];
+	private final int[] blockCounts = new int[8];
+	private WaveSplineFilter splineFilter;
+	private int splineOrder = -1;
+	private ComplexWaveFilter complexFilter;
+	private int complexLength = -1;
+
+	private WaveletWorkspace(int nx, int ny) {
+		this.nx = nx;
+		this.ny = ny;
+	}
+
+	/**
+	 * Workspace of the current thread for the images of size nx x ny.
+	 */
+	public static WaveletWorkspace get(int nx, int ny) {
+		WaveletWorkspace workspace = workspaces.get();
+		if (workspace == null || workspace.nx != nx || workspace.ny != ny) {
+			workspace = new WaveletWorkspace(nx, ny);
+			workspaces.set(workspace);
+		}
+		return workspace;
+	}
+
+	/**
+	 * Release the workspace of the current thread, unless it is kept; the
+	 * next transform on the thread allocates a new one.
+	 */
+	public static void release() {
+		if (kept.get() == null) workspaces.remove();
+	}
+
+	/**
+	 * Keep the workspace of the current thread across the jobs: release() does
+	 * nothing until keep(false), which releases it.
+	 */
+	public static void keep(boolean keep) {
+		if (keep) {
+			kept.set(Boolean.TRUE);
+		}
+		else {
+			kept.remove();
+			workspaces.remove();
+		}
+	}
+
+	/**
+	 * Temporary image of nx*ny values, slot from 0 to 3.
+	 */
+	double[] image(int slot) {
+		if (images[slot] == null) images[slot] = new double[nx * ny];
+		return images[slot];
+	}
+
+	/**
+	 * Buffer of the given length, slot from 0 to 7. The buffers of different
+	 * slots or lengths are distinct.
+	 */
+	double[] buffer(int slot, int length) {
+		double[][] list = buffers[slot];
+		for (int i = 0; i < counts[slot]; i++)
+			if (list[i].length == length) return list[i];
+		if (counts[slot] == MAX_BUFFERS) counts[slot] = 0;
+		double[] buffer = new double[length];
+		list[counts[slot]++] = buffer;
+		return buffer;
+	}
+
+	/**
+	 * BLOCK columns of the given length, slot from 0 to 7.
+	 */
+	double[][] columns(int slot, int length) {
+		double[][][] list = blocks[slot];
+		for (int i = 0; i < blockCounts[slot]; i++)
+			if (list[i][0].length == length) return list[i];
+		if (blockCounts[slot] == MAX_BUFFERS) blockCounts[slot] = 0;
+		double[][] block = new double[BLOCK][length];
+		list[blockCounts[slot]++] = block;
+		return block;
+	}
+
+	/**
+	 * Copy the columns x to x+count-1 of the first ny rows of an image of the
+	 * given width into the columns of a block.
+	 */
+	static void gather(double[] pixels, int width, int x, int count, int ny, double[][] block) {
+		for (int y = 0; y < ny; y++) {
+			int offset = y * width + x;
+			for (int b = 0; b < count; b++)
+				block[b][y] = pixels[offset + b];
+		}
+	}
+
+	/**
+	 * Copy the columns of a block back to the columns x to x+count-1 of an
+	 * image of the given width.
+	 */
+	static void scatter(double[][] block, int count, int ny, double[] pixels, int width, int x) {
+		for (int y = 0; y < ny; y++) {
+			int offset = y * width + x;
+			for (int b = 0; b < count; b++)
+				pixels[offset + b] = block[b][y];
+		}
+	}
+
+	WaveSplineFilter getSplineFilter(int order) {
+		if (order != splineOrder) {
+			splineFilter = new WaveSplineFilter(order);
+			splineOrder = order;
+		}
+		return splineFilter;
+	}
+
+	ComplexWaveFilter getComplexFilter(int length) {
+		if (length != complexLength) {
+			complexFilter = new ComplexWaveFilter(length);
+			complexLength = length;
+		}
+		return complexFilter;
+	}
+}